@@ -0,0 +1,63 @@
+package cpath.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.pattern.util.Blacklist;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.core.io.DefaultResourceLoader;
+
+/**
+ * The model, index and service (without the Spring context) shared by the benchmarks;
+ * uses the test BioPAX data (the same as IndexIT).
+ * The index is built first, and then the service opens the read-only generation
+ * (index searcher, id dictionary, etc.), as the web app does.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkData {
+
+  static final String MODEL_RESOURCE = "classpath:merge/pathwaydata1.owl";
+  static final String HOME_DIR = "target/jmh-work";
+  static final int MAX_HITS_PER_PAGE = 10;
+
+  Model model;
+  ServiceImpl service;
+  IndexImpl index;
+  CompactGraph graph;
+  int lastPage; //of all the search hits
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    try(InputStream is = new DefaultResourceLoader().getResource(MODEL_RESOURCE).getInputStream()) {
+      model = new SimpleIOHandler().convertFromOWL(is);
+    }
+    System.setProperty(Settings.HOME_DIR, HOME_DIR); //not to overwrite the tests' data
+    Settings settings = new Settings();
+    settings.setXmlBase(model.getXmlBase());
+    settings.setGraphCacheMaxBytes(0L); //measure the queries, not the cache
+    settings.setMaxHitsPerPage(MAX_HITS_PER_PAGE);
+    CPathUtils.cleanupDirectory(settings.indexDir(), false);
+
+    service = new ServiceImpl();
+    service.setSettings(settings);
+    service.initIndex(model, settings.indexDir(), false);
+    service.setModel(model);
+    service.setBlacklist(new Blacklist());
+    service.index().save(model);
+    service.init(); //closes the writable index, opens the read-only generation
+    index = (IndexImpl) service.index();
+    graph = CompactGraph.build(model, new Blacklist());
+    lastPage = (int) ((index.search("*", 0, null, null, null).getNumHits() - 1) / MAX_HITS_PER_PAGE);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    index.close();
+  }
+}
@@ -0,0 +1,44 @@
+package cpath.service;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.biopax.paxtools.pattern.util.Blacklist;
+import org.openjdk.jmh.annotations.*;
+
+import cpath.service.api.OutputFormat;
+import cpath.service.jaxb.DataResponse;
+
+/**
+ * BioPAX model to other formats conversion benchmarks (one per OutputFormat).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConverterBenchmark {
+
+  @Param({"BIOPAX", "SIF", "TXT", "GSEA", "SBGN", "JSONLD"})
+  public OutputFormat format;
+
+  private BiopaxConverter converter;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    converter = new BiopaxConverter(new Blacklist());
+  }
+
+  @Benchmark
+  public long convert(BenchmarkData data) {
+    DataResponse res = (DataResponse) converter.convert(data.model, format, Collections.emptyMap());
+    long size = 0;
+    if(res.getData() instanceof ResultBuffer) {
+      ResultBuffer buffer = (ResultBuffer) res.getData();
+      size = buffer.size();
+      buffer.release();
+    }
+    return size;
+  }
+}
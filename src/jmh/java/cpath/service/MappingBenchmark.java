@@ -0,0 +1,98 @@
+package cpath.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import cpath.service.metadata.Mapping;
+
+/**
+ * Id-mapping lookups: the index (IndexImpl) vs. the memory-mapped store (MappingStore),
+ * both having the same synthetic UniProt/ChEBI mappings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MappingBenchmark {
+
+  static final String INDEX_DIR = "target/jmh-mapping-idx";
+  static final String STORE_FILE = "target/jmh-mappings.store";
+  static final String WAREHOUSE_FILE = "target/jmh-warehouse.owl.gz"; //a stand-in the store is tied to
+  static final int SIZE = 50000; //source ids (two mappings each)
+  static final int BATCH = 20; //ids per batch lookup
+
+  IndexImpl index;
+  MappingStore store;
+  List<String> srcIds;
+  int next;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    CPathUtils.cleanupDirectory(INDEX_DIR, false);
+    index = new IndexImpl(null, INDEX_DIR, false);
+    for (int i = 0; i < SIZE; i++) {
+      index.save(new Mapping("GENE NAME", "GENE" + i, "UNIPROT", String.format("P%05d", i)));
+      index.save(new Mapping("PUBCHEM-COMPOUND", "CID:" + i, "CHEBI", "CHEBI:" + i));
+    }
+    index.commit();
+    index.refresh();
+
+    Path file = Paths.get(STORE_FILE);
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    Path warehouse = Files.write(Paths.get(WAREHOUSE_FILE), new byte[]{0});
+    MappingStore.Builder builder = new MappingStore.Builder();
+    index.forEachMapping(builder::add);
+    builder.write(file, warehouse);
+    store = MappingStore.open(file, warehouse);
+
+    srcIds = new ArrayList<>(BATCH);
+    for (int i = 0; i < BATCH; i++) {
+      srcIds.add("GENE" + (i * (SIZE / BATCH)));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    index.close();
+  }
+
+  @Benchmark
+  public List<Mapping> srcIdsIndex() {
+    return index.findBySrcIdInAndDstDbIgnoreCase(srcIds, "uniprot");
+  }
+
+  @Benchmark
+  public List<Mapping> srcIdsStore() {
+    return store.findBySrcIdInAndDstDbIgnoreCase(srcIds, "uniprot");
+  }
+
+  @Benchmark
+  public Set<String> dstIdsIndex() {
+    return index.findDstIds(srcIds, "uniprot");
+  }
+
+  @Benchmark
+  public Set<String> dstIdsStore() {
+    return store.findDstIds(srcIds, "uniprot");
+  }
+
+  @Benchmark
+  public List<Mapping> dstIdIndex() {
+    return index.findByDstDbIgnoreCaseAndDstId("chebi", "CHEBI:" + (next++ % SIZE));
+  }
+
+  @Benchmark
+  public List<Mapping> dstIdStore() {
+    return store.findByDstDbIgnoreCaseAndDstId("chebi", "CHEBI:" + (next++ % SIZE));
+  }
+}
@@ -0,0 +1,84 @@
+package cpath.service;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.Pathway;
+import org.biopax.paxtools.query.QueryExecuter;
+import org.biopax.paxtools.query.algorithm.Direction;
+import org.openjdk.jmh.annotations.*;
+
+import cpath.service.api.OutputFormat;
+import cpath.service.jaxb.ServiceResponse;
+
+/**
+ * Seed ID resolution, graph query and sub-model extraction (ServiceImpl) benchmarks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+
+  static final String[] SEEDS = {"P27797", "CHEBI:20", "CHEBI:28", "CHEBI:422"};
+
+  @Benchmark
+  public Set<Set<String>> mapToSeeds(BenchmarkData data) {
+    return data.service.mapToSeeds(SEEDS);
+  }
+
+  @Benchmark
+  public ServiceResponse neighborhood(BenchmarkData data) {
+    return data.service.getNeighborhood(OutputFormat.BIOPAX, Collections.emptyMap(), SEEDS, 1,
+      Direction.BOTHSTREAM, null, null, false);
+  }
+
+  @Benchmark
+  public Set<BioPAXElement> neighborhoodPaxtools(BenchmarkData data) {
+    return QueryExecuter.runNeighborhoodMultiSet(seeds(data), data.model, 2, Direction.BOTHSTREAM);
+  }
+
+  @Benchmark
+  public Set<BioPAXElement> neighborhoodCompact(BenchmarkData data) {
+    return data.graph.neighborhood(seeds(data), 2, Direction.BOTHSTREAM);
+  }
+
+  @Benchmark
+  public Set<BioPAXElement> pathsBetweenPaxtools(BenchmarkData data) {
+    return QueryExecuter.runPathsBetweenMultiSet(seeds(data), data.model, 3);
+  }
+
+  @Benchmark
+  public Set<BioPAXElement> pathsBetweenCompact(BenchmarkData data) {
+    return data.graph.pathsBetween(seeds(data), 3);
+  }
+
+  @Benchmark
+  public ServiceResponse pathsBetween(BenchmarkData data) {
+    return data.service.getPathsBetween(OutputFormat.BIOPAX, Collections.emptyMap(), SEEDS, 2,
+      null, null, false);
+  }
+
+  private static Set<Set<BioPAXElement>> seeds(BenchmarkData data) {
+    Set<Set<BioPAXElement>> seeds = new HashSet<>();
+    for (Set<String> uris : data.service.mapToSeeds(SEEDS)) {
+      Set<BioPAXElement> group = new HashSet<>();
+      for (String uri : uris) {
+        group.add(data.model.getByID(uri));
+      }
+      seeds.add(group);
+    }
+    return seeds;
+  }
+
+  @Benchmark
+  public Model autoCompleteAndClone(BenchmarkData data) {
+    Set<BioPAXElement> elements = new HashSet<>(data.model.getObjects(Pathway.class));
+    return data.service.autoCompleteAndClone(elements, true);
+  }
+}
@@ -0,0 +1,55 @@
+package cpath.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.biopax.paxtools.model.level3.Pathway;
+import org.biopax.paxtools.model.level3.SmallMoleculeReference;
+import org.openjdk.jmh.annotations.*;
+
+import cpath.service.jaxb.SearchResponse;
+
+/**
+ * Full-text search (IndexImpl) benchmarks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+  @Benchmark
+  public SearchResponse term(BenchmarkData data) {
+    return data.index.search("ATP", 0, null, null, null);
+  }
+
+  @Benchmark
+  public SearchResponse wildcard(BenchmarkData data) {
+    return data.index.search("xrefid:CHEBI?20", 0, SmallMoleculeReference.class, null, null);
+  }
+
+  @Benchmark
+  public SearchResponse all(BenchmarkData data) {
+    return data.index.search("*", 0, null, null, null);
+  }
+
+  @Benchmark
+  public SearchResponse allOfType(BenchmarkData data) {
+    return data.index.search("*", 0, Pathway.class, null, null);
+  }
+
+  @Benchmark
+  public SearchResponse allOfTypeByDatasource(BenchmarkData data) {
+    return data.index.search("*", 0, Pathway.class, new String[]{"pathway"}, null);
+  }
+
+  @Benchmark
+  public SearchResponse deepPage(BenchmarkData data) {
+    return data.index.search("*", data.lastPage, null, null, null);
+  }
+
+  @Benchmark
+  public SearchResponse topPathways(BenchmarkData data) {
+    return data.index.topPathways("*", -1, null, null);
+  }
+}
@@ -1,9 +1,6 @@
 package cpath.service;
 
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -11,8 +8,6 @@ import cpath.service.api.OutputFormat;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.biopax.paxtools.io.gsea.GSEAConverter;
-import org.biopax.paxtools.io.jsonld.JsonldBiopaxConverter;
-import org.biopax.paxtools.io.jsonld.JsonldConverter;
 import org.biopax.paxtools.io.sbgn.L3ToSBGNPDConverter;
 import org.biopax.paxtools.io.sbgn.ListUbiqueDetector;
 import org.biopax.paxtools.io.*;
@@ -42,6 +37,8 @@ public class BiopaxConverter {
   private static final Logger log = LoggerFactory.getLogger(BiopaxConverter.class);
 
   private final Blacklist blacklist;
+  private final int memoryThreshold;
+  private final SifEdgeTable sifEdges;
 
   /**
    * Constructor.
@@ -49,8 +46,32 @@ public class BiopaxConverter {
    * @param blacklist of ubiquitous molecules to exclude (in some algorithms)
    */
   public BiopaxConverter(Blacklist blacklist) {
+    this(blacklist, ResultBuffer.DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param blacklist of ubiquitous molecules to exclude (in some algorithms)
+   * @param memoryThreshold max. size (bytes) of a result to keep in memory; larger ones go to temporary files
+   */
+  public BiopaxConverter(Blacklist blacklist, int memoryThreshold) {
+    this(blacklist, memoryThreshold, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param blacklist of ubiquitous molecules to exclude (in some algorithms)
+   * @param memoryThreshold max. size (bytes) of a result to keep in memory; larger ones go to temporary files
+   * @param sifEdges pre-computed SIF interactions of the main model (to select from rather than search;
+   *                 can be null); the blacklist must be the same that was used to make it
+   */
+  public BiopaxConverter(Blacklist blacklist, int memoryThreshold, SifEdgeTable sifEdges) {
     //set an empty one if null
     this.blacklist = (blacklist != null) ? blacklist : new Blacklist();
+    this.memoryThreshold = memoryThreshold;
+    this.sifEdges = sifEdges;
   }
 
 
@@ -66,45 +87,47 @@ public class BiopaxConverter {
                        OutputFormat format,
                        Map<String, String> options,
                        OutputStream os) throws IOException {
-    Assert.notNull(m, "Model is null");
     try {
-      switch (format) {
-        case BIOPAX: //to OWL (RDF/XML)
-          (new SimpleIOHandler()).convertToOWL(m, os);
-          break;
-        case SIF:
-          convertToSIF(m, os, false, options);
-          break;
-        case TXT:
-          convertToSIF(m, os, true, options);
-          break;
-        case GSEA:
-          convertToGSEA(m, os, options);
-          break;
-        case SBGN:
-          //will do SBGN layout IIF value is "true" (case-insensitive)
-          convertToSBGN(m, os, blacklist, Boolean.valueOf(options.get("layout")));
-          break;
-        case JSONLD:
-          convertToJsonLd(m, os);
-          break;
-        default:
-          throw new UnsupportedOperationException(
-            "convert, yet unsupported format: " + format);
-      }
+      write(m, format, options, os);
     } finally {
       //makes sure OS is closed
       IOUtils.closeQuietly(os);
     }
   }
 
-  private void convertToJsonLd(Model m, OutputStream os) throws IOException {
-    DataResponse dr = (DataResponse) convert(m, OutputFormat.BIOPAX, null);
-    JsonldConverter converter = new JsonldBiopaxConverter();
-    Path data = (Path) dr.getData();
-    InputStream is = Files.newInputStream(data, StandardOpenOption.DELETE_ON_CLOSE);
-    converter.convertToJsonld(is, os);
-    is.close();
+  /*
+   * Writes the model in the format to the stream; does not close the stream
+   * (some of the converters do that though).
+   */
+  private void write(Model m,
+                     OutputFormat format,
+                     Map<String, String> options,
+                     OutputStream os) throws IOException {
+    Assert.notNull(m, "Model is null");
+    switch (format) {
+      case BIOPAX: //to OWL (RDF/XML)
+        (new SimpleIOHandler()).convertToOWL(m, os);
+        break;
+      case SIF:
+        convertToSIF(m, os, false, options);
+        break;
+      case TXT:
+        convertToSIF(m, os, true, options);
+        break;
+      case GSEA:
+        convertToGSEA(m, os, options);
+        break;
+      case SBGN:
+        //will do SBGN layout IIF value is "true" (case-insensitive)
+        convertToSBGN(m, os, blacklist, Boolean.valueOf(options.get("layout")));
+        break;
+      case JSONLD:
+        JsonldWriter.write(m, os);
+        break;
+      default:
+        throw new UnsupportedOperationException(
+          "convert, yet unsupported format: " + format);
+    }
   }
 
   /**
@@ -127,30 +150,48 @@ public class BiopaxConverter {
 
     // otherwise, convert, return a new DataResponse
     // (can contain up to ~ 1Gb unicode string data)
-    // a TMP File is used instead of a byte array; set the file path as dataResponse.data value
-    Path tmpPath = null;
+    // small results stay in memory; larger ones are spilled to a TMP file;
+    // set the result buffer as dataResponse.data value (the user must release it)
+    ResultBuffer buffer = new ResultBuffer(memoryThreshold, format.getExt());
     try {
-      tmpPath = Files.createTempFile("cpath2", format.getExt());
-      tmpPath.toFile().deleteOnExit();//to make sure...
-      convert(m, format, options, Files.newOutputStream(tmpPath)); //OS gets closed there for sure.
+      convert(m, format, options, buffer); //OS gets closed there for sure.
       DataResponse dataResponse = new DataResponse();
       dataResponse.setFormat(format);
-      dataResponse.setData(tmpPath);
+      dataResponse.setData(buffer);
       // extract and save data provider names
       dataResponse.setProviders(providers(m));
       return dataResponse;
     } catch (Exception e) {
-      if(tmpPath != null) {
-        try {
-          Files.delete(tmpPath);
-        } catch (Exception ex) {
-          log.error(e.toString());
-        }
-      }
+      buffer.release();
       return new ErrorResponse(INTERNAL_ERROR, e);
     }
   }
 
+  /**
+   * Prepares the streaming conversion of a BioPAX model (e.g., a get/graph query result)
+   * to another format, so that the result is written directly to the client (HTTP response) stream
+   * rather than to a buffer or temporary file first.
+   *
+   * @param m       a sub-model; must not be modified afterwards
+   * @param format  output format
+   * @param options format options
+   * @return data response with either {@link StreamingOutput} or no data (empty result)
+   */
+  public ServiceResponse stream(Model m,
+                                OutputFormat format,
+                                Map<String, String> options) {
+    if (m == null || m.getObjects().isEmpty()) {
+      return convert(m, format, options);
+    }
+
+    final Map<String, String> opts = (options != null) ? options : Collections.emptyMap();
+    DataResponse dataResponse = new DataResponse();
+    dataResponse.setFormat(format);
+    dataResponse.setData((StreamingOutput) os -> write(m, format, opts, os));
+    dataResponse.setProviders(providers(m));
+    return dataResponse;
+  }
+
 
   /**
    * Converts a BioPAX Model to SBGN format.
@@ -208,22 +249,13 @@ public class BiopaxConverter {
    * This is mainly for calling internally through the web service api.
    */
   private void convertToSIF(Model m, OutputStream out,
-                            boolean extended, Map<String, String> options) {
+                            boolean extended, Map<String, String> options) throws IOException {
     String db;
     if ((db = options.get("db")) == null) {
       db = "hgnc"; //default
     }
 
-    ConfigurableIDFetcher idFetcher = new ConfigurableIDFetcher();
-    idFetcher.chemDbStartsWithOrEquals("chebi");
-
-    if (StringUtils.isBlank(db) || db.toLowerCase().startsWith("hgnc")) {
-      idFetcher.seqDbStartsWithOrEquals("hgnc");
-    } else if (db.toLowerCase().startsWith("uniprot")) {
-      idFetcher.seqDbStartsWithOrEquals("uniprot");
-    } else {
-      idFetcher.seqDbStartsWithOrEquals(db);
-    }
+    ConfigurableIDFetcher idFetcher = idFetcher(db);
 
     SIFType[] sifTypes;
     if (options.containsKey("pattern")) {
@@ -235,10 +267,13 @@ public class BiopaxConverter {
         if(p != null) sifTypes[i++] = p;
       }
     } else {
-      //default: apply all SIF rules but neighbor_of
-      Collection<SIFType> c = new HashSet<>(Arrays.asList(SIFEnum.values()));
-      c.remove(SIFEnum.NEIGHBOR_OF); //exclude NEIGHBOR_OF
-      sifTypes = c.toArray(new SIFType[c.size()]);
+      sifTypes = defaultSifTypes();
+    }
+
+    //select the sub-model's interactions from the pre-computed ones if possible (same ids)
+    if (!extended && sifEdges != null && isDefaultDb(db)) {
+      sifEdges.writeSif(m, sifTypes, blacklist, out);
+      return;
     }
 
     SIFSearcher searcher = new SIFSearcher(idFetcher, sifTypes);
@@ -252,6 +287,36 @@ public class BiopaxConverter {
     }
   }
 
+  /*
+   * Gene/chemical ID types to use in the SIF output.
+   */
+  static ConfigurableIDFetcher idFetcher(String db) {
+    ConfigurableIDFetcher idFetcher = new ConfigurableIDFetcher();
+    idFetcher.chemDbStartsWithOrEquals("chebi");
+
+    if (isDefaultDb(db)) {
+      idFetcher.seqDbStartsWithOrEquals("hgnc");
+    } else if (db.toLowerCase().startsWith("uniprot")) {
+      idFetcher.seqDbStartsWithOrEquals("uniprot");
+    } else {
+      idFetcher.seqDbStartsWithOrEquals(db);
+    }
+    return idFetcher;
+  }
+
+  private static boolean isDefaultDb(String db) {
+    return StringUtils.isBlank(db) || db.toLowerCase().startsWith("hgnc");
+  }
+
+  /*
+   * Default: apply all SIF rules but neighbor_of.
+   */
+  static SIFType[] defaultSifTypes() {
+    Collection<SIFType> c = new HashSet<>(Arrays.asList(SIFEnum.values()));
+    c.remove(SIFEnum.NEIGHBOR_OF); //exclude NEIGHBOR_OF
+    return c.toArray(new SIFType[c.size()]);
+  }
+
   /**
    * The list of datasources (data providers)
    * the BioPAX model contains.
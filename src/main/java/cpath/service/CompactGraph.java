@@ -0,0 +1,750 @@
+package cpath.service;
+
+import java.util.*;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.*;
+import org.biopax.paxtools.pattern.util.Blacklist;
+import org.biopax.paxtools.query.algorithm.Direction;
+import org.biopax.paxtools.query.algorithm.LimitType;
+import org.biopax.paxtools.query.model.Edge;
+import org.biopax.paxtools.query.model.Graph;
+import org.biopax.paxtools.query.model.GraphObject;
+import org.biopax.paxtools.query.model.Node;
+import org.biopax.paxtools.query.wrapperL3.Filter;
+import org.biopax.paxtools.query.wrapperL3.GraphL3;
+import org.biopax.paxtools.query.wrapperL3.UbiqueFilter;
+import org.biopax.paxtools.query.wrapperL3undirected.GraphL3Undirected;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable int-indexed (compressed sparse row) copy of the Paxtools query graph
+ * of the main model, to run the neighborhood, paths-between, paths-from-to and common-stream
+ * graph queries on primitive arrays instead of wrapping the model objects for every query.
+ *
+ * Nodes and edges are taken as is from the Paxtools {@link GraphL3} wrapper graph (physical entities,
+ * conversions, template reactions, controls; participants, controllers, complex membership and generics
+ * equivalence, blacklisted ubiquitous molecules), and the traversals follow the Paxtools BFS labeling rules,
+ * so that the results are the same as {@link org.biopax.paxtools.query.QueryExecuter} ones.
+ * The undirected neighborhood query runs on another such copy - of the Paxtools {@link GraphL3Undirected}
+ * graph (physical entities and all the interactions).
+ *
+ * The blacklist (ubiquitous molecules), data sources and organisms of the nodes are kept in bitsets,
+ * so that a query's organism/datasource filter values are combined once into the allowed nodes bitset
+ * and checked with a bit test during the traversal.
+ *
+ * @author rodche
+ */
+public final class CompactGraph {
+  private static final Logger log = LoggerFactory.getLogger(CompactGraph.class);
+
+  private static final byte WHITE = 0;
+  private static final byte GRAY = 1;
+  private static final byte BLACK = 2;
+
+  //no. nodes
+  private final int size;
+  //wrapped BioPAX element (PhysicalEntity, Conversion, TemplateReaction, Control; any Interaction - undirected) by node
+  private final BioPAXElement[] elements;
+  //node by element (the first one, if there are two, e.g. for a reversible conversion)
+  private final Map<BioPAXElement, Integer> nodeOf = new IdentityHashMap<>();
+  //edges (CSR): upstream (source) and downstream (target) nodes by node
+  private final int[] upStart, up, downStart, down;
+  //equivalence (complex membership, generics) CSR: upper and lower equivalents by node
+  private final int[] upperStart, upper, lowerStart, lower;
+  private final BitSet breadth;
+  private final BitSet ubique;
+  //nodes by data source, and the nodes that have none (not filtered by data source)
+  private final Map<Provenance, BitSet> byDatasource = new HashMap<>();
+  private final BitSet noDatasource = new BitSet();
+  //nodes by organism, and the nodes that have none (not filtered by organism)
+  private final Map<BioSource, BitSet> byOrganism = new HashMap<>();
+  private final BitSet noOrganism = new BitSet();
+  //the undirected graph of the same model (null - this is the undirected one)
+  private final CompactGraph undirected;
+
+  //combined organism/datasource filters (allowed nodes) of the recent queries
+  private static final int FILTERS_MAX = 32;
+  private final Map<String, BitSet> filters = Collections.synchronizedMap(
+    new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, BitSet> eldest) {
+        return size() > FILTERS_MAX;
+      }
+    });
+
+  private CompactGraph(BioPAXElement[] elements, int[][] up, int[][] down, int[][] upper, int[][] lower,
+                       BitSet breadth, BitSet ubique, CompactGraph undirected) {
+    this.size = elements.length;
+    this.undirected = undirected;
+    this.elements = elements;
+    this.upStart = up[0];
+    this.up = up[1];
+    this.downStart = down[0];
+    this.down = down[1];
+    this.upperStart = upper[0];
+    this.upper = upper[1];
+    this.lowerStart = lower[0];
+    this.lower = lower[1];
+    this.breadth = breadth;
+    this.ubique = ubique;
+    for (int i = 0; i < size; i++) {
+      if (elements[i] != null) {
+        nodeOf.putIfAbsent(elements[i], i);
+      }
+      Set<Provenance> datasources = (elements[i] instanceof Entity)
+        ? ((Entity) elements[i]).getDataSource() : Collections.emptySet();
+      if (datasources.isEmpty()) {
+        noDatasource.set(i);
+      }
+      for (Provenance p : datasources) {
+        byDatasource.computeIfAbsent(p, k -> new BitSet(size)).set(i);
+      }
+      BioSource organism = organism(elements[i]);
+      if (organism == null) {
+        noOrganism.set(i);
+      } else {
+        byOrganism.computeIfAbsent(organism, k -> new BitSet(size)).set(i);
+      }
+    }
+  }
+
+  //the organism of a molecule (via its sequence entity reference), if any
+  private static BioSource organism(BioPAXElement element) {
+    if (element instanceof SimplePhysicalEntity) {
+      EntityReference er = ((SimplePhysicalEntity) element).getEntityReference();
+      if (er instanceof SequenceEntityReference) {
+        return ((SequenceEntityReference) er).getOrganism();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Builds the graph of the model (the same as the Paxtools query graph with the blacklist filter),
+   * together with the undirected one.
+   *
+   * @param model main BioPAX model
+   * @param blacklist ubiquitous small molecules (can be null)
+   * @return new graph
+   */
+  public static CompactGraph build(Model model, Blacklist blacklist) {
+    final long start = System.currentTimeMillis();
+    final Filter[] filters = (blacklist != null)
+      ? new Filter[]{new UbiqueFilter(blacklist.getListed())} : new Filter[0];
+    //the undirected graph wraps any interaction (there is no wrapper for a gene)
+    CompactGraph undirected = copy(model, new GraphL3Undirected(model, filters), true, null);
+    CompactGraph g = copy(model, new GraphL3(model, filters), false, undirected);
+    log.info("build, " + g.size + " nodes, " + g.up.length + " edges (undirected: " + undirected.size
+      + " nodes, " + undirected.up.length + " edges) in " + (System.currentTimeMillis() - start) + " ms");
+    return g;
+  }
+
+  private static CompactGraph copy(Model model, Graph graph, boolean anyInteraction, CompactGraph undirected) {
+    //number all the nodes reachable from the traversable model objects
+    final Map<Node, Integer> ids = new IdentityHashMap<>();
+    final List<Node> nodes = new ArrayList<>();
+    for (BioPAXElement bpe : model.getObjects()) {
+      if (bpe instanceof PhysicalEntity || (anyInteraction && bpe instanceof Interaction)
+        || bpe instanceof Conversion || bpe instanceof TemplateReaction || bpe instanceof Control) {
+        GraphObject go = graph.getGraphObject(bpe);
+        if (go instanceof Node) {
+          number((Node) go, ids, nodes);
+        }
+      }
+    }
+    //neighbors of a node can be new nodes (e.g. the reverse direction of a reversible conversion)
+    final List<int[]> upEdges = new ArrayList<>();
+    final List<int[]> downEdges = new ArrayList<>();
+    final List<int[]> upperEquiv = new ArrayList<>();
+    final List<int[]> lowerEquiv = new ArrayList<>();
+    final BitSet breadth = new BitSet();
+    final BitSet ubique = new BitSet();
+    for (int i = 0; i < nodes.size(); i++) {
+      Node node = nodes.get(i);
+      breadth.set(i, node.isBreadthNode());
+      ubique.set(i, node.isUbique());
+      int[] ups = new int[node.getUpstream().size()];
+      int k = 0;
+      for (Edge edge : node.getUpstream()) {
+        ups[k++] = number(edge.getSourceNode(), ids, nodes);
+      }
+      upEdges.add(ups);
+      int[] downs = new int[node.getDownstream().size()];
+      k = 0;
+      for (Edge edge : node.getDownstream()) {
+        downs[k++] = number(edge.getTargetNode(), ids, nodes);
+      }
+      downEdges.add(downs);
+      upperEquiv.add(numbers(node.getUpperEquivalent(), ids, nodes));
+      lowerEquiv.add(numbers(node.getLowerEquivalent(), ids, nodes));
+    }
+
+    final BioPAXElement[] elements = new BioPAXElement[nodes.size()];
+    for (int i = 0; i < elements.length; i++) {
+      Set<Object> wrapped = graph.getWrappedSet(Collections.singleton(nodes.get(i)));
+      if (!wrapped.isEmpty()) {
+        elements[i] = (BioPAXElement) wrapped.iterator().next();
+      }
+    }
+
+    return new CompactGraph(elements, csr(upEdges), csr(downEdges),
+      csr(upperEquiv), csr(lowerEquiv), breadth, ubique, undirected);
+  }
+
+  private static int number(Node node, Map<Node, Integer> ids, List<Node> nodes) {
+    Integer id = ids.get(node);
+    if (id == null) {
+      id = nodes.size();
+      ids.put(node, id);
+      nodes.add(node);
+    }
+    return id;
+  }
+
+  private static int[] numbers(Collection<Node> neighbors, Map<Node, Integer> ids, List<Node> nodes) {
+    int[] a = new int[neighbors.size()];
+    int k = 0;
+    for (Node n : neighbors) {
+      a[k++] = number(n, ids, nodes);
+    }
+    return a;
+  }
+
+  //{offsets (n+1), values}
+  private static int[][] csr(List<int[]> lists) {
+    int[] start = new int[lists.size() + 1];
+    for (int i = 0; i < lists.size(); i++) {
+      start[i + 1] = start[i] + lists.get(i).length;
+    }
+    int[] values = new int[start[lists.size()]];
+    for (int i = 0; i < lists.size(); i++) {
+      System.arraycopy(lists.get(i), 0, values, start[i], lists.get(i).length);
+    }
+    return new int[][]{start, values};
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Neighborhood query (Paxtools NeighborhoodQuery equivalent).
+   *
+   * @param sources groups of seed elements
+   * @param limit max. number of interaction steps
+   * @param direction UPSTREAM, DOWNSTREAM, BOTHSTREAM or UNDIRECTED
+   * @return result elements
+   */
+  public Set<BioPAXElement> neighborhood(Set<Set<BioPAXElement>> sources, int limit, Direction direction) {
+    return neighborhood(sources, limit, direction, null, null);
+  }
+
+  /**
+   * Neighborhood query that only goes through the objects of the organisms and data sources.
+   *
+   * @param organisms organism filter values (BioSource URIs, names, taxonomy IDs; null/empty - any)
+   * @param datasources datasource filter values (Provenance URIs or names; null/empty - any)
+   */
+  public Set<BioPAXElement> neighborhood(Set<Set<BioPAXElement>> sources, int limit, Direction direction,
+                                         String[] organisms, String[] datasources) {
+    if (direction == Direction.UNDIRECTED) {
+      //as Paxtools does, both ways on the undirected graph
+      if (undirected == null) {
+        throw new IllegalStateException("not a directed graph");
+      }
+      return undirected.neighborhood(sources, limit, Direction.BOTHSTREAM, organisms, datasources);
+    }
+    final BitSet allowed = filter(organisms, datasources);
+    int[] source = union(seeds(sources, allowed));
+    if (source.length == 0) {
+      return Collections.emptySet();
+    }
+    BitSet result = new BitSet(size);
+    if (direction == Direction.UPSTREAM || direction == Direction.BOTHSTREAM) {
+      reached(bfs(source, Direction.UPSTREAM, limit, allowed), result);
+    }
+    if (direction == Direction.DOWNSTREAM || direction == Direction.BOTHSTREAM) {
+      reached(bfs(source, Direction.DOWNSTREAM, limit, allowed), result);
+    }
+    return toElements(result);
+  }
+
+  /**
+   * Paths-between query (Paxtools PathsBetweenQuery equivalent): objects on the paths
+   * no longer than the limit from a seed group to another.
+   */
+  public Set<BioPAXElement> pathsBetween(Set<Set<BioPAXElement>> sources, int limit) {
+    return pathsBetween(sources, limit, null, null);
+  }
+
+  public Set<BioPAXElement> pathsBetween(Set<Set<BioPAXElement>> sources, int limit,
+                                         String[] organisms, String[] datasources) {
+    final BitSet allowed = filter(organisms, datasources);
+    List<int[]> groups = seeds(sources, allowed);
+    if (groups.size() < 2) {
+      return Collections.emptySet();
+    }
+    //the shortest and second shortest (from a different group) forward and backward distances
+    int[][] fwd = bestTwo(size);
+    int[][] rev = bestTwo(size);
+    for (int g = 0; g < groups.size(); g++) {
+      keepBestTwo(bfs(groups.get(g), Direction.DOWNSTREAM, limit, allowed), g, fwd);
+      keepBestTwo(bfs(groups.get(g), Direction.UPSTREAM, limit, allowed), g, rev);
+    }
+    BitSet result = new BitSet(size);
+    for (int i = 0; i < size; i++) {
+      if (fwd[0][i] >= 0 && rev[0][i] >= 0) {
+        int d = (fwd[1][i] != rev[1][i]) ? fwd[0][i] + rev[0][i]
+          : Math.min(sum(fwd[0][i], rev[2][i]), sum(fwd[2][i], rev[0][i]));
+        if (d <= limit) {
+          result.set(i);
+        }
+      }
+    }
+    return toElements(result);
+  }
+
+  /**
+   * Paths-from-to query (Paxtools PathsFromToQuery equivalent).
+   *
+   * @param sources source element groups
+   * @param targets target element groups
+   * @param limitType NORMAL (limit is the max. path length) or SHORTEST_PLUS_K (limit is k)
+   * @param limit path length limit or k
+   */
+  public Set<BioPAXElement> pathsFromTo(Set<Set<BioPAXElement>> sources, Set<Set<BioPAXElement>> targets,
+                                        LimitType limitType, int limit) {
+    return pathsFromTo(sources, targets, limitType, limit, null, null);
+  }
+
+  public Set<BioPAXElement> pathsFromTo(Set<Set<BioPAXElement>> sources, Set<Set<BioPAXElement>> targets,
+                                        LimitType limitType, int limit, String[] organisms, String[] datasources) {
+    final BitSet allowed = filter(organisms, datasources);
+    int[] source = union(seeds(sources, allowed));
+    int[] target = union(seeds(targets, allowed));
+    if (source.length == 0 || target.length == 0) {
+      return Collections.emptySet();
+    }
+    return toElements(pathsFromTo(source, target, limitType, limit, allowed));
+  }
+
+  private BitSet pathsFromTo(int[] source, int[] target, LimitType limitType, int limit, BitSet allowed) {
+    if (limitType == LimitType.SHORTEST_PLUS_K) {
+      int[] fwd = bfs(source, Direction.DOWNSTREAM, size, allowed);
+      int[] rev = bfs(target, Direction.UPSTREAM, size, allowed);
+      int shortest = Integer.MAX_VALUE;
+      for (int i = 0; i < size; i++) {
+        if (fwd[i] >= 0 && rev[i] >= 0) {
+          shortest = Math.min(shortest, fwd[i] + rev[i]);
+        }
+      }
+      if (shortest == Integer.MAX_VALUE) {
+        return new BitSet();
+      }
+      limit = shortest + limit;
+    }
+    int[] fwd = bfs(source, Direction.DOWNSTREAM, limit, allowed);
+    int[] rev = bfs(target, Direction.UPSTREAM, limit, allowed);
+    BitSet result = new BitSet(size);
+    for (int i = 0; i < size; i++) {
+      if (fwd[i] >= 0 && rev[i] >= 0 && fwd[i] + rev[i] <= limit) {
+        result.set(i);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Common-stream query with the paths of interest (Paxtools CommonStreamQuery
+   * and PathsFromToQuery equivalent): objects reached from at least two seed groups
+   * in the direction, and the paths from the seeds to these (or back, for upstream).
+   *
+   * @param direction UPSTREAM or DOWNSTREAM
+   */
+  public Set<BioPAXElement> commonStreamWithPOI(Set<Set<BioPAXElement>> sources, Direction direction, int limit) {
+    return commonStreamWithPOI(sources, direction, limit, null, null);
+  }
+
+  public Set<BioPAXElement> commonStreamWithPOI(Set<Set<BioPAXElement>> sources, Direction direction, int limit,
+                                                String[] organisms, String[] datasources) {
+    final BitSet allowed = filter(organisms, datasources);
+    if (direction != Direction.UPSTREAM && direction != Direction.DOWNSTREAM) {
+      throw new IllegalArgumentException("direction must be either UPSTREAM or DOWNSTREAM");
+    }
+    List<int[]> groups = seeds(sources, allowed);
+    if (groups.size() < 2) {
+      return Collections.emptySet();
+    }
+    int[] reachedCount = new int[size];
+    for (int[] group : groups) {
+      int[] dist = bfs(group, direction, limit, allowed);
+      for (int i = 0; i < size; i++) {
+        if (dist[i] >= 0) {
+          reachedCount[i]++;
+        }
+      }
+    }
+    int n = 0;
+    int[] common = new int[size];
+    for (int i = 0; i < size; i++) {
+      if (reachedCount[i] >= 2) {
+        common[n++] = i;
+      }
+    }
+    if (n == 0) {
+      return Collections.emptySet();
+    }
+    common = Arrays.copyOf(common, n);
+    int[] source = union(groups);
+    BitSet result = (direction == Direction.DOWNSTREAM)
+      ? pathsFromTo(source, common, LimitType.NORMAL, limit, allowed)
+      : pathsFromTo(common, source, LimitType.NORMAL, limit, allowed);
+    for (int i : common) {
+      result.set(i);
+    }
+    return toElements(result);
+  }
+
+  /*
+   * Paxtools BFS: labels the nodes with their distance from the sources (interaction steps),
+   * not going through the ubiquitous molecules; equivalent entities get the same label.
+   * Only goes through the allowed nodes (null - all). Returns the labels (-1 - not reached).
+   */
+  int[] bfs(int[] sources, Direction direction, int limit, BitSet allowed) {
+    final boolean downstream = (direction == Direction.DOWNSTREAM);
+    final int[] label = new int[size];
+    Arrays.fill(label, -1);
+    final byte[] color = new byte[size];
+    final IntDeque queue = new IntDeque(size + sources.length); //a source can also be queued as an equivalent
+
+    if (limit > 0) {
+      for (int s : sources) {
+        queue.addLast(s);
+      }
+    }
+    for (int s : sources) {
+      label[s] = 0;
+      color[s] = GRAY;
+      labelEquivalents(s, true, 0, true, false, label, color, queue, allowed);
+      labelEquivalents(s, false, 0, true, false, label, color, queue, allowed);
+    }
+
+    while (!queue.isEmpty()) {
+      final int current = queue.removeFirst();
+      if (!ubique.get(current)) {
+        final boolean currentBreadth = breadth.get(current);
+        final int from = downstream ? downStart[current] : upStart[current];
+        final int to = downstream ? downStart[current + 1] : upStart[current + 1];
+        for (int e = from; e < to; e++) {
+          final int neigh = downstream ? down[e] : up[e];
+          if (allowed != null && !allowed.get(neigh)) {
+            continue; //filtered out, as if there were no such node
+          }
+          int dist = (downstream || !currentBreadth) ? label[current] : label[current] + 1;
+          final boolean neighBreadth = breadth.get(neigh);
+          if (neighBreadth && downstream) {
+            dist++;
+          }
+          final boolean further = (!neighBreadth || dist < limit) && !ubique.get(neigh);
+          if (color[neigh] == WHITE) {
+            label[neigh] = dist;
+            if (further) {
+              color[neigh] = GRAY;
+              if (neighBreadth) {
+                queue.addLast(neigh);
+              } else {
+                queue.addFirst(neigh);
+              }
+            } else {
+              color[neigh] = BLACK;
+            }
+          }
+          labelEquivalents(neigh, true, label[neigh], further, !neighBreadth, label, color, queue, allowed);
+          labelEquivalents(neigh, false, label[neigh], further, !neighBreadth, label, color, queue, allowed);
+        }
+      }
+      color[current] = BLACK;
+    }
+
+    return label;
+  }
+
+  private void labelEquivalents(int node, boolean upward, int dist, boolean enqueue, boolean head,
+                                int[] label, byte[] color, IntDeque queue, BitSet allowed) {
+    final int[] start = upward ? upperStart : lowerStart;
+    final int[] equiv = upward ? upper : lower;
+    for (int e = start[node]; e < start[node + 1]; e++) {
+      final int eq = equiv[e];
+      if (allowed != null && !allowed.get(eq)) {
+        continue;
+      }
+      if (color[eq] == WHITE) {
+        label[eq] = dist;
+        if (enqueue) {
+          color[eq] = GRAY;
+          if (head) {
+            queue.addFirst(eq);
+          } else {
+            queue.addLast(eq);
+          }
+        } else {
+          color[eq] = BLACK;
+        }
+      }
+      labelEquivalents(eq, upward, dist, enqueue, head, label, color, queue, allowed);
+    }
+  }
+
+  /*
+   * Seed nodes (one array per group), as in Paxtools QueryExecuter: the physical entities
+   * together with the complexes they (or their generic parents/members) are components of,
+   * and the group's conversions, template reactions and controls.
+   */
+  List<int[]> seeds(Set<Set<BioPAXElement>> groups, BitSet allowed) {
+    List<int[]> seeds = new ArrayList<>();
+    if (groups == null) {
+      return seeds;
+    }
+    for (Set<BioPAXElement> group : groups) {
+      Set<BioPAXElement> related = new HashSet<>();
+      for (BioPAXElement bpe : group) {
+        addRelatedEntities(bpe, related);
+        if (bpe instanceof Conversion || bpe instanceof TemplateReaction || bpe instanceof Control) {
+          related.add(bpe);
+        }
+      }
+      int[] nodes = new int[related.size()];
+      int n = 0;
+      for (BioPAXElement bpe : related) {
+        Integer id = nodeOf.get(bpe);
+        if (id != null && (allowed == null || allowed.get(id))) {
+          nodes[n++] = id;
+        }
+      }
+      if (n > 0) {
+        seeds.add(Arrays.copyOf(nodes, n));
+      }
+    }
+    return seeds;
+  }
+
+  /**
+   * Combines the organism and datasource filter values into the set of allowed nodes
+   * (the objects not having any organism or data source are allowed).
+   * The result is cached for the (recently used) filter values.
+   *
+   * @param organisms BioSource names or taxonomy IDs (case-insensitive), as in Paxtools OrganismFilter
+   * @param datasources Provenance names (case-insensitive), as in Paxtools DataSourceFilter
+   * @return allowed nodes or null (no filters)
+   */
+  BitSet filter(String[] organisms, String[] datasources) {
+    final boolean byOrg = organisms != null && organisms.length > 0;
+    final boolean byDs = datasources != null && datasources.length > 0;
+    if (!byOrg && !byDs) {
+      return null;
+    }
+    final String key = filterKey(organisms) + "|" + filterKey(datasources);
+    BitSet allowed = filters.get(key);
+    if (allowed == null) {
+      allowed = new BitSet(size);
+      allowed.set(0, size);
+      if (byOrg) {
+        BitSet bits = (BitSet) noOrganism.clone();
+        Set<String> values = lowerCase(organisms);
+        byOrganism.forEach((bs, nodes) -> {
+          if (matches(bs, values)) {
+            bits.or(nodes);
+          }
+        });
+        allowed.and(bits);
+      }
+      if (byDs) {
+        BitSet bits = (BitSet) noDatasource.clone();
+        Set<String> values = lowerCase(datasources);
+        byDatasource.forEach((p, nodes) -> {
+          if (matches(p, values)) {
+            bits.or(nodes);
+          }
+        });
+        allowed.and(bits);
+      }
+      filters.put(key, allowed);
+    }
+    return allowed;
+  }
+
+  private static String filterKey(String[] values) {
+    return (values == null) ? "" : String.join(",", lowerCase(values));
+  }
+
+  private static Set<String> lowerCase(String[] values) {
+    Set<String> set = new TreeSet<>();
+    for (String v : values) {
+      if (v != null) {
+        set.add(v.trim().toLowerCase());
+      }
+    }
+    return set;
+  }
+
+  private static boolean matches(Named named, Set<String> values) {
+    for (String name : named.getName()) {
+      if (values.contains(name.toLowerCase())) {
+        return true;
+      }
+    }
+    if (named instanceof BioSource) {
+      for (Xref x : named.getXref()) {
+        if (x instanceof UnificationXref && x.getId() != null && values.contains(x.getId().toLowerCase())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static void addRelatedEntities(BioPAXElement element, Set<BioPAXElement> pes) {
+    if (element instanceof PhysicalEntity) {
+      PhysicalEntity pe = (PhysicalEntity) element;
+      if (pes.add(pe)) {
+        for (Complex cmp : pe.getComponentOf()) {
+          addRelatedEntities(cmp, pes);
+        }
+        addEquivalentsComplexes(pe, true, pes);
+        addEquivalentsComplexes(pe, false, pes);
+      }
+    } else if (element instanceof EntityReference) {
+      for (SimplePhysicalEntity spe : ((EntityReference) element).getEntityReferenceOf()) {
+        addRelatedEntities(spe, pes);
+      }
+    }
+  }
+
+  private static void addEquivalentsComplexes(PhysicalEntity pe, boolean outer, Set<BioPAXElement> pes) {
+    for (PhysicalEntity related : outer ? pe.getMemberPhysicalEntityOf() : pe.getMemberPhysicalEntity()) {
+      for (Complex cmp : related.getComponentOf()) {
+        addRelatedEntities(cmp, pes);
+      }
+      addEquivalentsComplexes(related, outer, pes);
+    }
+  }
+
+  private static int[] union(List<int[]> groups) {
+    BitSet set = new BitSet();
+    for (int[] group : groups) {
+      for (int i : group) {
+        set.set(i);
+      }
+    }
+    return set.stream().toArray();
+  }
+
+  private static void reached(int[] label, BitSet result) {
+    for (int i = 0; i < label.length; i++) {
+      if (label[i] >= 0) {
+        result.set(i);
+      }
+    }
+  }
+
+  //{shortest distance, its group, second shortest distance from another group}
+  private static int[][] bestTwo(int n) {
+    int[][] best = new int[3][n];
+    Arrays.fill(best[0], -1);
+    Arrays.fill(best[1], -1);
+    Arrays.fill(best[2], -1);
+    return best;
+  }
+
+  private static void keepBestTwo(int[] label, int group, int[][] best) {
+    for (int i = 0; i < label.length; i++) {
+      final int d = label[i];
+      if (d < 0) {
+        continue;
+      }
+      if (best[0][i] < 0 || d < best[0][i]) {
+        if (best[1][i] != group) {
+          best[2][i] = best[0][i];
+        }
+        best[0][i] = d;
+        best[1][i] = group;
+      } else if (best[1][i] != group && (best[2][i] < 0 || d < best[2][i])) {
+        best[2][i] = d;
+      }
+    }
+  }
+
+  private static int sum(int a, int b) {
+    return (a < 0 || b < 0) ? Integer.MAX_VALUE : a + b;
+  }
+
+  /*
+   * Maps the nodes back to the model objects, and then removes the simple physical entities
+   * not connected to anything else in the result (as Paxtools QueryExecuter does).
+   */
+  private Set<BioPAXElement> toElements(BitSet nodes) {
+    Set<BioPAXElement> set = new HashSet<>();
+    for (int i = nodes.nextSetBit(0); i >= 0; i = nodes.nextSetBit(i + 1)) {
+      if (elements[i] != null) {
+        set.add(elements[i]);
+      }
+    }
+    set.removeIf(bpe -> bpe instanceof SimplePhysicalEntity && isDisconnected((SimplePhysicalEntity) bpe, set));
+    return set;
+  }
+
+  private static boolean isDisconnected(SimplePhysicalEntity spe, Set<BioPAXElement> result) {
+    for (Interaction inter : spe.getParticipantOf()) {
+      if (result.contains(inter)) {
+        return false;
+      }
+    }
+    for (Complex c : spe.getComponentOf()) {
+      if (result.contains(c)) {
+        return false;
+      }
+    }
+    for (PhysicalEntity pe : spe.getMemberPhysicalEntityOf()) {
+      if (result.contains(pe)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  //a fixed capacity int deque (each node is queued at most once per traversal)
+  private static final class IntDeque {
+    private final int[] items;
+    private int head;
+    private int count;
+
+    IntDeque(int capacity) {
+      items = new int[Math.max(capacity, 1)];
+    }
+
+    boolean isEmpty() {
+      return count == 0;
+    }
+
+    void addFirst(int v) {
+      head = (head == 0) ? items.length - 1 : head - 1;
+      items[head] = v;
+      count++;
+    }
+
+    void addLast(int v) {
+      items[(head + count) % items.length] = v;
+      count++;
+    }
+
+    int removeFirst() {
+      int v = items[head];
+      head = (head + 1) % items.length;
+      count--;
+      return v;
+    }
+  }
+}
@@ -2,9 +2,8 @@ package cpath.service;
 
 import cpath.service.api.Analysis;
 import cpath.service.metadata.Index;
+import cpath.service.api.OutputFormat;
 import cpath.service.api.Service;
-import cpath.service.jaxb.SearchHit;
-import cpath.service.jaxb.SearchResponse;
 import cpath.service.metadata.Datasource;
 
 import org.apache.commons.cli.*;
@@ -30,6 +29,7 @@ import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -194,6 +194,8 @@ public class ConsoleApplication implements CommandLineRunner {
     LOG.info("Over-writing model: {}...", service.settings().mainModelFile());
     new SimpleIOHandler(BioPAXLevel.L3).convertToOWL(model,
         new GZIPOutputStream(new FileOutputStream(service.settings().mainModelFile())));
+    ModelSnapshot.write(model, Paths.get(service.settings().mainModelFile()),
+        Paths.get(service.settings().mainModelSnapshotFile()));
     //re-index
     reindex(model);
   }
@@ -224,6 +226,10 @@ public class ConsoleApplication implements CommandLineRunner {
     LOG.info("premerge: this instance is configured to integrate and query " +
       " bio data about following organisms: " + Arrays.toString(service.settings().getOrganisms()));
     PreMerger premerger = new PreMerger(service, validator);
+    Map<String, String> outdated = premerger.outdated();
+    LOG.info("premerge: {} of {} data sources will be (re-)processed{}", outdated.size(),
+      service.metadata().getDatasources().size(), (outdated.isEmpty()) ? "" : ":");
+    outdated.forEach((ds, reason) -> LOG.info("premerge: {} - {}", ds, reason));
     premerger.premerge();
     // create the Warehouse BioPAX model and id-mapping db table
     if (!Files.exists(Paths.get(service.settings().warehouseModelFile()))) {
@@ -365,6 +371,34 @@ public class ConsoleApplication implements CommandLineRunner {
       service.init(); // load/reload the main model, index, etc.
     }
 
+    //make sure there is an up-to-date binary snapshot of the main model (for faster startup)
+    Path archive = Paths.get(service.settings().mainModelFile());
+    Path snapshot = Paths.get(service.settings().mainModelSnapshotFile());
+    if(!ModelSnapshot.isValid(snapshot, archive)) {
+      LOG.info("saving the main model snapshot...");
+      ModelSnapshot.write(service.getModel(), archive, snapshot);
+    }
+
+    //pre-convert the pathways to SBGN (the slowest format to serve), unless done already for this model
+    Path sbgn = Paths.get(service.settings().sbgnStoreFile());
+    boolean layout = service.settings().isSbgnLayoutEnabled();
+    if(!SbgnStore.isValid(sbgn, archive, layout)) {
+      LOG.info("converting the pathways to SBGN...");
+      //the stored result is exactly what the 'get' query would return (a new options map for each call)
+      SbgnStore.build(service.getModel(), uri -> service.fetch(OutputFormat.SBGN, null, false, uri),
+        layout, archive, sbgn, service.settings().buildThreads());
+    }
+
+    //find all the SIF interactions of the main model (to select query results' SIF from), unless done already
+    Path sif = Paths.get(service.settings().sifEdgesFile());
+    Path blacklist = Paths.get(service.settings().blacklistFile());
+    if(!SifEdgeTable.isValid(sif, archive, blacklist)) {
+      LOG.info("searching for the SIF interactions in the main model...");
+      SifEdgeTable table = SifEdgeTable.build(service.getModel(), service.getBlacklist());
+      table.write(archive, blacklist, sif);
+      LOG.info("SIF edges per datasource: " + table.countByDatasource());
+    }
+
     //this was to integrate with UniProt portal/data - to add/update their external links to PathwayCommons apps...
     LOG.info("creating the list of primary uniprot ACs...");
     Set<String> acs = new TreeSet<>();
@@ -394,14 +428,7 @@ public class ConsoleApplication implements CommandLineRunner {
 
   private Collection<String> findAllUris(Index index, Class<? extends BioPAXElement> type, String[] ds, String[] org) {
     Collection<String> uris = new ArrayList<>();
-    SearchResponse resp = index.search("*", 0, type, ds, org);
-    int page = 0;
-    while (!resp.isEmpty()) {
-      for (SearchHit h : resp.getSearchHit())
-        uris.add(h.getUri());
-      //next page
-      resp = index.search("*", ++page, type, ds, org);
-    }
+    index.forEachHit("*", type, ds, org, h -> uris.add(h.getUri()));
     LOG.info("findAllUris(in " + type.getSimpleName() + ", ds: " + Arrays.toString(ds) + ", org: " + Arrays.toString(org) + ") "
       + "collected " + uris.size());
     return uris;
@@ -0,0 +1,274 @@
+package cpath.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.pattern.util.Blacklist;
+import org.biopax.paxtools.query.wrapperL3.UbiqueFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cpath.service.jaxb.SearchResponse;
+
+/**
+ * An immutable set of the data the queries run against - the main BioPAX model,
+ * full-text index, blacklist, xref id dictionary, etc. - the "dataset generation".
+ *
+ * The service swaps the whole generation at once (see {@link ServiceImpl#reload(String)}),
+ * so that a request that captured (entered) a generation keeps using the same model and index
+ * until it's done, while the new requests go to the new one.
+ * A replaced generation is retired and its resources (the index) are released
+ * as soon as there are no more in-flight requests using it.
+ *
+ * @author rodche
+ */
+public final class Generation {
+  private static final Logger log = LoggerFactory.getLogger(Generation.class);
+
+  private static final AtomicLong COUNTER = new AtomicLong();
+
+  private static final int TOP_PATHWAYS_CACHE_MAX = 100;
+
+  final long id;
+  final Model model;
+  final IndexImpl index;
+  final Blacklist blacklist;
+  final UbiqueFilter ubiqueFilter; //the blacklist as a Paxtools query filter; null when there's no blacklist
+  final IdDictionary idDictionary; //can be null (the full-text search is used instead)
+  final CompactGraph graph; //can be null (Paxtools QueryExecuter is used instead)
+  final SbgnStore sbgn; //can be null (pathways are converted to SBGN on request)
+  final SifEdgeTable sif; //can be null (SIF patterns search runs on each query result)
+  final MappingStore mappings; //can be null (the index is searched for id-mapping)
+
+  //all top pathways (i.e. q='*') per datasource/organism filter values
+  final Map<String, SearchResponse> topPathways = Collections.synchronizedMap(
+    new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, SearchResponse> eldest) {
+        return size() > TOP_PATHWAYS_CACHE_MAX;
+      }
+    });
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private volatile boolean retired;
+  private volatile Generation successor; //the generation that replaced this one (can share its components)
+  private final AtomicBoolean released = new AtomicBoolean();
+
+  private Generation(Builder builder) {
+    this.id = COUNTER.incrementAndGet();
+    this.model = builder.model;
+    this.index = builder.index;
+    this.blacklist = builder.blacklist;
+    this.ubiqueFilter = (blacklist != null) ? new UbiqueFilter(blacklist.getListed()) : null;
+    this.idDictionary = builder.idDictionary;
+    this.graph = builder.graph;
+    this.sbgn = builder.sbgn;
+    this.sif = builder.sif;
+    this.mappings = builder.mappings;
+  }
+
+  /**
+   * @return a builder of a new generation (all the components are null unless set)
+   */
+  static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * @return a builder of a new generation that has the same components as this one
+   */
+  Builder toBuilder() {
+    return new Builder().model(model).index(index).blacklist(blacklist).idDictionary(idDictionary)
+      .graph(graph).sbgn(sbgn).sif(sif).mappings(mappings);
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public Model getModel() {
+    return model;
+  }
+
+  public Blacklist getBlacklist() {
+    return blacklist;
+  }
+
+  /*
+   * The with* copies keep the components that do not depend on the replaced one
+   * and drop (set to null) the others. The caller retires the replaced generation
+   * with the copy as its successor (see retire(Generation)), so that the dropped components
+   * (e.g. SBGN store) are closed, and the shared ones (e.g. index) are not.
+   */
+
+  Generation withModel(Model newModel) {
+    //the dictionary, graph, SBGN and SIF data are made from the main model
+    return toBuilder().model(newModel).idDictionary(null).graph(null).sbgn(null).sif(null).build();
+  }
+
+  Generation withIndex(IndexImpl newIndex) {
+    //the dictionary is made from the index
+    return toBuilder().index(newIndex).idDictionary(null).sbgn(null).build();
+  }
+
+  Generation withBlacklist(Blacklist newBlacklist) {
+    //the graph, SBGN and SIF data are made using the blacklist (ubiquitous molecules)
+    return toBuilder().blacklist(newBlacklist).graph(null).sbgn(null).sif(null).build();
+  }
+
+  Generation withMappings(MappingStore newMappings) {
+    return toBuilder().mappings(newMappings).build();
+  }
+
+  /**
+   * Registers an in-flight request.
+   *
+   * @return false if this generation has been retired (the caller should use the current one instead)
+   */
+  boolean enter() {
+    inFlight.incrementAndGet();
+    if(retired) {
+      exit();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Unregisters the in-flight request; releases the retired generation when it was the last one.
+   */
+  void exit() {
+    if(inFlight.decrementAndGet() == 0 && retired) {
+      release();
+    }
+  }
+
+  /**
+   * Marks this generation as replaced, so that it gets released
+   * now or once the in-flight requests are done.
+   */
+  void retire() {
+    retire(null);
+  }
+
+  /**
+   * Marks this generation as replaced by the next one, which may share some of its components;
+   * only the components that are not shared are closed when this one gets released.
+   *
+   * @param next the new current generation (null - none of the components are shared)
+   */
+  void retire(Generation next) {
+    successor = next;
+    retired = true;
+    if(inFlight.get() == 0) {
+      release();
+    }
+  }
+
+  int getInFlight() {
+    return inFlight.get();
+  }
+
+  boolean isReleased() {
+    return released.get();
+  }
+
+  private void release() {
+    if(released.compareAndSet(false, true)) {
+      topPathways.clear();
+      final Generation next = successor;
+      if(index != null && (next == null || next.index != index)) {
+        try {
+          index.close();
+        } catch (Exception e) {
+          log.error("release, failed to close the index of generation " + id, e);
+        }
+      }
+      if(sbgn != null && (next == null || next.sbgn != sbgn)) {
+        try {
+          sbgn.close();
+        } catch (Exception e) {
+          log.error("release, failed to close the SBGN store of generation " + id, e);
+        }
+      }
+      log.info("release, generation " + id + " released");
+    }
+  }
+
+  /**
+   * Sets the components of a new generation.
+   */
+  static final class Builder {
+    private Model model;
+    private IndexImpl index;
+    private Blacklist blacklist;
+    private IdDictionary idDictionary;
+    private CompactGraph graph;
+    private SbgnStore sbgn;
+    private SifEdgeTable sif;
+    private MappingStore mappings;
+
+    private Builder() {
+    }
+
+    Builder model(Model model) {
+      this.model = model;
+      return this;
+    }
+
+    Builder index(IndexImpl index) {
+      this.index = index;
+      return this;
+    }
+
+    Builder blacklist(Blacklist blacklist) {
+      this.blacklist = blacklist;
+      return this;
+    }
+
+    Builder idDictionary(IdDictionary idDictionary) {
+      this.idDictionary = idDictionary;
+      return this;
+    }
+
+    Builder graph(CompactGraph graph) {
+      this.graph = graph;
+      return this;
+    }
+
+    Builder sbgn(SbgnStore sbgn) {
+      this.sbgn = sbgn;
+      return this;
+    }
+
+    Builder sif(SifEdgeTable sif) {
+      this.sif = sif;
+      return this;
+    }
+
+    Builder mappings(MappingStore mappings) {
+      this.mappings = mappings;
+      return this;
+    }
+
+    Generation build() {
+      return new Generation(this);
+    }
+  }
+
+  /**
+   * A generation captured by the current thread (e.g. for the duration of a web request);
+   * must be closed in the same thread.
+   */
+  public interface Lease extends AutoCloseable {
+    Generation generation();
+
+    @Override
+    void close();
+  }
+}
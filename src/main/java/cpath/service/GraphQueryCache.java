@@ -0,0 +1,247 @@
+package cpath.service;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.biopax.paxtools.query.algorithm.Direction;
+import org.biopax.paxtools.query.algorithm.LimitType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cpath.service.api.OutputFormat;
+import cpath.service.jaxb.DataResponse;
+
+/**
+ * A bounded in-memory cache of the converted graph query results
+ * (neighborhood, pathsbetween, pathsfromto, commonstream).
+ *
+ * Entries are keyed by a canonical form of the query (sorted ids and filter values),
+ * weighed by the result size in bytes, and evicted in LRU order
+ * when the total size exceeds the limit or when not accessed for too long.
+ * The cache must be cleared whenever the model, index or blacklist changes.
+ *
+ * @author rodche
+ */
+public final class GraphQueryCache {
+  private static final Logger log = LoggerFactory.getLogger(GraphQueryCache.class);
+
+  private final long maxBytes;
+  private final long maxEntryBytes;
+  private final long maxIdleMillis;
+
+  //access-ordered map (the eldest entry is the least recently used one)
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+  private long totalBytes;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  private static final class Entry {
+    final byte[] data; //null - empty result
+    final OutputFormat format;
+    final Set<String> providers;
+    long lastAccess;
+
+    Entry(byte[] data, OutputFormat format, Set<String> providers) {
+      this.data = data;
+      this.format = format;
+      this.providers = providers;
+      this.lastAccess = System.currentTimeMillis();
+    }
+
+    long weight() {
+      return (data == null) ? 0 : data.length;
+    }
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param maxBytes total size limit of the cached results; 0 or less - disables caching
+   * @param maxIdleSeconds an entry that has not been accessed for this long gets evicted
+   */
+  public GraphQueryCache(long maxBytes, long maxIdleSeconds) {
+    this.maxBytes = Math.max(0, maxBytes);
+    this.maxEntryBytes = this.maxBytes / 8; //do not let a single huge result flush everything else
+    this.maxIdleMillis = Math.max(1, maxIdleSeconds) * 1000;
+  }
+
+  public boolean isEnabled() {
+    return maxBytes > 0;
+  }
+
+  /**
+   * Builds the canonical cache key of a graph query,
+   * so that the same query with differently ordered ids or filter values
+   * hits the same entry.
+   */
+  public static String key(String kind, String[] sources, String[] targets, Integer limit,
+                           LimitType limitType, Direction direction, String[] organisms,
+                           String[] datasources, boolean subPathways, OutputFormat format,
+                           Map<String, String> options)
+  {
+    StringBuilder sb = new StringBuilder(kind);
+    sb.append("|s=").append(sorted(sources))
+      .append("|t=").append(sorted(targets))
+      .append("|l=").append(limit)
+      .append("|lt=").append(limitType)
+      .append("|d=").append(direction)
+      .append("|o=").append(sorted(organisms))
+      .append("|ds=").append(sorted(datasources))
+      .append("|sp=").append(subPathways)
+      .append("|f=").append(format)
+      .append("|op=").append((options == null) ? "{}" : new TreeMap<>(options));
+    return sb.toString();
+  }
+
+  //sorted distinct values (also used to name the query result model, which is then cached too)
+  static String sorted(String[] values) {
+    if(values == null || values.length == 0) {
+      return "[]";
+    }
+    return new TreeSet<>(Arrays.asList(values)).toString();
+  }
+
+  /**
+   * Gets a new data response (backed by a new in-memory result buffer
+   * that shares the cached bytes) from the cached result, if present.
+   *
+   * @param key canonical query key
+   * @return the result or null (cache miss)
+   */
+  public DataResponse get(String key) {
+    if(!isEnabled()) {
+      return null;
+    }
+
+    Entry e;
+    synchronized (this) {
+      expire();
+      e = entries.get(key);
+      if(e != null) {
+        e.lastAccess = System.currentTimeMillis();
+      }
+    }
+
+    if(e == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+
+    DataResponse r = new DataResponse();
+    r.setFormat(e.format);
+    r.setProviders(e.providers);
+    if(e.data != null) {
+      //the cached bytes are never modified; the web controller only reads them
+      r.setData(ResultBuffer.of(e.data));
+    }
+    hits.incrementAndGet();
+    return r;
+  }
+
+  /**
+   * Caches the converted result (empty or a result buffer)
+   * unless it is too large.
+   *
+   * @param key canonical query key
+   * @param result a successful query result
+   */
+  public void put(String key, DataResponse result) {
+    if(!isEnabled()) {
+      return;
+    }
+
+    byte[] data = null;
+    if(result.getData() instanceof ResultBuffer) {
+      ResultBuffer buffer = (ResultBuffer) result.getData();
+      try {
+        if(buffer.size() > maxEntryBytes) {
+          return;
+        }
+        data = buffer.toByteArray();
+      } catch (IOException e) {
+        log.error("put, failed to read the result " + buffer + "; " + e);
+        return;
+      }
+    } else if(result.getData() != null) {
+      return; //unexpected type of data; not cached
+    }
+
+    Entry e = new Entry(data, result.getFormat(), Set.copyOf(result.getProviders()));
+    synchronized (this) {
+      Entry old = entries.put(key, e);
+      if(old != null) {
+        totalBytes -= old.weight();
+      }
+      totalBytes += e.weight();
+      //evict the least recently used ones while over the limit
+      Iterator<Entry> it = entries.values().iterator();
+      while(totalBytes > maxBytes && it.hasNext()) {
+        Entry eldest = it.next();
+        if(eldest == e) {
+          continue;
+        }
+        it.remove();
+        totalBytes -= eldest.weight();
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  /*
+   * Removes entries that have not been accessed for too long
+   * (must be called from a synchronized block).
+   */
+  private void expire() {
+    final long oldest = System.currentTimeMillis() - maxIdleMillis;
+    Iterator<Entry> it = entries.values().iterator();
+    while(it.hasNext()) {
+      Entry e = it.next();
+      if(e.lastAccess >= oldest) {
+        break; //the rest were accessed more recently
+      }
+      it.remove();
+      totalBytes -= e.weight();
+      evictions.incrementAndGet();
+    }
+  }
+
+  /**
+   * Removes all entries (e.g. after a new model, index or blacklist was set).
+   */
+  public synchronized void clear() {
+    if(!entries.isEmpty()) {
+      log.info("clear, dropped " + entries.size() + " cached results; " + this);
+    }
+    entries.clear();
+    totalBytes = 0;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  public synchronized long getSizeBytes() {
+    return totalBytes;
+  }
+
+  public synchronized int getSize() {
+    return entries.size();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("hits: %d, misses: %d, evictions: %d, entries: %d, bytes: %d",
+      getHits(), getMisses(), getEvictions(), getSize(), getSizeBytes());
+  }
+}
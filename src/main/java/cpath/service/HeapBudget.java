@@ -0,0 +1,87 @@
+package cpath.service;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * A counting semaphore of the heap memory (in megabytes) that the parallel build tasks
+ * reserve according to the estimated size of the data (e.g. BioPAX model) they are about to load,
+ * so that only as many tasks run at once as the configured budget allows.
+ *
+ * A task that needs more than the whole budget runs alone (takes all the permits).
+ * The semaphore is fair, i.e. a large task is not starved by the smaller ones that come after it.
+ *
+ * @author rodche
+ */
+final class HeapBudget {
+  private static final long MB = 1024L * 1024;
+
+  /**
+   * Roughly, how much heap a BioPAX model takes per byte of its gzip RDF/XML file
+   * (the XML is about 10 times larger than the gzip file, and the model takes several times more than that).
+   */
+  static final long BYTES_PER_GZIP_BYTE = 50L;
+
+  private final int total;
+  private final Semaphore permits;
+
+  /**
+   * Constructor.
+   *
+   * @param bytes max. heap memory that all the tasks may use at once (at least 1Mb is assumed)
+   */
+  HeapBudget(long bytes) {
+    this.total = (int) Math.max(1L, Math.min(Integer.MAX_VALUE, bytes / MB));
+    this.permits = new Semaphore(total, true);
+  }
+
+  /**
+   * Blocks until the memory is available and reserves it.
+   *
+   * @param bytes estimated heap memory the task requires
+   * @return no. permits taken (pass to {@link #release(int)} when the task is done)
+   * @throws InterruptedException when interrupted while waiting
+   */
+  int acquire(long bytes) throws InterruptedException {
+    final int n = permits(bytes);
+    permits.acquire(n);
+    return n;
+  }
+
+  /**
+   * Reserves the memory if it is available now (does not wait).
+   *
+   * @param bytes estimated heap memory the task requires
+   * @return no. permits taken (pass to {@link #release(int)} when the task is done), or 0 - not enough memory
+   */
+  int tryAcquire(long bytes) {
+    final int n = permits(bytes);
+    return permits.tryAcquire(n) ? n : 0;
+  }
+
+  private int permits(long bytes) {
+    return (int) Math.max(1L, Math.min(total, (bytes + MB - 1) / MB));
+  }
+
+  /**
+   * Returns the reserved memory.
+   *
+   * @param n no. permits taken by {@link #acquire(long)} or {@link #tryAcquire(long)}
+   */
+  void release(int n) {
+    permits.release(n);
+  }
+
+  /**
+   * @return the budget (megabytes)
+   */
+  int total() {
+    return total;
+  }
+
+  /**
+   * @return currently available memory (megabytes)
+   */
+  int available() {
+    return permits.availablePermits();
+  }
+}
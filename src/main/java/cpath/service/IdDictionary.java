@@ -0,0 +1,229 @@
+package cpath.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cpath.service.metadata.Index;
+
+/**
+ * An immutable in-memory dictionary: xref ID (exactly as indexed in the 'xrefid' field)
+ * to the URIs of the BioPAX objects (of selected types) having that ID.
+ *
+ * It is to resolve graph query seeds without running a full-text query per identifier.
+ * Storage is compact: the IDs are UTF-8 bytes in one sorted array (in the index term order),
+ * and the ID-to-URIs relation is a pair of int arrays (offsets, URI ordinals).
+ *
+ * @author rodche
+ */
+public final class IdDictionary {
+  private static final Logger log = LoggerFactory.getLogger(IdDictionary.class);
+
+  private final byte[] keys; //all the IDs (UTF-8), sorted
+  private final int[] keyStart; //keys[keyStart[i]..keyStart[i+1]) is the i-th ID
+  private final int[] valueStart; //values[valueStart[i]..valueStart[i+1]) are URI ordinals of the i-th ID
+  private final int[] values;
+  private final String[] uris;
+
+  private IdDictionary(byte[] keys, int[] keyStart, int[] valueStart, int[] values, String[] uris) {
+    this.keys = keys;
+    this.keyStart = keyStart;
+    this.valueStart = valueStart;
+    this.values = values;
+    this.uris = uris;
+  }
+
+  /**
+   * Builds the dictionary from the index reader.
+   *
+   * @param reader index reader
+   * @param typeNames BioPAX class names (lower case, as in the 'type' field) of the objects to include
+   * @return new dictionary
+   * @throws IOException when reading the index fails
+   */
+  static IdDictionary build(IndexReader reader, Collection<String> typeNames) throws IOException {
+    final long start = System.currentTimeMillis();
+    final Bits liveDocs = MultiBits.getLiveDocs(reader);
+
+    //find the documents of the required types
+    FixedBitSet docs = new FixedBitSet(Math.max(1, reader.maxDoc()));
+    Terms types = MultiTerms.getTerms(reader, Index.FIELD_TYPE);
+    if(types != null) {
+      TermsEnum te = types.iterator();
+      PostingsEnum pe = null;
+      for(String typeName : typeNames) {
+        if(te.seekExact(new BytesRef(typeName))) {
+          pe = te.postings(pe, PostingsEnum.NONE);
+          for(int d = pe.nextDoc(); d != DocIdSetIterator.NO_MORE_DOCS; d = pe.nextDoc()) {
+            if(liveDocs == null || liveDocs.get(d)) {
+              docs.set(d);
+            }
+          }
+        }
+      }
+    }
+
+    //assign dense ordinals to these docs and get their URIs
+    final int[] docToOrd = new int[reader.maxDoc()];
+    Arrays.fill(docToOrd, -1);
+    final List<String> uriList = new ArrayList<>();
+    final StoredFields storedFields = reader.storedFields();
+    final Set<String> uriField = Collections.singleton(Index.FIELD_URI);
+    for(int d = docs.nextSetBit(0); d != DocIdSetIterator.NO_MORE_DOCS;
+        d = (d + 1 < docs.length()) ? docs.nextSetBit(d + 1) : DocIdSetIterator.NO_MORE_DOCS) {
+      Document doc = storedFields.document(d, uriField);
+      String uri = doc.get(Index.FIELD_URI);
+      if(uri != null) {
+        docToOrd[d] = uriList.size();
+        uriList.add(uri);
+      }
+    }
+
+    //collect the ID terms (sorted as BytesRef, i.e. by code points) that occur in these docs
+    ByteArrayBuilder keyBuf = new ByteArrayBuilder();
+    IntArrayBuilder keyStarts = new IntArrayBuilder();
+    IntArrayBuilder valueStarts = new IntArrayBuilder();
+    IntArrayBuilder vals = new IntArrayBuilder();
+    Terms ids = MultiTerms.getTerms(reader, Index.FIELD_XREFID);
+    if(ids != null && !uriList.isEmpty()) {
+      TermsEnum te = ids.iterator();
+      PostingsEnum pe = null;
+      for(BytesRef term = te.next(); term != null; term = te.next()) {
+        final int from = vals.size;
+        pe = te.postings(pe, PostingsEnum.NONE);
+        for(int d = pe.nextDoc(); d != DocIdSetIterator.NO_MORE_DOCS; d = pe.nextDoc()) {
+          int ord = docToOrd[d];
+          if(ord >= 0 && (liveDocs == null || liveDocs.get(d))) {
+            vals.add(ord);
+          }
+        }
+        if(vals.size > from) {
+          keyStarts.add(keyBuf.size);
+          keyBuf.add(term.bytes, term.offset, term.length);
+          valueStarts.add(from);
+        }
+      }
+    }
+    keyStarts.add(keyBuf.size);
+    valueStarts.add(vals.size);
+
+    IdDictionary dictionary = new IdDictionary(keyBuf.toArray(), keyStarts.toArray(),
+      valueStarts.toArray(), vals.toArray(), uriList.toArray(new String[0]));
+    log.info("build, " + dictionary + " in " + (System.currentTimeMillis() - start) + " ms");
+    return dictionary;
+  }
+
+  /**
+   * Number of IDs in the dictionary.
+   */
+  public int size() {
+    return keyStart.length - 1;
+  }
+
+  /**
+   * Finds the URIs by ID (exact match, case-sensitive).
+   *
+   * @param id identifier
+   * @return URIs (unmodifiable) or empty set if the id is not in the dictionary
+   */
+  public Set<String> lookup(String id) {
+    if(id == null || size() == 0) {
+      return Collections.emptySet();
+    }
+    int i = find(id.getBytes(StandardCharsets.UTF_8));
+    if(i < 0) {
+      return Collections.emptySet();
+    }
+    Set<String> result = new TreeSet<>();
+    for(int j = valueStart[i]; j < valueStart[i + 1]; j++) {
+      result.add(uris[values[j]]);
+    }
+    return Collections.unmodifiableSet(result);
+  }
+
+  /**
+   * Finds the URIs for a batch of IDs.
+   *
+   * @param ids identifiers
+   * @return ID to URIs map that contains only the IDs found in the dictionary
+   */
+  public Map<String, Set<String>> lookup(Collection<String> ids) {
+    Map<String, Set<String>> result = new HashMap<>();
+    for(String id : ids) {
+      if(id != null && !result.containsKey(id)) {
+        Set<String> found = lookup(id);
+        if(!found.isEmpty()) {
+          result.put(id, found);
+        }
+      }
+    }
+    return result;
+  }
+
+  //binary search by unsigned byte (i.e. Unicode code point) order, the same as the index terms order
+  private int find(byte[] key) {
+    int lo = 0;
+    int hi = size() - 1;
+    while(lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int c = Arrays.compareUnsigned(keys, keyStart[mid], keyStart[mid + 1], key, 0, key.length);
+      if(c < 0) {
+        lo = mid + 1;
+      } else if(c > 0) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ids: %d, uris: %d, links: %d, key bytes: %d", size(), uris.length, values.length, keys.length);
+  }
+
+  //growable primitive arrays (to avoid boxing when building the dictionary)
+
+  private static final class IntArrayBuilder {
+    int[] a = new int[1024];
+    int size;
+
+    void add(int v) {
+      if(size == a.length) {
+        a = Arrays.copyOf(a, a.length * 2);
+      }
+      a[size++] = v;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(a, size);
+    }
+  }
+
+  private static final class ByteArrayBuilder {
+    byte[] a = new byte[8192];
+    int size;
+
+    void add(byte[] b, int off, int len) {
+      if(size + len > a.length) {
+        a = Arrays.copyOf(a, Math.max(a.length * 2, size + len));
+      }
+      System.arraycopy(b, off, a, size, len);
+      size += len;
+    }
+
+    byte[] toArray() {
+      return Arrays.copyOf(a, size);
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package cpath.service;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cpath.service.metadata.Index;
+
+/**
+ * An immutable in-memory reverse id-mapping table: (dstDb, dstId) to the source IDs,
+ * loaded at once from the id-mapping documents of the index, to be used during a full-text indexing session
+ * instead of searching the index for every ChEBI/UniProt ID of every BioPAX element.
+ *
+ * Only the mappings to the selected target databases and from the accepted source databases are kept.
+ * Source IDs are dictionary-encoded (each distinct ID string is stored once; lists are int ordinals).
+ *
+ * @author rodche
+ */
+public final class IdMappingTable {
+  private static final Logger log = LoggerFactory.getLogger(IdMappingTable.class);
+
+  private static final int[] NONE = new int[0];
+
+  private final Map<String, int[]> table; //dstDb + '\t' + dstId -> srcId ordinals
+  private final String[] srcIds;
+  private final long estimatedBytes;
+
+  private final AtomicLong lookups = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+
+  private IdMappingTable(Map<String, int[]> table, String[] srcIds, long estimatedBytes) {
+    this.table = table;
+    this.srcIds = srcIds;
+    this.estimatedBytes = estimatedBytes;
+  }
+
+  /**
+   * Loads the mappings from the index.
+   *
+   * @param reader index reader
+   * @param srcDbFilters target db name (upper case, as indexed) to the accepted source db names predicate
+   * @return new table
+   * @throws IOException when reading the index fails
+   */
+  static IdMappingTable build(IndexReader reader, Map<String, Predicate<String>> srcDbFilters) throws IOException {
+    final long start = System.currentTimeMillis();
+    final Map<String, List<Integer>> lists = new HashMap<>();
+    final Map<String, Integer> dictionary = new HashMap<>();
+    final List<String> ids = new ArrayList<>();
+    final Set<String> fields = Set.of(Index.FIELD_SRCDB, Index.FIELD_SRCID, Index.FIELD_DSTID);
+    long numMappings = 0;
+
+    for(LeafReaderContext ctx : reader.leaves()) {
+      final LeafReader leaf = ctx.reader();
+      final Terms terms = leaf.terms(Index.FIELD_DSTDB);
+      if(terms == null) {
+        continue;
+      }
+      final Bits liveDocs = leaf.getLiveDocs();
+      final StoredFields storedFields = leaf.storedFields();
+      final TermsEnum te = terms.iterator();
+      PostingsEnum pe = null;
+      for(Map.Entry<String, Predicate<String>> e : srcDbFilters.entrySet()) {
+        final String dstDb = e.getKey();
+        if(!te.seekExact(new BytesRef(dstDb))) {
+          continue;
+        }
+        pe = te.postings(pe, PostingsEnum.NONE);
+        for(int d = pe.nextDoc(); d != DocIdSetIterator.NO_MORE_DOCS; d = pe.nextDoc()) {
+          if(liveDocs != null && !liveDocs.get(d)) {
+            continue;
+          }
+          Document doc = storedFields.document(d, fields);
+          String srcDb = doc.get(Index.FIELD_SRCDB);
+          if(srcDb == null || !e.getValue().test(srcDb)) {
+            continue;
+          }
+          String srcId = doc.get(Index.FIELD_SRCID);
+          Integer ord = dictionary.get(srcId);
+          if(ord == null) {
+            ord = ids.size();
+            ids.add(srcId);
+            dictionary.put(srcId, ord);
+          }
+          lists.computeIfAbsent(key(dstDb, doc.get(Index.FIELD_DSTID)), k -> new ArrayList<>(2)).add(ord);
+          numMappings++;
+        }
+      }
+    }
+
+    //compact: boxed lists to int arrays (distinct ordinals); estimate the memory used
+    final Map<String, int[]> table = new HashMap<>(Math.max(16, (int) (lists.size() / 0.75f) + 1));
+    long bytes = 0;
+    for(Map.Entry<String, List<Integer>> e : lists.entrySet()) {
+      int[] ords = e.getValue().stream().mapToInt(Integer::intValue).distinct().toArray();
+      table.put(e.getKey(), ords);
+      bytes += 40 + 2L * e.getKey().length() + 16 + 4L * ords.length + 48; //key string, array, map entry
+    }
+    for(String id : ids) {
+      bytes += 40 + 2L * id.length() + 8;
+    }
+
+    IdMappingTable mappingTable = new IdMappingTable(table, ids.toArray(new String[0]), bytes);
+    log.info("build, loaded " + numMappings + " mappings; " + mappingTable
+      + " in " + (System.currentTimeMillis() - start) + " ms");
+    return mappingTable;
+  }
+
+  private static String key(String dstDb, String dstId) {
+    return dstDb + '\t' + dstId;
+  }
+
+  /**
+   * Finds the (accepted) source IDs that map to the target ID.
+   *
+   * @param dstDb target db name (upper case)
+   * @param dstId target identifier (as indexed, e.g. 'CHEBI:1234')
+   * @param result collection to add the found IDs to
+   */
+  public void addSrcIds(String dstDb, String dstId, Collection<String> result) {
+    lookups.incrementAndGet();
+    int[] ords = table.getOrDefault(key(dstDb, dstId), NONE);
+    if(ords.length > 0) {
+      hits.incrementAndGet();
+      for(int ord : ords) {
+        result.add(srcIds[ord]);
+      }
+    }
+  }
+
+  public int size() {
+    return table.size();
+  }
+
+  public long getLookups() {
+    return lookups.get();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Rough estimate of the heap used by the table (bytes).
+   */
+  public long getEstimatedBytes() {
+    return estimatedBytes;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("keys: %d, src ids: %d, ~%d MB; lookups: %d, hits: %d",
+      size(), srcIds.length, estimatedBytes / (1024 * 1024), getLookups(), getHits());
+  }
+}
@@ -3,9 +3,16 @@ package cpath.service;
 import java.nio.file.Path;
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -29,6 +36,8 @@ import org.apache.lucene.search.*;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.highlight.*;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.Bits;
 import org.biopax.paxtools.controller.*;
 import org.biopax.paxtools.model.BioPAXElement;
 import org.biopax.paxtools.model.Model;
@@ -54,11 +63,70 @@ public class IndexImpl implements Index, Mappings {
 
 	private Model model;
 	private int maxHitsPerPage;
+	private int hitsCountThreshold;
+	private int indexThreads;
+	//id-mapping loaded in memory for the save(Model) session; null - search the index instead
+	private volatile IdMappingTable mappingTable;
 	private final Analyzer analyzer;
 	private IndexWriter indexWriter;
 	private SearcherManager searcherManager;
 	public final static int DEFAULT_MAX_HITS_PER_PAGE = 100;
 
+	//no. elements per document-building task in the multithreaded save(Model) mode
+	private final static int INDEX_BATCH_SIZE = 500;
+	//commit and log the progress after every so many documents
+	private final static int INDEX_PROGRESS_STEP = 10000;
+
+	//ID types (source db names) that map to ChEBI/UniProt and that we want biopax graph queries to support
+	private final static Predicate<String> CHEBI_MAPPING_SRCDB = srcDb -> srcDb.equals("PUBCHEM-COMPOUND")
+			|| srcDb.equals("CHEBI")
+			|| srcDb.equals("DRUGBANK")
+			|| srcDb.startsWith("KEGG")
+			|| srcDb.startsWith("CHEMBL")
+			|| srcDb.startsWith("PHARMGKB"); //(prefix 'CID:' is included in pubchem-compound ids)
+	private final static Predicate<String> UNIPROT_MAPPING_SRCDB = srcDb -> srcDb.startsWith("UNIPROT")
+			|| srcDb.startsWith("HGNC")
+			|| srcDb.equalsIgnoreCase("NCBI GENE")
+			|| srcDb.equalsIgnoreCase("REFSEQ")
+			|| srcDb.equalsIgnoreCase("IPI")
+			|| srcDb.startsWith("ENSEMBL");
+
+	//the filter queries cache size (max. number of queries and the total size of their cached doc-id sets)
+	public final static int QUERY_CACHE_MAX_QUERIES = 1000;
+	public final static long QUERY_CACHE_MAX_RAM_BYTES = 64L * 1024 * 1024;
+	private final static int FILTERS_MAX = 1000; //max. number of distinct datasource/organism filters to keep
+
+	//doc values (column-oriented) fields to build search hits without loading stored fields and model objects
+	static final String DV_URI = "dv_uri";
+	static final String DV_NAME = "dv_name";
+	static final String DV_CLASS = "dv_class";
+	static final String DV_ORGANISM = "dv_organism";
+	static final String DV_DATASOURCE = "dv_datasource";
+	static final String DV_PATHWAY = "dv_pathway";
+	static final String DV_N_PARTICIPANTS = "dv_participants";
+	static final String DV_N_PROCESSES = "dv_processes";
+
+	//the filter to find "top" pathways (see isTopPathway)
+	private static final Query TOP_PATHWAY_FILTER = new TermQuery(new Term(FIELD_TOP_PATHWAY, "true"));
+
+	//pre-computed filter queries by BioPAX type (including the subtypes)
+	private static final Map<Class<? extends BioPAXElement>, Query> TYPE_FILTERS;
+	static {
+		Map<Class<? extends BioPAXElement>, Query> map = new HashMap<>();
+		for(Class<? extends BioPAXElement> type : SimpleEditorMap.L3.getKnownSubClassesOf(Level3Element.class)) {
+			map.put(type, createTypeFilter(type));
+		}
+		map.put(Level3Element.class, createTypeFilter(Level3Element.class));
+		TYPE_FILTERS = Collections.unmodifiableMap(map);
+	}
+
+	//datasource/organism filter queries by field and values (LRU)
+	private final Map<String, Query> filters;
+	//the filter queries that we want to always cache as doc-id sets (per index segment, i.e. searcher generation)
+	private final Set<Query> cachedFilters;
+	private final LRUQueryCache queryCache;
+	private final QueryCachingPolicy queryCachingPolicy;
+
 	/**
 	 * Constructor.
 	 *
@@ -69,6 +137,8 @@ public class IndexImpl implements Index, Mappings {
 	public IndexImpl(Model model, String indexLocation, boolean readOnly) {
 		this.model = model;
 		maxHitsPerPage = DEFAULT_MAX_HITS_PER_PAGE;
+		hitsCountThreshold = Integer.MAX_VALUE; //exact count
+		indexThreads = 1;
 		//refs issue #269
 		KeywordAnalyzer ka = new KeywordAnalyzer();
 		Map<String,Analyzer> analyzersPerField = Map.of(
@@ -82,13 +152,50 @@ public class IndexImpl implements Index, Mappings {
 				FIELD_SRCID, ka
 		);
 		analyzer = new PerFieldAnalyzerWrapper(new StandardAnalyzer(EnglishAnalyzer.ENGLISH_STOP_WORDS_SET), analyzersPerField);
+		cachedFilters = ConcurrentHashMap.newKeySet();
+		cachedFilters.addAll(TYPE_FILTERS.values());
+		cachedFilters.add(TOP_PATHWAY_FILTER);
+		filters = new LinkedHashMap<>(64, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Query> eldest) {
+				if(size() > FILTERS_MAX) {
+					cachedFilters.remove(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+		//skip caching on small segments; always cache the filters (regardless of the main query cost)
+		queryCache = new LRUQueryCache(QUERY_CACHE_MAX_QUERIES, QUERY_CACHE_MAX_RAM_BYTES,
+			context -> context.reader().maxDoc() >= 1000, Float.POSITIVE_INFINITY);
+		final QueryCachingPolicy defaultPolicy = new UsageTrackingQueryCachingPolicy();
+		queryCachingPolicy = new QueryCachingPolicy() {
+			@Override
+			public void onUse(Query query) {
+				defaultPolicy.onUse(query);
+			}
+
+			@Override
+			public boolean shouldCache(Query query) throws IOException {
+				return cachedFilters.contains(query) || defaultPolicy.shouldCache(query);
+			}
+		};
+		final SearcherFactory searcherFactory = new SearcherFactory() {
+			@Override
+			public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) throws IOException {
+				IndexSearcher searcher = new IndexSearcher(reader);
+				searcher.setQueryCache(queryCache);
+				searcher.setQueryCachingPolicy(queryCachingPolicy);
+				return searcher;
+			}
+		};
 		try {
 			Path indexFile = Paths.get(indexLocation);
 			if(readOnly) {
-				searcherManager = new SearcherManager(FSDirectory.open(indexFile), new SearcherFactory());
+				searcherManager = new SearcherManager(FSDirectory.open(indexFile), searcherFactory);
 			} else {
 				indexWriter = new IndexWriter(FSDirectory.open(indexFile), new IndexWriterConfig(analyzer));
-				searcherManager = new SearcherManager(indexWriter, new SearcherFactory());
+				searcherManager = new SearcherManager(indexWriter, searcherFactory);
 			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
@@ -104,61 +211,207 @@ public class IndexImpl implements Index, Mappings {
 		return maxHitsPerPage;
 	}
 
+	public void setHitsCountThreshold(int hitsCountThreshold) {
+		this.hitsCountThreshold = (hitsCountThreshold > 0) ? hitsCountThreshold : Integer.MAX_VALUE;
+	}
+
+	public int getHitsCountThreshold() {
+		return hitsCountThreshold;
+	}
+
+	public void setIndexThreads(int indexThreads) {
+		this.indexThreads = Math.max(1, indexThreads);
+	}
+
+	public int getIndexThreads() {
+		return indexThreads;
+	}
+
 	public SearchResponse search(String query, int page, Class<? extends BioPAXElement> type,
 								 String[] datasources, String[] organisms) {
-		SearchResponse response;
 		LOG.debug("search: '" + query + "', page: " + page
 			+ ", filterBy: " + ((type!=null)?type.getSimpleName():"N/A")
 			+ "; extra filters: ds in (" + Arrays.toString(datasources)
 			+ "), org. in (" + Arrays.toString(organisms) + ")");
+		SearchResponse response = search(parse(query, type, datasources, organisms), page, null);
+		response.setPageNo(page);
+		return response;
+	}
+
+	public SearchResponse search(String query, String cursor, Class<? extends BioPAXElement> type,
+								 String[] datasources, String[] organisms) {
+		LOG.debug("search: '" + query + "', cursor: " + cursor
+			+ ", filterBy: " + ((type!=null)?type.getSimpleName():"N/A")
+			+ "; extra filters: ds in (" + Arrays.toString(datasources)
+			+ "), org. in (" + Arrays.toString(organisms) + ")");
+		return search(parse(query, type, datasources, organisms), 0, cursor);
+	}
+
+	@Override
+	public SearchResponse topPathways(String query, int page, String[] datasources, String[] organisms) {
+		LOG.debug("topPathways: '" + query + "', page: " + page
+			+ "; extra filters: ds in (" + Arrays.toString(datasources)
+			+ "), org. in (" + Arrays.toString(organisms) + ")");
+		if(!hasTopPathwayFlags()) {
+			return topPathwaysByHits(query, parse(query, Pathway.class, datasources, organisms), page);
+		}
+		Query q = new BooleanQuery.Builder()
+			.add(parse(query, Pathway.class, datasources, organisms), Occur.MUST)
+			.add(TOP_PATHWAY_FILTER, Occur.FILTER)
+			.build();
+		SearchResponse response;
+		if(page >= 0) {
+			response = search(q, page, null);
+			response.setPageNo(page);
+		} else { //all hits at once
+			response = new SearchResponse();
+			final List<SearchHit> hits = response.getSearchHit();
+			forEachHit(query, q, hits::add);
+			response.setNumHits((long) hits.size());
+			response.setNumHitsExact(true);
+			response.setMaxHitsPerPage(hits.size());
+			response.setPageNo(0);
+		}
+		return response;
+	}
+
+	//whether the index has the top pathway flags (an index made by an older version does not)
+	private boolean hasTopPathwayFlags() {
 		IndexSearcher searcher = null;
-		try {	
-			QueryParser queryParser = new MultiFieldQueryParser(DEFAULT_FIELDS, analyzer);
-			queryParser.setAllowLeadingWildcard(true);//we want leading wildcards enabled (e.g. *sulin)
-			Query q;
-			//find and transform top docs to search hits (beans), considering pagination...
-			if(!query.trim().equals("*")) { //if not "*" query, which is not supported out-of-the-box, then
-				//create the lucene query
-				q = queryParser.parse(query);
-				LOG.debug("parsed lucene query is " + q.getClass().getSimpleName());
-				//create filter: type AND (d OR d...) AND (o OR o...)
-				Query filter = createFilter(type, datasources, organisms);
-				//final query with filter
-				if(filter != null) {
-					q = new BooleanQuery.Builder().add(q, Occur.MUST).add(filter, Occur.FILTER).build();
-				}
-			} else { //find ALL objects of a particular BioPAX class (+ filters by organism, datasource)
-				if(type == null) {
-					type = Level3Element.class;
+		try {
+			searcher = searcherManager.acquire();
+			for(LeafReaderContext context : searcher.getIndexReader().leaves()) {
+				if(context.reader().getFieldInfos().fieldInfo(FIELD_TOP_PATHWAY) != null) {
+					return true;
 				}
-				//replace q="*" with a search for the class or its subclass name in the TYPE field
-				BooleanQuery.Builder starQuery = new BooleanQuery.Builder();
-				for(Class<? extends BioPAXElement> subType : SimpleEditorMap.L3.getKnownSubClassesOf(type)) {
-					starQuery.add(new TermQuery(new Term(FIELD_TYPE, subType.getSimpleName().toLowerCase())), Occur.SHOULD);
+			}
+			return false;
+		} catch (IOException e) {
+			throw new RuntimeException("hasTopPathwayFlags: failed: " + e);
+		} finally {
+			try {
+				searcherManager.release(searcher);
+			} catch (IOException e) {}
+		}
+	}
+
+	/*
+	 * Top pathways without the index time flags (older index):
+	 * goes over all the pathway hits and checks each one using its index fields and the model.
+	 */
+	private SearchResponse topPathwaysByHits(String query, Query q, int page) {
+		final List<SearchHit> hits = new ArrayList<>();
+		forEachHit(query, q, h -> {
+			//keep only pathways where 'pathway' index field is empty (no controlledOf and pathwayComponentOf values)
+			if(h.getPathway().isEmpty()
+				|| (h.getPathway().size() == 1 && h.getPathway().get(0).equalsIgnoreCase(h.getUri())))
+			{
+				BioPAXElement bpe = (model != null) ? model.getByID(h.getUri()) : null;
+				if(h.getNumProcesses() > 2
+					|| (bpe instanceof Pathway && isTopPathway((Pathway) bpe, Collections.emptySet(), 0)))
+				{
+					hits.add(h);
 				}
-				Query filter = createFilter(null, datasources, organisms);
-				//combine star and filter queries into one special boolean
-				q = (filter!=null)
-					? new BooleanQuery.Builder().add(starQuery.build(),Occur.MUST).add(filter,Occur.FILTER).build()
-						: starQuery.build();
 			}
+		});
+		final SearchResponse response = new SearchResponse();
+		response.setNumHits((long) hits.size());
+		response.setNumHitsExact(true);
+		if(page >= 0) {
+			final int from = Math.min(hits.size(), page * maxHitsPerPage);
+			response.getSearchHit().addAll(hits.subList(from, Math.min(hits.size(), from + maxHitsPerPage)));
+			response.setMaxHitsPerPage(maxHitsPerPage);
+			response.setPageNo(page);
+		} else {
+			response.getSearchHit().addAll(hits);
+			response.setMaxHitsPerPage(hits.size());
+			response.setPageNo(0);
+		}
+		return response;
+	}
 
+	/*
+	 * Visits all the hits: in the index order for the '*' query (all objects of the type, same score),
+	 * else - in the score order (the best matching first).
+	 */
+	private void forEachHit(String query, Query q, Consumer<SearchHit> action) {
+		if(query.trim().equals("*")) {
+			forEachHit(q, action);
+			return;
+		}
+		IndexSearcher searcher = null;
+		try {
 			searcher = searcherManager.acquire();
-			TopDocs topDocs;
-			if(page>0) {
-				//get the required hits page if page>0
-				TopScoreDocCollector collector = TopScoreDocCollector
-						.create(maxHitsPerPage*(page+1), maxHitsPerPage*(page+1));
-				searcher.search(q, collector);
-				topDocs = collector.topDocs(page * maxHitsPerPage, maxHitsPerPage);
-			} else {
-				//get the first page of the top hits
-				topDocs = searcher.search(q, maxHitsPerPage);
-			}
-			//transform docs to hits (optionally use a highlighter, e.g., if debugging...)
-			response = transform(q, searcher, topDocs);
+			//collect all the matching docs with their scores in one pass, then sort by score (as TopDocs do)
+			final List<ScoreDoc> scoreDocs = new ArrayList<>();
+			searcher.search(q, new SimpleCollector() {
+				private int docBase;
+				private Scorable scorer;
+
+				@Override
+				protected void doSetNextReader(LeafReaderContext context) {
+					docBase = context.docBase;
+				}
+
+				@Override
+				public void setScorer(Scorable scorer) {
+					this.scorer = scorer;
+				}
+
+				@Override
+				public void collect(int doc) throws IOException {
+					scoreDocs.add(new ScoreDoc(docBase + doc, scorer.score()));
+				}
+
+				@Override
+				public ScoreMode scoreMode() {
+					return ScoreMode.COMPLETE;
+				}
+			});
+			scoreDocs.sort((a, b) -> (a.score != b.score) ? Float.compare(b.score, a.score) : Integer.compare(a.doc, b.doc));
+			TopDocs topDocs = new TopDocs(new TotalHits(scoreDocs.size(), TotalHits.Relation.EQUAL_TO),
+				scoreDocs.toArray(new ScoreDoc[0]));
+			transform(q, searcher, topDocs).getSearchHit().forEach(action);
+		} catch (IOException e) {
+			throw new RuntimeException("forEachHit: failed: " + e);
+		} finally {
+			try {
+				searcherManager.release(searcher);
+			} catch (IOException e) {}
+		}
+	}
+
+	// creates the lucene query with the filters (see buildQuery)
+	private Query parse(String query, Class<? extends BioPAXElement> type, String[] datasources, String[] organisms) {
+		try {
+			return buildQuery(query, type, datasources, organisms);
 		} catch (ParseException e) {
 			throw new RuntimeException("getTopDocs: failed to parse the search query: " + e);
+		}
+	}
+
+	// uses either the page number (when cursor is null) or the cursor (continuation token) to get the hits
+	private SearchResponse search(Query q, int page, String cursor) {
+		SearchResponse response;
+		IndexSearcher searcher = null;
+		try {
+			searcher = searcherManager.acquire();
+			//find and transform top docs to search hits (beans), considering pagination...
+			//collect the top hits and count all the hits (up to the threshold) in one pass
+			final ScoreDoc after = (cursor != null && !cursor.isBlank()) ? decodeCursor(cursor, searcher) : null;
+			final int numHits = (after != null) ? maxHitsPerPage : maxHitsPerPage*(page+1);
+			TopScoreDocCollector collector = TopScoreDocCollector
+					.create(numHits, after, Math.max(numHits, hitsCountThreshold));
+			searcher.search(q, collector);
+			TopDocs topDocs = (after == null && page > 0)
+					? collector.topDocs(page * maxHitsPerPage, maxHitsPerPage) //get the required hits page
+						: collector.topDocs(); //the first page or the next page after the cursor
+			//transform docs to hits (optionally use a highlighter, e.g., if debugging...)
+			response = transform(q, searcher, topDocs);
+			//a full page - there may be more hits; let the client continue from the last one
+			if(topDocs.scoreDocs.length == maxHitsPerPage && maxHitsPerPage > 0) {
+				response.setNextCursor(encodeCursor(topDocs.scoreDocs[topDocs.scoreDocs.length - 1], searcher));
+			}
 		} catch (IOException e) {
 			throw new RuntimeException("getTopDocs: failed: " + e);
 		} finally {
@@ -166,12 +419,123 @@ public class IndexImpl implements Index, Mappings {
 				searcherManager.release(searcher);
 			} catch (IOException e) {}
 		}
-	
-		response.setPageNo(page);
+
 		return response;
 	}
 
-	
+	@Override
+	public void forEachHit(String query, Class<? extends BioPAXElement> type,
+						   String[] datasources, String[] organisms, Consumer<SearchHit> action) {
+		LOG.debug("forEachHit: '" + query + "', filterBy: " + ((type!=null)?type.getSimpleName():"N/A")
+			+ "; extra filters: ds in (" + Arrays.toString(datasources)
+			+ "), org. in (" + Arrays.toString(organisms) + ")");
+		forEachHit(parse(query, type, datasources, organisms), action);
+	}
+
+	private void forEachHit(Query q, Consumer<SearchHit> action) {
+		IndexSearcher searcher = null;
+		try {
+			searcher = searcherManager.acquire();
+			//visit all the matching docs in the index order; no scoring, sorting, paging
+			searcher.search(q, new SimpleCollector() {
+				private LeafReader reader;
+				private LeafHitReader hitReader;
+
+				@Override
+				protected void doSetNextReader(LeafReaderContext context) throws IOException {
+					reader = context.reader();
+					hitReader = new LeafHitReader(reader);
+				}
+
+				@Override
+				public void collect(int doc) throws IOException {
+					SearchHit hit = hitReader.read(doc);
+					if(hit == null) { //no doc values (older index, Provenance, BioSource) - use the stored fields and the model
+						Document document = reader.storedFields().document(doc);
+						BioPAXElement bpe = model.getByID(document.get(FIELD_URI));
+						if(bpe != null) { //skip hits from another model
+							hit = toSearchHit(document, bpe);
+						}
+					} else if(!model.containsID(hit.getUri())) {
+						hit = null; //skip hits from another model
+					}
+					if(hit != null) {
+						action.accept(hit);
+					}
+				}
+
+				@Override
+				public ScoreMode scoreMode() {
+					return ScoreMode.COMPLETE_NO_SCORES;
+				}
+			});
+		} catch (IOException e) {
+			throw new RuntimeException("forEachHit: failed: " + e);
+		} finally {
+			try {
+				searcherManager.release(searcher);
+			} catch (IOException e) {}
+		}
+	}
+
+	// Creates the lucene query with the filters
+	private Query buildQuery(String query, Class<? extends BioPAXElement> type,
+							 String[] datasources, String[] organisms) throws ParseException {
+		Query q;
+		if(!query.trim().equals("*")) { //if not "*" query, which is not supported out-of-the-box, then
+			//create the lucene query
+			QueryParser queryParser = new MultiFieldQueryParser(DEFAULT_FIELDS, analyzer);
+			queryParser.setAllowLeadingWildcard(true);//we want leading wildcards enabled (e.g. *sulin)
+			q = queryParser.parse(query);
+			LOG.debug("parsed lucene query is " + q.getClass().getSimpleName());
+		} else { //find ALL objects of a particular BioPAX class (+ filters by organism, datasource)
+			//replace q="*" with a search for the class or its subclass name in the TYPE field
+			q = new ConstantScoreQuery(typeFilter((type == null) ? Level3Element.class : type));
+			type = null; //already applied
+		}
+		//add the filters: type AND (d OR d...) AND (o OR o...)
+		List<Query> filterQueries = createFilters(type, datasources, organisms);
+		if(!filterQueries.isEmpty()) {
+			BooleanQuery.Builder builder = new BooleanQuery.Builder().add(q, Occur.MUST);
+			for(Query filter : filterQueries) {
+				builder.add(filter, Occur.FILTER);
+			}
+			q = builder.build();
+		}
+		return q;
+	}
+
+	/*
+	 * Makes an opaque continuation token from the last hit (doc, score)
+	 * and the index reader version (docs may get re-numbered in another version).
+	 */
+	private String encodeCursor(ScoreDoc last, IndexSearcher searcher) {
+		String token = readerVersion(searcher) + ":" + last.doc + ":" + Float.floatToIntBits(last.score);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private ScoreDoc decodeCursor(String cursor, IndexSearcher searcher) {
+		String[] parts;
+		try {
+			parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid cursor: " + cursor);
+		}
+		if(parts.length != 3 || !parts[0].equals(String.valueOf(readerVersion(searcher)))) {
+			throw new IllegalArgumentException("Invalid or expired cursor: " + cursor);
+		}
+		try {
+			return new ScoreDoc(Integer.parseInt(parts[1]), Float.intBitsToFloat(Integer.parseInt(parts[2])));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid cursor: " + cursor);
+		}
+	}
+
+	private static long readerVersion(IndexSearcher searcher) {
+		IndexReader reader = searcher.getIndexReader();
+		return (reader instanceof DirectoryReader) ? ((DirectoryReader) reader).getVersion() : 0L;
+	}
+
 	// Transform Lucene docs to hits (xml/java beans)
 	private SearchResponse transform(Query query, IndexSearcher searcher, TopDocs topDocs) throws IOException
 	{	
@@ -180,22 +544,49 @@ public class IndexImpl implements Index, Mappings {
 		}
 		SearchResponse response = new SearchResponse();
 		response.setMaxHitsPerPage(getMaxHitsPerPage());
-		long numTotalHits = searcher.count(query);
-		response.setNumHits(numTotalHits);
+		//the count is exact unless there are more hits than the threshold
+		response.setNumHits(topDocs.totalHits.value);
+		response.setNumHitsExact(topDocs.totalHits.relation == TotalHits.Relation.EQUAL_TO);
 		List<SearchHit> hits = response.getSearchHit();//empty list to be filled from top docs
 		assert hits!=null && hits.isEmpty();
-		LOG.debug("transform, no. TopDocs to process:" + topDocs.scoreDocs.length);
-		for(ScoreDoc scoreDoc : topDocs.scoreDocs) {
-			SearchHit hit = new SearchHit();
-			Document doc = searcher.doc(scoreDoc.doc);
-			String uri = doc.get(FIELD_URI);
-			BioPAXElement bpe = model.getByID(uri);
-			if(bpe == null) {
+		final ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+		LOG.debug("transform, no. TopDocs to process:" + scoreDocs.length);
+		//read the doc values of the hits in the doc id order (forward-only iterators per index segment)
+		final SearchHit[] docHits = new SearchHit[scoreDocs.length];
+		final Integer[] docOrder = new Integer[scoreDocs.length];
+		for(int i = 0; i < docOrder.length; i++) {
+			docOrder[i] = i;
+		}
+		Arrays.sort(docOrder, Comparator.comparingInt(i -> scoreDocs[i].doc));
+		final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+		LeafHitReader hitReader = null;
+		int leaf = -1;
+		for(int i : docOrder) {
+			int n = ReaderUtil.subIndex(scoreDocs[i].doc, leaves);
+			if(n != leaf) {
+				leaf = n;
+				hitReader = new LeafHitReader(leaves.get(n).reader());
+			}
+			docHits[i] = hitReader.read(scoreDocs[i].doc - leaves.get(n).docBase);
+		}
+
+		for(int i = 0; i < scoreDocs.length; i++) {
+			final ScoreDoc scoreDoc = scoreDocs[i];
+			SearchHit hit = docHits[i];
+			if(hit == null) { //no doc values (older index, Provenance, BioSource) - use the stored fields and the model
+				Document doc = searcher.storedFields().document(scoreDoc.doc);
+				BioPAXElement bpe = model.getByID(doc.get(FIELD_URI));
+				if (bpe == null) {
+					continue; //was a hit from another model
+				}
+				hit = toSearchHit(doc, bpe);
+			} else if (!model.containsID(hit.getUri())) {
 				continue; //was a hit from another model
 			}
 			
 			// use a highlighter (get matching fragments)
-			if (LOG.isDebugEnabled()) {
+			BioPAXElement bpe = (LOG.isDebugEnabled()) ? model.getByID(hit.getUri()) : null;
+			if (bpe != null) {
 				// to use a Highlighter, store.YES must be enabled for 'keyword' field
 				QueryScorer scorer = new QueryScorer(query, FIELD_KEYWORD);
 				//the following fixes scoring/highlighting for all-field wildcard (like q=insulin*)
@@ -219,85 +610,162 @@ public class IndexImpl implements Index, Mappings {
 				hit.setExcerpt(excerpt + " -SCORE- " + scoreDoc.score +
 						" -EXPLANATION- " + searcher.explain(query, scoreDoc.doc));
 			}
-			hit.setUri(uri);
-			hit.setBiopaxClass(bpe.getModelInterface().getSimpleName());
-			
-			// add standard and display names if any -
-			if (bpe instanceof Named) {
-				Named named = (Named) bpe;
-				String std = named.getStandardName();
-				if (std != null)
-					hit.setName(std);
-				else
-					hit.setName(named.getDisplayName());
-				
-				// a hack for BioSource (store more info)
-				if(bpe instanceof BioSource) {
-					for(String name : named.getName())
-						hit.getOrganism().add(name);
-					String txid = getTaxonId((BioSource)named);
-					if(txid != null)
-						hit.getOrganism().add(txid);
-				}
+			hits.add(hit);
+		}
 				
-				// a hack for Provenance: save/return other names 
-				// (to be used as filter by data source values)
-				if(bpe instanceof Provenance) {
-					for(String name : named.getName())
-						hit.getDataSource().add(name);
-				}	
-			}
-						
-			// extract organisms (URIs only)
-			if(doc.get(FIELD_ORGANISM) != null) {
-				Set<String> uniqueVals = new TreeSet<>();
-				for(String o : doc.getValues(FIELD_ORGANISM)) {
-					//note: only URIS are stored in the index					
-					uniqueVals.add(o);
+		//add the Provenance's standardName(s) to the search response
+		if(!hits.isEmpty()) {
+			for(String puri : response.provenanceUris()) {
+				Provenance p = (model != null) ? (Provenance) model.getByID(puri) : null;
+				if(p != null) {
+					response.getProviders().add((p.getStandardName() != null) ? p.getStandardName() : p.getDisplayName());
 				}
-				hit.getOrganism().addAll(uniqueVals);
 			}
-			
-			// extract values form the index
-			if(doc.get(FIELD_DATASOURCE) != null) {
-				Set<String> uniqueVals = new TreeSet<>();
-				for(String d : doc.getValues(FIELD_DATASOURCE)) {
-					//note: only URIS are stored in the index
-					uniqueVals.add(d);
-				}
-				hit.getDataSource().addAll(uniqueVals);
-			}	
-			
-			// extract only (parent) pathway URIs
-			//only URIs were stored "as is" (names, ids were indexed but not stored in the index doc.)
-			if(doc.get(FIELD_PATHWAY) != null) {
-				Set<String> uniqueVals = new TreeSet<>();
-				for(String d : doc.getValues(FIELD_PATHWAY)) {
-					uniqueVals.add(d);
+		}
+		
+		return response;
+	}
+
+	/*
+	 * Creates search hit beans from the doc values of an index segment
+	 * (docs must be read in increasing doc id order).
+	 */
+	private static final class LeafHitReader {
+		private final BinaryDocValues uris;
+		private final BinaryDocValues names;
+		private final SortedDocValues classes;
+		private final SortedSetDocValues organisms;
+		private final SortedSetDocValues datasources;
+		private final SortedSetDocValues pathways;
+		private final NumericDocValues processes;
+		private final NumericDocValues participants;
+
+		LeafHitReader(LeafReader reader) throws IOException {
+			uris = reader.getBinaryDocValues(DV_URI);
+			names = reader.getBinaryDocValues(DV_NAME);
+			classes = reader.getSortedDocValues(DV_CLASS);
+			organisms = reader.getSortedSetDocValues(DV_ORGANISM);
+			datasources = reader.getSortedSetDocValues(DV_DATASOURCE);
+			pathways = reader.getSortedSetDocValues(DV_PATHWAY);
+			processes = reader.getNumericDocValues(DV_N_PROCESSES);
+			participants = reader.getNumericDocValues(DV_N_PARTICIPANTS);
+		}
+
+		// returns null when there are no doc values for the doc (e.g. the index was built by an older version)
+		// or it's a Provenance or BioSource (their names go first in the hit's data source or organism values)
+		SearchHit read(int doc) throws IOException {
+			if(uris == null || !uris.advanceExact(doc) || classes == null || !classes.advanceExact(doc)) {
+				return null;
+			}
+			final String type = classes.lookupOrd(classes.ordValue()).utf8ToString();
+			if(type.equals("Provenance") || type.equals("BioSource")) {
+				return null;
+			}
+			SearchHit hit = new SearchHit();
+			final String uri = uris.binaryValue().utf8ToString();
+			hit.setUri(uri);
+			hit.setBiopaxClass(type);
+			if(names != null && names.advanceExact(doc)) {
+				hit.setName(names.binaryValue().utf8ToString());
+			}
+			//values are unique and sorted
+			hit.getOrganism().addAll(values(organisms, doc));
+			hit.getDataSource().addAll(values(datasources, doc));
+			List<String> pws = values(pathways, doc);
+			pws.remove(uri); //exclude itself
+			hit.getPathway().addAll(pws);
+			if(processes != null && processes.advanceExact(doc)) {
+				hit.setNumProcesses((int) processes.longValue());
+			}
+			if(participants != null && participants.advanceExact(doc)) {
+				hit.setNumParticipants((int) participants.longValue());
+			}
+			return hit;
+		}
+
+		private static List<String> values(SortedSetDocValues dv, int doc) throws IOException {
+			List<String> list = new ArrayList<>();
+			if(dv != null && dv.advanceExact(doc)) {
+				for(int i = 0; i < dv.docValueCount(); i++) {
+					list.add(dv.lookupOrd(dv.nextOrd()).utf8ToString());
 				}
-				uniqueVals.remove(uri); //exclude itself
-				hit.getPathway().addAll(uniqueVals);
 			}
+			return list;
+		}
+	}
+
+	// Creates a search hit bean from the index document and the corresponding biopax object
+	private SearchHit toSearchHit(Document doc, BioPAXElement bpe) {
+		final String uri = bpe.getUri();
+		SearchHit hit = new SearchHit();
+		hit.setUri(uri);
+		hit.setBiopaxClass(bpe.getModelInterface().getSimpleName());
+		
+		// add standard and display names if any -
+		if (bpe instanceof Named) {
+			Named named = (Named) bpe;
+			String std = named.getStandardName();
+			if (std != null)
+				hit.setName(std);
+			else
+				hit.setName(named.getDisplayName());
 			
-			//no. processes, participants in the subnetwork
-			if(doc.getField(FIELD_N_PROCESSES) != null) {
-				hit.setNumProcesses(doc.getField(FIELD_N_PROCESSES).numericValue().intValue());
+			// a hack for BioSource (store more info)
+			if(bpe instanceof BioSource) {
+				for(String name : named.getName())
+					hit.getOrganism().add(name);
+				String txid = getTaxonId((BioSource)named);
+				if(txid != null)
+					hit.getOrganism().add(txid);
 			}
-			if(doc.getField(FIELD_N_PARTICIPANTS) != null) {
-				hit.setNumParticipants(doc.getField(FIELD_N_PARTICIPANTS).numericValue().intValue());
+			
+			// a hack for Provenance: save/return other names 
+			// (to be used as filter by data source values)
+			if(bpe instanceof Provenance) {
+				for(String name : named.getName())
+					hit.getDataSource().add(name);
+			}	
+		}
+					
+		// extract organisms (URIs only)
+		if(doc.get(FIELD_ORGANISM) != null) {
+			Set<String> uniqueVals = new TreeSet<>();
+			for(String o : doc.getValues(FIELD_ORGANISM)) {
+				//note: only URIS are stored in the index					
+				uniqueVals.add(o);
 			}
-			hits.add(hit);
+			hit.getOrganism().addAll(uniqueVals);
 		}
-				
-		//add the Provenance's standardName(s) to the search response
-		if(!hits.isEmpty()) {
-			for(String puri : response.provenanceUris()) {
-				Provenance p = (Provenance) model.getByID(puri);
-				response.getProviders().add((p.getStandardName()!=null)?p.getStandardName():p.getDisplayName());
+		
+		// extract values form the index
+		if(doc.get(FIELD_DATASOURCE) != null) {
+			Set<String> uniqueVals = new TreeSet<>();
+			for(String d : doc.getValues(FIELD_DATASOURCE)) {
+				//note: only URIS are stored in the index
+				uniqueVals.add(d);
 			}
+			hit.getDataSource().addAll(uniqueVals);
+		}	
+		
+		// extract only (parent) pathway URIs
+		//only URIs were stored "as is" (names, ids were indexed but not stored in the index doc.)
+		if(doc.get(FIELD_PATHWAY) != null) {
+			Set<String> uniqueVals = new TreeSet<>();
+			for(String d : doc.getValues(FIELD_PATHWAY)) {
+				uniqueVals.add(d);
+			}
+			uniqueVals.remove(uri); //exclude itself
+			hit.getPathway().addAll(uniqueVals);
 		}
 		
-		return response;
+		//no. processes, participants in the subnetwork
+		if(doc.getField(FIELD_N_PROCESSES) != null) {
+			hit.setNumProcesses(doc.getField(FIELD_N_PROCESSES).numericValue().intValue());
+		}
+		if(doc.getField(FIELD_N_PARTICIPANTS) != null) {
+			hit.setNumParticipants(doc.getField(FIELD_N_PARTICIPANTS).numericValue().intValue());
+		}
+		return hit;
 	}
 
 	public static final org.biopax.paxtools.util.Filter<DataPropertyEditor> keywordsFilter = (editor) -> {
@@ -347,6 +815,14 @@ public class IndexImpl implements Index, Mappings {
 	 * @param bpe BioPAX element
 	 */
 	public void save(BioPAXElement bpe) {
+		write(toDocument(bpe));
+	}
+
+	/*
+	 * Builds the lucene document for the biopax element (see save(BioPAXElement)).
+	 * Only reads the model and the id-mapping index, so it is safe to call concurrently.
+	 */
+	private Document toDocument(BioPAXElement bpe) {
 		//traverse the element to collect more keywords, e.g. names, IDs, from its child elements
 		Fetcher fetcher = new Fetcher(SimpleEditorMap.L3, Fetcher.nextStepFilter);
 		//disable traversing into sub-pathways
@@ -373,8 +849,20 @@ public class IndexImpl implements Index, Mappings {
 		// index and store but not analyze/tokenize biopax class name (lowcase as we use StandardAnalyzer for searching/filtering in this field):
 		doc.add(new StringField(FIELD_TYPE, bpe.getModelInterface().getSimpleName().toLowerCase(), Field.Store.YES));
 
+		// doc values to build search hits from (without loading the stored fields and the model objects)
+		doc.add(new BinaryDocValuesField(DV_URI, new BytesRef(uri)));
+		doc.add(new SortedDocValuesField(DV_CLASS, new BytesRef(bpe.getModelInterface().getSimpleName())));
+		if(bpe instanceof Named) {
+			Named named = (Named) bpe;
+			String hitName = (named.getStandardName() != null) ? named.getStandardName() : named.getDisplayName();
+			if(hitName != null) {
+				doc.add(new BinaryDocValuesField(DV_NAME, new BytesRef(hitName)));
+			}
+		}
+
 		// extra index fields
-		addPathways(ModelUtils.getParentPathways(bpe), doc);
+		final Set<Pathway> parentPathways = ModelUtils.getParentPathways(bpe);
+		addPathways(parentPathways, doc);
 		addOrganisms(ModelUtils.getOrganisms(bpe), doc);
 		addDatasources(ModelUtils.getDatasources(bpe), doc);
 		for (String keyword : keywords) {
@@ -388,9 +876,15 @@ public class IndexImpl implements Index, Mappings {
 					+ fetcher.fetch(bpe, Gene.class).size();
 			doc.add(new StoredField(FIELD_N_PARTICIPANTS, numPeAndG));
 			doc.add(new StoredField(FIELD_N_PROCESSES, numProc));
+			doc.add(new NumericDocValuesField(DV_N_PARTICIPANTS, numPeAndG));
+			doc.add(new NumericDocValuesField(DV_N_PROCESSES, numProc));
+			if(bpe instanceof Pathway && isTopPathway((Pathway) bpe, parentPathways, numProc)) {
+				doc.add(new StringField(FIELD_TOP_PATHWAY, "true", Field.Store.NO));
+			}
 		} else if(bpe instanceof Complex) {
 			int numPEs = fetcher.fetch(bpe, PhysicalEntity.class).size();
 			doc.add(new StoredField(FIELD_N_PARTICIPANTS, numPEs));
+			doc.add(new NumericDocValuesField(DV_N_PARTICIPANTS, numPEs));
 		}
 
 		// Add more xref IDs to the index using id-mapping
@@ -449,36 +943,95 @@ public class IndexImpl implements Index, Mappings {
 			}
 		}
 
-		// save/update the lucene document
+		return doc;
+	}
+
+	// save/update the lucene document (the first 'uri' field value is the full URI)
+	private void write(Document doc) {
+		final String uri = doc.get(FIELD_URI);
 		try {
 			indexWriter.updateDocument(new Term(FIELD_URI, uri), doc);
 		} catch (Exception e) {
-			throw new RuntimeException("Failed to index: " + bpe.getUri(), e);
+			throw new RuntimeException("Failed to index: " + uri, e);
 		}
 	}
 
+	/**
+	 * Indexes all the Entity, EntityReference and Provenance objects of the model.
+	 *
+	 * When indexThreads > 1, the documents are built by a pool of worker threads,
+	 * in batches, but written to the index in the model's iteration order by this thread,
+	 * so that the result is the same as of the sequential (single-thread) mode.
+	 *
+	 * @param model BioPAX model (must not be modified during the indexing)
+	 */
 	@Override
 	public void save(Model model) {
 		setModel(model);
-		final int numObjectsToIndex = model.getObjects(Entity.class).size()
-				+ model.getObjects(EntityReference.class).size()
-				+ model.getObjects(Provenance.class).size();
-		LOG.info("index(), objects to save: " + numObjectsToIndex);
-		final AtomicInteger numLeft = new AtomicInteger(numObjectsToIndex);
-		for(BioPAXElement bpe : model.getObjects()) {
-			if(bpe instanceof Entity || bpe instanceof EntityReference || bpe instanceof Provenance) {
-				save(bpe);
-				int left = numLeft.decrementAndGet();
-				if (left % 10000 == 0) {
-					commit();
-					LOG.info("build(), objects to save: " + left);
+		final List<BioPAXElement> elements = model.getObjects().stream()
+				.filter(bpe -> bpe instanceof Entity || bpe instanceof EntityReference || bpe instanceof Provenance)
+				.collect(Collectors.toList());
+		final int total = elements.size();
+		LOG.info("build(), objects to save: " + total + ", threads: " + indexThreads);
+		mappingTable = loadMappingTable();
+		final long start = System.currentTimeMillis();
+		int done = 0;
+		try {
+			if(indexThreads <= 1) {
+				for(BioPAXElement bpe : elements) {
+					save(bpe);
+					progress(++done, total, start);
+				}
+			} else {
+				final ExecutorService pool = Executors.newFixedThreadPool(indexThreads);
+				//limit the number of built but not yet written documents
+				final int maxPending = 2 * indexThreads;
+				final Deque<Future<List<Document>>> pending = new ArrayDeque<>();
+				try {
+					int next = 0;
+					while(next < total || !pending.isEmpty()) {
+						while(next < total && pending.size() < maxPending) {
+							final List<BioPAXElement> batch = elements.subList(next, Math.min(next + INDEX_BATCH_SIZE, total));
+							pending.add(pool.submit(() -> batch.stream().map(this::toDocument).collect(Collectors.toList())));
+							next += batch.size();
+						}
+						for(Document doc : pending.poll().get()) {
+							write(doc);
+							progress(++done, total, start);
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("build(), interrupted", e);
+				} catch (ExecutionException e) {
+					throw (e.getCause() instanceof RuntimeException)
+							? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+				} finally {
+					pool.shutdownNow();
 				}
 			}
+		} finally {
+			LOG.info("build(), id-mapping table: " + mappingTable);
+			mappingTable = null;
 		}
 		commit();
 		//force refreshing the index state (for new readers)
 		refresh();
-		LOG.info("build(), all done.");
+		LOG.info(String.format("build(), all done: %d docs in %d s (%.1f docs/s)",
+				total, (System.currentTimeMillis() - start) / 1000, docsPerSecond(total, start)));
+	}
+
+	//periodically commits and reports the indexing progress and throughput
+	private void progress(int done, int total, long start) {
+		if (done % INDEX_PROGRESS_STEP == 0) {
+			commit();
+			LOG.info(String.format("build(), saved: %d, left: %d (%.1f docs/s)",
+					done, total - done, docsPerSecond(done, start)));
+		}
+	}
+
+	private static double docsPerSecond(int done, long start) {
+		return done * 1000.0 / Math.max(1, System.currentTimeMillis() - start);
 	}
 
 	@Override
@@ -496,6 +1049,9 @@ public class IndexImpl implements Index, Mappings {
 			if (indexWriter != null && indexWriter.isOpen()) {
 				indexWriter.commit();
 				indexWriter.close();
+			} else if (indexWriter == null) {
+				//read-only index: release the readers (open files, mmaps)
+				searcherManager.close();
 			}
 		} catch (Exception e) {
 			throw new RuntimeException(e);
@@ -528,9 +1084,32 @@ public class IndexImpl implements Index, Mappings {
 		}
 	}
 
+	/*
+	 * Whether it's a "top" pathway: neither a component of other pathways nor controlled by any process
+	 * (i.e. there are no parent pathways except itself), and it's not trivial - has more than two processes
+	 * (e.g. to skip CTD "pathways" that contain one-two interactions) or a child pathway with more than two components.
+	 */
+	static boolean isTopPathway(Pathway pathway, Set<Pathway> parentPathways, int numProcesses) {
+		for(Pathway parent : parentPathways) {
+			if(!parent.getUri().equalsIgnoreCase(pathway.getUri())) {
+				return false;
+			}
+		}
+		if(numProcesses > 2) {
+			return true;
+		}
+		for(Process component : pathway.getPathwayComponent()) {
+			if(component instanceof Pathway && ((Pathway) component).getPathwayComponent().size() > 2) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private void addDatasources(Set<Provenance> set, Document doc) {
 		for (Provenance p : set) {
 			doc.add(new TextField(FIELD_DATASOURCE, p.getUri(), Field.Store.YES));
+			doc.add(new SortedSetDocValuesField(DV_DATASOURCE, new BytesRef(p.getUri())));
 			//index names (including the datasource identifier from metadata json config; see premerge/merge)
 			//different data sources can have the same name e.g. 'intact'; tokenized - to search by partial name
 			for (String s : p.getName()) {
@@ -542,6 +1121,7 @@ public class IndexImpl implements Index, Mappings {
 	private void addOrganisms(Set<BioSource> set, Document doc) {	
 		for(BioSource bs : set) {
 			doc.add(new TextField(FIELD_ORGANISM,  bs.getUri(), Field.Store.YES));
+			doc.add(new SortedSetDocValuesField(DV_ORGANISM, new BytesRef(bs.getUri())));
 				
 			// add organism names
 			for(String s : bs.getName()) {
@@ -575,6 +1155,7 @@ public class IndexImpl implements Index, Mappings {
 			//URI, index=yes, analyze=no, store=yes (this is to find child objects, participants or processes, by pathway URI/name/id)
       // we want searching by URI or its ending part (id) be case-sensitive
 			doc.add(new StringField(FIELD_PATHWAY, uri, Field.Store.YES));
+			doc.add(new SortedSetDocValuesField(DV_PATHWAY, new BytesRef(uri)));
 			//also, extract and index the last part of the uri (e.g., 'hsa00010' or 'r-hsa-201451')
 			String id = uri.replaceAll(".*[/#:]", "").trim();
 			doc.add(new StringField(FIELD_PATHWAY, id, Field.Store.NO));
@@ -607,37 +1188,58 @@ public class IndexImpl implements Index, Mappings {
 	}
 	
 	/*
-	 * Creates a search filter like 
-	 * type AND (datasource OR datasource...) 
-	 *      AND (organism OR organism OR...)
+	 * Creates the search filters (to be joined with AND):
+	 * type, (datasource OR datasource...), (organism OR organism OR...)
 	 * 
 	 * Both names (partial or full) and URIs should work as filter values.
+	 * The filter queries are re-used (so that their doc-id sets get cached by the query cache).
 	 */	
-	private Query createFilter(Class<? extends BioPAXElement> type, String[] datasources, String[] organisms)
+	private List<Query> createFilters(Class<? extends BioPAXElement> type, String[] datasources, String[] organisms)
 	{
-		BooleanQuery.Builder builder = new BooleanQuery.Builder();
-		
+		List<Query> list = new ArrayList<>(3);
 		//AND datasources	
 		if (datasources != null && datasources.length > 0) {
-			builder.add(subQuery(datasources, FIELD_DATASOURCE), Occur.MUST);
+			list.add(filter(datasources, FIELD_DATASOURCE));
 		}
 		//AND organisms
 		if (organisms != null && organisms.length > 0) {
-			builder.add(subQuery(organisms, FIELD_ORGANISM), Occur.MUST);
+			list.add(filter(organisms, FIELD_ORGANISM));
 		}		
 		//AND type (including all biopax subtypes)
-		if(type != null) { //add biopax class filter
-			BooleanQuery.Builder query = new BooleanQuery.Builder().
-				add(new TermQuery(new Term(FIELD_TYPE, type.getSimpleName().toLowerCase())), Occur.SHOULD);//OR
-			//also add all biopax subclasses of the type
-			for(Class<? extends BioPAXElement> subType : SimpleEditorMap.L3.getKnownSubClassesOf(type)) {
-				query.add(new TermQuery(new Term(FIELD_TYPE, subType.getSimpleName().toLowerCase())), Occur.SHOULD);//OR
-			}		
-			builder.add(query.build(), Occur.MUST);
+		if(type != null) {
+			list.add(typeFilter(type));
 		}
+		return list;
+	}
 
-		BooleanQuery filter = builder.build();
-		return (filter==null || filter.clauses().isEmpty()) ? null : filter;
+	// gets the pre-computed filter by BioPAX type (incl. subtypes)
+	private static Query typeFilter(Class<? extends BioPAXElement> type) {
+		Query q = TYPE_FILTERS.get(type);
+		return (q != null) ? q : createTypeFilter(type);
+	}
+
+	private static Query createTypeFilter(Class<? extends BioPAXElement> type) {
+		Set<BytesRef> names = new HashSet<>();
+		names.add(new BytesRef(type.getSimpleName().toLowerCase()));
+		//also add all biopax subclasses of the type
+		for(Class<? extends BioPAXElement> subType : SimpleEditorMap.L3.getKnownSubClassesOf(type)) {
+			names.add(new BytesRef(subType.getSimpleName().toLowerCase()));
+		}
+		return new TermInSetQuery(FIELD_TYPE, names);
+	}
+
+	// gets or creates the datasource/organism filter query (the same values, in any order, make the same filter)
+	private Query filter(String[] filterValues, String filterField) {
+		final String key = filterField + ":" + new TreeSet<>(Arrays.asList(filterValues));
+		synchronized (filters) {
+			Query q = filters.get(key);
+			if(q == null) {
+				q = subQuery(filterValues, filterField);
+				filters.put(key, q);
+				cachedFilters.add(q);
+			}
+			return q;
+		}
 	}
 
 	/*
@@ -689,43 +1291,82 @@ public class IndexImpl implements Index, Mappings {
 
 	private void addSupportedIdsThatMapToChebi(List<String> chebiIds, final Set<String> resultIds) {
 		//find other IDs that map to the ChEBI ID
-		for(String id: chebiIds) {
-			List<Mapping> mappings = findByDstDbIgnoreCaseAndDstId("CHEBI", id);
-			if (mappings != null) {
-				//collect (for 'xrefid' full-text index field) only ID types that we want biopax graph queries support
-				for (Mapping mapping : mappings) {
-					if (mapping.getSrcDb().equals("PUBCHEM-COMPOUND")
-							|| mapping.getSrcDb().equals("CHEBI")
-							|| mapping.getSrcDb().equals("DRUGBANK")
-							|| mapping.getSrcDb().startsWith("KEGG")
-							|| mapping.getSrcDb().startsWith("CHEMBL")
-							|| mapping.getSrcDb().startsWith("PHARMGKB")
-					) resultIds.add(mapping.getSrcId());
-					//(prefix 'CID:' is included in pubchem-compound ids)
-				}
-			}
-		}
+		addSupportedIdsThatMapTo("CHEBI", chebiIds, CHEBI_MAPPING_SRCDB, resultIds);
 	}
 
 	private void addSupportedIdsThatMapToUniprotId(List<String> uniprotIds, final Set<String> resultIds) {
 		//find other IDs that map to the UniProt AC
-		for(String id: uniprotIds) {
-			List<Mapping> mappings = findByDstDbIgnoreCaseAndDstId("UNIPROT", id);
-			if (mappings != null) {
+		addSupportedIdsThatMapTo("UNIPROT", uniprotIds, UNIPROT_MAPPING_SRCDB, resultIds);
+	}
+
+	private void addSupportedIdsThatMapTo(String dstDb, List<String> dstIds, Predicate<String> srcDbFilter,
+																				final Set<String> resultIds) {
+		final IdMappingTable table = mappingTable;
+		for(String id: dstIds) {
+			if(table != null) {
+				//the table contains only the supported ID types
+				table.addSrcIds(dstDb, id, resultIds);
+			} else {
 				//collect (for 'xrefid' full-text index field) only ID types that we want graph queries support
-				for (Mapping mapping : mappings) {
-					if (mapping.getSrcDb().startsWith("UNIPROT")
-							|| mapping.getSrcDb().startsWith("HGNC")
-							|| mapping.getSrcDb().equalsIgnoreCase("NCBI GENE")
-							|| mapping.getSrcDb().equalsIgnoreCase("REFSEQ")
-							|| mapping.getSrcDb().equalsIgnoreCase("IPI")
-							|| mapping.getSrcDb().startsWith("ENSEMBL")
-					) resultIds.add(mapping.getSrcId());
+				for (Mapping mapping : findByDstDbIgnoreCaseAndDstId(dstDb, id)) {
+					if (srcDbFilter.test(mapping.getSrcDb())) {
+						resultIds.add(mapping.getSrcId());
+					}
 				}
 			}
 		}
 	}
 
+	/*
+	 * Loads the ChEBI and UniProt id-mapping from this index in memory (for the indexing session);
+	 * returns null if that fails (then the index is searched for each ID instead).
+	 */
+	IdMappingTable loadMappingTable() {
+		IndexSearcher searcher = null;
+		try {
+			searcherManager.maybeRefreshBlocking(); //see all the committed mappings
+			searcher = searcherManager.acquire();
+			return IdMappingTable.build(searcher.getIndexReader(),
+					Map.of("CHEBI", CHEBI_MAPPING_SRCDB, "UNIPROT", UNIPROT_MAPPING_SRCDB));
+		} catch (Exception e) {
+			LOG.warn("loadMappingTable, failed; will search the index instead; " + e);
+			return null;
+		} finally {
+			try {
+				searcherManager.release(searcher);
+			} catch (IOException e) {}
+		}
+	}
+
+	/**
+	 * Builds the in-memory xref ID to URIs dictionary
+	 * for the indexed objects of given BioPAX types (including subtypes).
+	 *
+	 * @param types BioPAX types
+	 * @return new dictionary
+	 */
+	@SafeVarargs
+	public final IdDictionary buildIdDictionary(Class<? extends BioPAXElement>... types) {
+		Set<String> typeNames = new HashSet<>();
+		for(Class<? extends BioPAXElement> type : types) {
+			typeNames.add(type.getSimpleName().toLowerCase());
+			for(Class<? extends BioPAXElement> subType : SimpleEditorMap.L3.getKnownSubClassesOf(type)) {
+				typeNames.add(subType.getSimpleName().toLowerCase());
+			}
+		}
+		IndexSearcher searcher = null;
+		try {
+			searcher = searcherManager.acquire();
+			return IdDictionary.build(searcher.getIndexReader(), typeNames);
+		} catch (IOException e) {
+			throw new RuntimeException("buildIdDictionary: failed: " + e);
+		} finally {
+			try {
+				searcherManager.release(searcher);
+			} catch (IOException e) {}
+		}
+	}
+
 	public Model getModel() {
 		return model;
 	}
@@ -803,6 +1444,44 @@ public class IndexImpl implements Index, Mappings {
 		return mappings;
 	}
 
+	@Override
+	public void forEachMapping(Consumer<Mapping> action) {
+		final Set<String> fields = Set.of(FIELD_SRCDB, FIELD_SRCID, FIELD_DSTDB, FIELD_DSTID);
+		IndexSearcher searcher = null;
+		try {
+			searcherManager.maybeRefreshBlocking(); //see all the committed mappings
+			searcher = searcherManager.acquire();
+			for(LeafReaderContext ctx : searcher.getIndexReader().leaves()) {
+				final LeafReader leaf = ctx.reader();
+				final Terms terms = leaf.terms(FIELD_TYPE);
+				final TermsEnum te = (terms != null) ? terms.iterator() : null;
+				if(te == null || !te.seekExact(new BytesRef("mapping"))) {
+					continue;
+				}
+				final Bits liveDocs = leaf.getLiveDocs();
+				final StoredFields storedFields = leaf.storedFields();
+				final PostingsEnum pe = te.postings(null, PostingsEnum.NONE);
+				for(int d = pe.nextDoc(); d != DocIdSetIterator.NO_MORE_DOCS; d = pe.nextDoc()) {
+					if(liveDocs == null || liveDocs.get(d)) {
+						Document doc = storedFields.document(d, fields);
+						Mapping m = new Mapping();
+						m.setSrcDb(doc.get(FIELD_SRCDB));
+						m.setSrcId(doc.get(FIELD_SRCID));
+						m.setDstDb(doc.get(FIELD_DSTDB));
+						m.setDstId(doc.get(FIELD_DSTID));
+						action.accept(m);
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			try {
+				searcherManager.release(searcher);
+			} catch (IOException e) {}
+		}
+	}
+
 	@Override
 	public void save(Mapping mapping) {
 		final Document doc = new Document();
@@ -0,0 +1,146 @@
+package cpath.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.biopax.paxtools.controller.EditorMap;
+import org.biopax.paxtools.controller.ObjectPropertyEditor;
+import org.biopax.paxtools.controller.PropertyEditor;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+
+/**
+ * Writes a BioPAX model as JSON-LD in one pass, directly from the object model (via the editor map),
+ * without the intermediate RDF/XML serialization and parsing.
+ *
+ * The output is the same RDF graph as the BioPAX RDF/XML converted by the Paxtools JSON-LD converter:
+ * a compact JSON-LD document with the "@context" (the BioPAX property terms, their URIs and types)
+ * followed by the "@graph" array of objects (node references are the object URIs).
+ * Only one object's property values are held in memory at a time.
+ *
+ * @author rodche
+ */
+final class JsonldWriter {
+
+  static final String BP = BioPAXLevel.L3.getNameSpace();
+  static final String XSD = "http://www.w3.org/2001/XMLSchema#";
+  static final String OWL = "http://www.w3.org/2002/07/owl#";
+  static final String RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+
+  private static final EditorMap EDITOR_MAP = SimpleEditorMap.L3;
+  private static final JsonFactory JSON_FACTORY = new JsonFactory()
+    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+  private JsonldWriter() {
+    throw new AssertionError("Not instantiable");
+  }
+
+  /**
+   * Writes the model as JSON-LD to the stream (does not close it).
+   *
+   * @param m BioPAX model
+   * @param os output stream
+   * @throws IOException when there is an output stream writing error
+   */
+  @SuppressWarnings("unchecked")
+  static void write(Model m, OutputStream os) throws IOException {
+    JsonGenerator g = JSON_FACTORY.createGenerator(os, JsonEncoding.UTF8);
+    g.useDefaultPrettyPrinter();
+    g.writeStartObject();
+
+    //the context - all the properties of the BioPAX types used in the model
+    g.writeObjectFieldStart("@context");
+    g.writeStringField("bp", BP);
+    g.writeStringField("owl", OWL);
+    g.writeStringField("rdf", RDF);
+    g.writeStringField("xsd", XSD);
+    g.writeObjectFieldStart("imports");
+    g.writeStringField("@id", OWL + "imports");
+    g.writeStringField("@type", "@id");
+    g.writeEndObject();
+    Set<Class<? extends BioPAXElement>> types = new HashSet<>();
+    for (BioPAXElement bpe : m.getObjects()) {
+      types.add(bpe.getModelInterface());
+    }
+    Map<String, String> terms = new TreeMap<>();
+    for (Class<? extends BioPAXElement> type : types) {
+      for (PropertyEditor editor : EDITOR_MAP.getEditorsOf(type)) {
+        terms.putIfAbsent(editor.getProperty(), typeOf(editor));
+      }
+    }
+    for (Map.Entry<String, String> term : terms.entrySet()) {
+      g.writeObjectFieldStart(term.getKey());
+      g.writeStringField("@id", BP + term.getKey());
+      g.writeStringField("@type", term.getValue());
+      g.writeEndObject();
+    }
+    g.writeEndObject();
+
+    g.writeArrayFieldStart("@graph");
+    //the ontology header, as in the RDF/XML (see SimpleIOHandler)
+    if (m.getXmlBase() != null) {
+      g.writeStartObject();
+      g.writeStringField("@id", m.getXmlBase());
+      g.writeStringField("@type", "owl:Ontology");
+      g.writeStringField("imports", BP);
+      g.writeEndObject();
+    }
+    for (BioPAXElement bpe : m.getObjects()) {
+      g.writeStartObject();
+      g.writeStringField("@id", bpe.getUri());
+      g.writeStringField("@type", "bp:" + bpe.getModelInterface().getSimpleName());
+      for (PropertyEditor editor : EDITOR_MAP.getEditorsOf(bpe)) {
+        List<String> values = new ArrayList<>();
+        for (Object v : (Set<Object>) editor.getValueFromBean(bpe)) {
+          if (v != null && !editor.isUnknown(v)) {
+            values.add((v instanceof BioPAXElement) ? ((BioPAXElement) v).getUri() : v.toString());
+          }
+        }
+        if (values.size() == 1) {
+          g.writeStringField(editor.getProperty(), values.get(0));
+        } else if (!values.isEmpty()) {
+          g.writeArrayFieldStart(editor.getProperty());
+          for (String v : values) {
+            g.writeString(v);
+          }
+          g.writeEndArray();
+        }
+      }
+      g.writeEndObject();
+    }
+    g.writeEndArray();
+
+    g.writeEndObject();
+    g.flush();
+  }
+
+  /*
+   * JSON-LD term type: "@id" (node reference) or the XSD datatype of the literal,
+   * the same as SimpleIOHandler writes to RDF/XML.
+   */
+  private static String typeOf(PropertyEditor editor) {
+    if (editor instanceof ObjectPropertyEditor) {
+      return "@id";
+    }
+    Class<?> range = editor.getRange();
+    if (range == Integer.class || range == int.class) {
+      return XSD + "int";
+    } else if (range == Float.class || range == float.class) {
+      return XSD + "float";
+    } else if (range == Double.class || range == double.class) {
+      return XSD + "double";
+    } else if (range == Long.class || range == long.class) {
+      return XSD + "long";
+    } else if (range == Boolean.class || range == boolean.class) {
+      return XSD + "boolean";
+    } else {
+      return XSD + "string";
+    }
+  }
+}
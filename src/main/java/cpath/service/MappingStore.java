@@ -0,0 +1,327 @@
+package cpath.service;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cpath.service.metadata.Mapping;
+import cpath.service.metadata.MappingLookup;
+
+/**
+ * The read-only id-mapping, an immutable memory-mapped file of the sorted mapping records
+ * (built at the warehouse build time, from the same mappings as the index has),
+ * to look up by (srcId, dstDb) and (dstDb, dstId) with a binary search, without searching the index.
+ *
+ * File format: header (magic, version, the warehouse archive size and CRC32C checksum,
+ * the sections offset and length), then two sections -
+ * records sorted by srcId, dstDb and by dstDb, dstId; each section has the no. records,
+ * the record offsets (ints), and the records (UTF-8, tab-separated: the two key fields, then the other two).
+ * A section can be up to 2Gb.
+ *
+ * A store is valid only for the warehouse archive that was saved along with the id-mapping index
+ * the store was made from (checked when opening).
+ *
+ * @author rodche
+ */
+public final class MappingStore implements MappingLookup {
+  private static final Logger log = LoggerFactory.getLogger(MappingStore.class);
+
+  private static final int MAGIC = 0x43504d53; //"CPMS"
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 4 + 4 + 2 * 8 + 4 * 8;
+
+  private final Section bySrc; //srcId, dstDb -> srcDb, dstId
+  private final Section byDst; //dstDb, dstId -> srcDb, srcId
+
+  private MappingStore(Section bySrc, Section byDst) {
+    this.bySrc = bySrc;
+    this.byDst = byDst;
+  }
+
+  /**
+   * Sorted records (read-only buffer; only absolute gets - thread-safe).
+   */
+  private static final class Section {
+    final ByteBuffer buf;
+    final int size;
+    final int dataStart;
+
+    Section(ByteBuffer buf) {
+      this.buf = buf;
+      this.size = buf.getInt(0);
+      this.dataStart = 4 + 4 * (size + 1);
+    }
+
+    int start(int i) {
+      return dataStart + buf.getInt(4 + 4 * i);
+    }
+
+    int end(int i) {
+      return dataStart + buf.getInt(4 + 4 * (i + 1));
+    }
+
+    //compares the record with the key prefix (unsigned bytes); 0 - the record starts with the prefix
+    int compare(int i, byte[] prefix) {
+      final int s = start(i);
+      final int n = Math.min(end(i) - s, prefix.length);
+      for (int j = 0; j < n; j++) {
+        int c = Integer.compare(buf.get(s + j) & 0xff, prefix[j] & 0xff);
+        if (c != 0) {
+          return c;
+        }
+      }
+      return (n < prefix.length) ? -1 : 0;
+    }
+
+    //the first record that starts with or is greater than the prefix
+    int lowerBound(byte[] prefix) {
+      int lo = 0;
+      int hi = size;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (compare(mid, prefix) < 0) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      return lo;
+    }
+
+    //the values (the third and fourth fields) of all the records with the key
+    void find(String k1, String k2, Consumer<String[]> action) {
+      final byte[] prefix = (k1 + '\t' + k2 + '\t').getBytes(StandardCharsets.UTF_8);
+      for (int i = lowerBound(prefix); i < size && compare(i, prefix) == 0; i++) {
+        action.accept(values(i, prefix.length));
+      }
+    }
+
+    String[] values(int i, int offset) {
+      final int s = start(i) + offset;
+      final byte[] bytes = new byte[end(i) - s];
+      buf.get(s, bytes);
+      final String v = new String(bytes, StandardCharsets.UTF_8);
+      final int t = v.indexOf('\t');
+      return new String[]{v.substring(0, t), v.substring(t + 1)};
+    }
+
+    String[] fields(int i) {
+      final byte[] bytes = new byte[end(i) - start(i)];
+      buf.get(start(i), bytes);
+      return new String(bytes, StandardCharsets.UTF_8).split("\t", 4);
+    }
+  }
+
+  /**
+   * Collects the mappings (in any order, with duplicates) and writes the store file.
+   */
+  public static final class Builder {
+    private final List<byte[]> bySrc = new ArrayList<>();
+    private final List<byte[]> byDst = new ArrayList<>();
+
+    /**
+     * Adds the mapping (db names are upper-cased as in the index; tab/new line chars are replaced with spaces).
+     *
+     * @param m id-mapping entry
+     */
+    public void add(Mapping m) {
+      final String srcDb = clean(m.getSrcDb()).toUpperCase();
+      final String srcId = clean(m.getSrcId());
+      final String dstDb = clean(m.getDstDb()).toUpperCase();
+      final String dstId = clean(m.getDstId());
+      bySrc.add(String.join("\t", srcId, dstDb, srcDb, dstId).getBytes(StandardCharsets.UTF_8));
+      byDst.add(String.join("\t", dstDb, dstId, srcDb, srcId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String clean(String s) {
+      return s.replace('\t', ' ').replace('\n', ' ');
+    }
+
+    /**
+     * Sorts the records, removes duplicates, and saves the store
+     * (to a temporary file first, then replaces the store file).
+     *
+     * @param file the store file
+     * @param warehouse the warehouse archive (already saved) the id-mapping goes with
+     * @return no. distinct mappings saved
+     * @throws IOException when there is a file i/o error or the data is too large
+     */
+    public int write(Path file, Path warehouse) throws IOException {
+      final long start = System.currentTimeMillis();
+      final long warehouseSize = Files.size(warehouse);
+      final long warehouseChecksum = ModelSnapshot.checksum(warehouse);
+      final Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), "mappings", ".tmp");
+      int n;
+      try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        ch.position(HEADER_SIZE);
+        final long srcOffset = ch.position();
+        n = writeSection(sorted(bySrc), ch);
+        final long dstOffset = ch.position();
+        writeSection(sorted(byDst), ch);
+        final long end = ch.position();
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION)
+          .putLong(warehouseSize).putLong(warehouseChecksum)
+          .putLong(srcOffset).putLong(dstOffset - srcOffset)
+          .putLong(dstOffset).putLong(end - dstOffset).flip();
+        ch.write(header, 0);
+      } catch (IOException | RuntimeException e) {
+        Files.deleteIfExists(tmp);
+        throw e;
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      log.info("write, saved " + n + " mappings to " + file + " in " + (System.currentTimeMillis() - start) + " ms");
+      return n;
+    }
+
+    private static List<byte[]> sorted(List<byte[]> records) {
+      records.sort(Arrays::compareUnsigned);
+      final List<byte[]> distinct = new ArrayList<>(records.size());
+      for (byte[] r : records) {
+        if (distinct.isEmpty() || !Arrays.equals(distinct.get(distinct.size() - 1), r)) {
+          distinct.add(r);
+        }
+      }
+      return distinct;
+    }
+
+    private static int writeSection(List<byte[]> records, FileChannel ch) throws IOException {
+      long dataSize = 0;
+      for (byte[] r : records) {
+        dataSize += r.length;
+      }
+      if (4L + 4L * (records.size() + 1) + dataSize > Integer.MAX_VALUE) {
+        throw new IOException("too many mappings: " + records.size() + ", " + dataSize + " bytes");
+      }
+      final ByteBuffer offsets = ByteBuffer.allocate(4 + 4 * (records.size() + 1));
+      offsets.putInt(records.size());
+      int offset = 0;
+      for (byte[] r : records) {
+        offsets.putInt(offset);
+        offset += r.length;
+      }
+      offsets.putInt(offset).flip();
+      writeFully(ch, offsets);
+      final ByteBuffer out = ByteBuffer.allocate(1 << 16);
+      for (byte[] r : records) {
+        if (out.remaining() < r.length) {
+          writeFully(ch, out.flip());
+          out.clear();
+        }
+        if (r.length > out.capacity()) {
+          writeFully(ch, ByteBuffer.wrap(r));
+        } else {
+          out.put(r);
+        }
+      }
+      writeFully(ch, out.flip());
+      return records.size();
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+      while (buf.hasRemaining()) {
+        ch.write(buf);
+      }
+    }
+  }
+
+  /**
+   * Opens (memory-maps) the store.
+   *
+   * @param file the store file
+   * @param warehouse the warehouse archive
+   * @return the store or null (no file, cannot read it, or it was made for another warehouse archive)
+   */
+  public static MappingStore open(Path file, Path warehouse) {
+    if (!Files.isRegularFile(file) || !Files.isRegularFile(warehouse)) {
+      return null;
+    }
+    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining() && ch.read(header) >= 0);
+      header.flip();
+      if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+        log.warn("open, not a valid id-mapping store: " + file);
+        return null;
+      }
+      //the size first (cheap), then the checksum
+      if (header.getLong() != Files.size(warehouse) || header.getLong() != ModelSnapshot.checksum(warehouse)) {
+        log.warn("open, skip " + file + " - it was made for another " + warehouse);
+        return null;
+      }
+      //the mapping stays valid after the channel is closed
+      final Section bySrc = new Section(ch.map(FileChannel.MapMode.READ_ONLY, header.getLong(), header.getLong()));
+      final Section byDst = new Section(ch.map(FileChannel.MapMode.READ_ONLY, header.getLong(), header.getLong()));
+      log.info("open, " + bySrc.size + " mappings in " + file);
+      return new MappingStore(bySrc, byDst);
+    } catch (IOException | RuntimeException e) {
+      log.error("open, failed to read " + file + "; " + e);
+      return null;
+    }
+  }
+
+  public int size() {
+    return bySrc.size;
+  }
+
+  @Override
+  public List<Mapping> findByDstDbIgnoreCaseAndDstId(String dstDb, String dstId) {
+    final List<Mapping> mappings = new ArrayList<>();
+    final String db = dstDb.toUpperCase();
+    byDst.find(db, dstId, v -> mappings.add(mapping(v[0], v[1], db, dstId)));
+    return mappings;
+  }
+
+  @Override
+  public List<Mapping> findBySrcIdInAndDstDbIgnoreCase(List<String> srcIds, String dstDb) {
+    final List<Mapping> mappings = new ArrayList<>();
+    final String db = dstDb.toUpperCase();
+    for (String srcId : srcIds) {
+      bySrc.find(srcId, db, v -> mappings.add(mapping(v[0], srcId, db, v[1])));
+    }
+    return mappings;
+  }
+
+  @Override
+  public Set<String> findDstIds(Collection<String> srcIds, String dstDb) {
+    final Set<String> dstIds = new TreeSet<>();
+    final String db = dstDb.toUpperCase();
+    for (String srcId : srcIds) {
+      bySrc.find(srcId, db, v -> dstIds.add(v[1]));
+    }
+    return dstIds;
+  }
+
+  @Override
+  public void forEachMapping(Consumer<Mapping> action) {
+    for (int i = 0; i < bySrc.size; i++) {
+      String[] f = bySrc.fields(i);
+      action.accept(mapping(f[2], f[0], f[1], f[3]));
+    }
+  }
+
+  //the values are already normalized (see Mapping constructor)
+  private static Mapping mapping(String srcDb, String srcId, String dstDb, String dstId) {
+    Mapping m = new Mapping();
+    m.setSrcDb(srcDb);
+    m.setSrcId(srcId);
+    m.setDstDb(dstDb);
+    m.setDstId(dstId);
+    return m;
+  }
+
+  @Override
+  public String toString() {
+    return "MappingStore(" + size() + " mappings)";
+  }
+}
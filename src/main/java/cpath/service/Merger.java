@@ -11,18 +11,26 @@ import org.biopax.paxtools.model.level3.*;
 import org.biopax.paxtools.model.level3.Process;
 import org.biopax.paxtools.normalizer.Resolver;
 import org.biopax.paxtools.util.ClassFilterSet;
+import org.biopax.paxtools.controller.Cloner;
+import org.biopax.paxtools.controller.Completer;
 import org.biopax.paxtools.controller.ModelUtils;
 import org.biopax.paxtools.controller.SimpleEditorMap;
 import org.biopax.paxtools.controller.SimpleMerger;
 import org.biopax.paxtools.io.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 import org.springframework.util.Assert;
 
 import java.io.*;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPOutputStream;
 
 
@@ -39,6 +47,7 @@ public final class Merger {
 	private final Service service;
 	private final Set<String> supportedTaxonomyIds;
 	private final Model warehouseModel;
+	private final NameIndex smallMoleculeNames;
 
 	/**
 	 * Constructor.
@@ -56,8 +65,23 @@ public final class Merger {
 		warehouseModel = service.loadWarehouseModel();
 		Assert.notNull(warehouseModel, "No BioPAX Warehouse");
 		log.info("Loaded Warehouse BioPAX archive: {}", service.settings().warehouseModelFile());
+		//case-insensitive name -> ChEBI ID index of the warehouse SMRs (for mapping small molecules by name)
+		smallMoleculeNames = new NameIndex(warehouseModel.getObjects(SmallMoleculeReference.class),
+			smr -> CPathUtils.idFromNormalizedUri(smr.getUri()));
+		log.info("Indexed warehouse SMR names: {}", smallMoleculeNames.size());
 	}
 
+	/**
+	 * Merges the normalized data of all pathway data sources into the main model (and saves it),
+	 * also saving each provider's model.
+	 *
+	 * Provider models are prepared (merged with the warehouse, id-mapping, etc.) and saved in parallel
+	 * (see {@link Settings#buildThreads()}, {@link Settings#buildHeapBytes()}), each task using own copies of
+	 * the warehouse objects (the warehouse model and id-mapping index are shared read-only), and then
+	 * they are merged into the main model one by one, in the metadata order, as in the sequential build.
+	 * A provider model keeps its share of the heap budget until it is merged into the main model;
+	 * when there is not enough memory to start the next task, the earlier models get merged first.
+	 */
 	public void merge() {
 		//set a new empty main model
 		Model m = BioPAXLevel.L3.getDefaultFactory().createModel();
@@ -65,20 +89,46 @@ public final class Merger {
 		SimpleMerger simpleMerger = new SimpleMerger(SimpleEditorMap.L3, object -> true);
 		//init the lucene index (id-mapping is ready, but the biopax index is to be updated below)
 		service.initIndex(m, service.settings().indexDir(), false);
+		final List<Datasource> datasources = new ArrayList<>();
 		for (Datasource datasource : service.metadata().getDatasources()) {
 			if(datasource.getType().isNotPathwayData()) {
 				log.info("Skip Warehouse data: {}", datasource);
-				continue;
+			} else {
+				datasources.add(datasource);
 			}
-			Model providerModel = merge(datasource); //uses lucene index, via service.mapping() repo, for id-mapping
-			log.info("Replacing xml:base of non-generated/normalized URIs in {}", datasource.getIdentifier());
-			//todo: new URI must be valid (e.g. base/prefix cannot contain '_' or '-'; or start with a standard URI scheme, e.g. 'urn:' or 'http://')
-			CPathUtils.rebaseUris(providerModel, null, datasource.getIdentifier()+":");
-			log.info("Replacing conflicting URIs in {} before merging into Main...", datasource.getIdentifier());
-			replaceConflictingUris(providerModel, m);
-			save(providerModel, datasource);
-			log.info("Merging '{}' model into the Main BioPAX model...", datasource.getIdentifier());
-			simpleMerger.merge(m, providerModel);
+		}
+
+		final int threads = Math.max(1, Math.min(service.settings().buildThreads(), datasources.size()));
+		final HeapBudget budget = new HeapBudget(service.settings().buildHeapBytes());
+		log.info("Preparing {} provider models; threads: {}, heap budget: {}Mb", datasources.size(), threads, budget.total());
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			final List<Future<Model>> futures = new ArrayList<>(datasources.size());
+			final int[] permits = new int[datasources.size()];
+			int next = 0; //the next provider model to merge into the main one
+			for (int j = 0; j < datasources.size(); j++) {
+				final Datasource datasource = datasources.get(j);
+				final long bytes = heapEstimate(datasource);
+				//when the budget is used up, merge the earlier models (in order) to free their memory;
+				//once all of them are merged, the whole budget is available again, and the loop ends.
+				while ((permits[j] = budget.tryAcquire(bytes)) == 0) {
+					fold(m, simpleMerger, datasources.get(next), futures, next);
+					budget.release(permits[next++]);
+				}
+				futures.add(pool.submit(() -> prepare(datasource)));
+			}
+			//the final fold - sequential, in the same order (regardless of which provider model is ready first)
+			for (; next < datasources.size(); next++) {
+				fold(m, simpleMerger, datasources.get(next), futures, next);
+				budget.release(permits[next]);
+			}
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Failed preparing a provider model", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted", e);
+		} finally {
+			pool.shutdownNow();
 		}
 
 		//remove dangling SPEs and Genes (such non-participant/components are not useful for pathway analyses...)
@@ -89,12 +139,68 @@ public final class Merger {
 
 		//m.repair(); //todo: check if we really need this call (unlikely)
 		save(m); //save the main model as rdfxml file
-		log.info("Merged, saved.");
+		log.info("Merged, saved. Mapping small molecules by name - {}", smallMoleculeNames);
 		log.info("Indexing...");
 		service.index().save(m); // create or update all the biopax elements index
 		service.setModel(m);
 	}
 
+	/*
+	 * Waits for the i-th provider model, merges it into the main model, and drops the reference.
+	 */
+	private void fold(Model m, SimpleMerger simpleMerger, Datasource datasource, List<Future<Model>> futures, int i)
+		throws InterruptedException, ExecutionException
+	{
+		final String id = datasource.getIdentifier();
+		final Model providerModel = futures.get(i).get();
+		futures.set(i, null); //release
+		log.info("Replacing conflicting URIs in {} before merging into Main...", id);
+		replaceConflictingUris(providerModel, m);
+		replaceEquivalentFeatures(providerModel, m);
+		log.info("Merging '{}' model into the Main BioPAX model...", id);
+		simpleMerger.merge(m, providerModel);
+	}
+
+	/*
+	 * Makes (or loads) and saves the provider's model (the heap budget is reserved by the caller).
+	 * This does not depend on other providers' models, and so can run in parallel.
+	 */
+	private Model prepare(Datasource datasource) {
+		final String id = datasource.getIdentifier();
+		MDC.put(PreMerger.MDC_KEY, id);
+		try {
+			Model providerModel = merge(datasource); //uses the id-mapping store or index (service.map)
+			log.info("Replacing xml:base of non-generated/normalized URIs in {}", id);
+			//todo: new URI must be valid (e.g. base/prefix cannot contain '_' or '-'; or start with a standard URI scheme, e.g. 'urn:' or 'http://')
+			CPathUtils.rebaseUris(providerModel, null, id + ":");
+			save(providerModel, datasource);
+			return providerModel;
+		} finally {
+			MDC.remove(PreMerger.MDC_KEY);
+		}
+	}
+
+	//roughly, how much heap memory the provider's model takes (by the gzip archive or normalized files size)
+	private long heapEstimate(Datasource datasource) {
+		long size = 0L;
+		try {
+			Path archive = Paths.get(service.settings().biopaxFileName(datasource.getIdentifier()));
+			if (Files.exists(archive)) {
+				size = Files.size(archive);
+			} else {
+				for (String f : datasource.getFiles()) {
+					Path normalized = Paths.get(CPathUtils.normalizedFile(f));
+					if (Files.exists(normalized)) {
+						size += Files.size(normalized);
+					}
+				}
+			}
+		} catch (IOException e) {
+			log.warn("heapEstimate, {}", e.toString());
+		}
+		return size * HeapBudget.BYTES_PER_GZIP_BYTE;
+	}
+
 	//remove bad unification and relationship xrefs, if any;
 	//otherwise, just lowercase the xref.db (but not id - case-sensitive)
 	private void cleanupXrefs(Model m) {
@@ -202,6 +308,9 @@ public final class Merger {
 		} catch (Exception e) {
 			throw new RuntimeException("Failed saving main BioPAX archive.", e);
 		}
+		//also save the binary snapshot (tied to the archive) to load the model faster on startup
+		ModelSnapshot.write(m, Paths.get(service.settings().mainModelFile()),
+			Paths.get(service.settings().mainModelSnapshotFile()));
 	}
 
 	private void save(Model model, Datasource ds) {
@@ -279,6 +388,10 @@ public final class Merger {
 			}
 		}
 		
+		// The warehouse model is shared by the provider tasks (read-only);
+		// so, use own copies of the canonical ERs (and their xrefs, organism, features, etc.) from now on
+		copyFromWarehouse(replacements);
+
 		// Explicitly remove old (to be replaced) objects from the source model
 		// this is important for the replacement (below) to work, esp. in case 
 		// new URI is the same as original normalized URI...
@@ -314,6 +427,17 @@ public final class Merger {
 		log.info("Merged {}", srcModelInfo);
 	}
 
+	//replace the warehouse ERs (values) with their copies (the same URIs)
+	private void copyFromWarehouse(Map<EntityReference, EntityReference> replacements) {
+		if(replacements.isEmpty()) {
+			return;
+		}
+		final Set<BioPAXElement> canonical = new HashSet<>(replacements.values());
+		final Model copies = new Cloner(SimpleEditorMap.L3, BioPAXLevel.L3.getDefaultFactory())
+			.clone(new Completer(SimpleEditorMap.L3).complete(canonical));
+		replacements.replaceAll((orig, er) -> (EntityReference) copies.getByID(er.getUri()));
+	}
+
 	private void filterOutUnwantedOrganismInteractions(Model source) {
 		//remove simple MIs where all participants are not from the organisms we want (as set in the properties file)
 		miLoop: for(MolecularInteraction mi : new HashSet<>(source.getObjects(MolecularInteraction.class))) {
@@ -361,6 +485,11 @@ public final class Merger {
 		}
 	}
 
+	/*
+	 * Replaces the URIs of source objects that would collide (by type) with the target's or are
+	 * misused normalized UniProt/ChEBI ones. New URIs are made from the source xml:base and the old URI
+	 * (not random), so that a build is reproducible.
+	 */
 	void replaceConflictingUris(Model source, Model target) {
 		//iterate over a new set to avoid concurrent mod. ex. in CPathUtils.changeUri
 		for(BioPAXElement bpe : new HashSet<>(source.getObjects())) {
@@ -374,8 +503,13 @@ public final class Merger {
 				(existBpe != null && bpe.getModelInterface() != existBpe.getModelInterface())
 			){
 				//Replace URI due to type collision
-				CPathUtils.replaceUri(source, bpe,
-						target.getXmlBase() + bpe.getModelInterface().getSimpleName() + "_" + UUID.randomUUID());
+				final String prefix = target.getXmlBase() + bpe.getModelInterface().getSimpleName() + "_"
+					+ ModelUtils.md5hex(source.getXmlBase() + currUri);
+				String uri = prefix;
+				for(int i = 1; source.containsID(uri) || target.containsID(uri); i++) {
+					uri = prefix + "_" + i;
+				}
+				CPathUtils.replaceUri(source, bpe, uri);
 			}
 		}
 	}
@@ -425,6 +559,8 @@ public final class Merger {
 		for (Map.Entry<EntityReference,EntityReference> entry: replacements.entrySet()) {
 			final EntityReference old = entry.getKey();
 			final EntityReference repl = entry.getValue();
+			// the same canonical ER (another copy) may be already in the target model, with some features
+			final BioPAXElement existing = model.getByID(repl.getUri());
 			for (EntityFeature ef : new HashSet<>(old.getEntityFeature()))
 			{ // move entity features of the replaced ER to the new canonical one
 				// remove the ef from the old ER
@@ -433,30 +569,65 @@ public final class Merger {
 
 				// If there exist an equivalent, don't add original 'ef', 
 				// but just replace with the equiv. one in all PEs of given old ER
-				EntityFeature equivEf = null;
-				for(EntityFeature f : repl.getEntityFeature()) {
-					if(f.isEquivalent(ef)) {
-						equivEf = f;
-						equivEf.getComment().addAll(ef.getComment());
-						break;
-					}
-				}			
+				EntityFeature equivEf = equivalentFeature(repl, ef);
+				if(equivEf == null && existing instanceof EntityReference && existing != repl)
+					equivEf = equivalentFeature((EntityReference) existing, ef);
 				if(equivEf == null) //add new EF to the canonical ER
 					repl.addEntityFeature(ef);
-				else { //update PEs' feature and notFeature properties to use the existing equiv. feature
-					for(PhysicalEntity pe : new HashSet<>(ef.getFeatureOf())) {
-						pe.removeFeature(ef);
-						pe.addFeature(equivEf);
-					}
-					for(PhysicalEntity pe : new HashSet<>(ef.getNotFeatureOf())) {
-						pe.removeNotFeature(ef);
-						pe.addNotFeature(equivEf);
-					}	
-				}
+				else //update PEs' feature and notFeature properties to use the existing equiv. feature
+					replaceFeature(ef, equivEf);
 			}				
 		}
 	}
 
+	/*
+	 * Uses the target model's equivalent entity features instead of the source ones
+	 * of the same (URI) entity references; otherwise, the merged ER would get duplicate features
+	 * (each provider model has its own copy of a warehouse ER, and features are added independently).
+	 */
+	void replaceEquivalentFeatures(Model source, Model target) {
+		for (EntityReference er : new HashSet<>(source.getObjects(EntityReference.class))) {
+			final BioPAXElement existing = target.getByID(er.getUri());
+			if (!(existing instanceof EntityReference) || existing == er) {
+				continue;
+			}
+			for (EntityFeature ef : new HashSet<>(er.getEntityFeature())) {
+				if (target.containsID(ef.getUri())) {
+					continue; //the same feature; SimpleMerger takes care of it
+				}
+				EntityFeature equivEf = equivalentFeature((EntityReference) existing, ef);
+				if (equivEf != null) {
+					er.removeEntityFeature(ef);
+					replaceFeature(ef, equivEf);
+					source.remove(ef);
+				}
+			}
+		}
+	}
+
+	//an equivalent feature of the ER, if any (then, the comments of 'ef' are copied to it)
+	private EntityFeature equivalentFeature(EntityReference er, EntityFeature ef) {
+		for(EntityFeature f : er.getEntityFeature()) {
+			if(f != ef && f.isEquivalent(ef)) {
+				f.getComment().addAll(ef.getComment());
+				return f;
+			}
+		}
+		return null;
+	}
+
+	//makes the physical entities use the equivalent feature instead of 'ef'
+	private void replaceFeature(EntityFeature ef, EntityFeature equivEf) {
+		for(PhysicalEntity pe : new HashSet<>(ef.getFeatureOf())) {
+			pe.removeFeature(ef);
+			pe.addFeature(equivEf);
+		}
+		for(PhysicalEntity pe : new HashSet<>(ef.getNotFeatureOf())) {
+			pe.removeNotFeature(ef);
+			pe.addNotFeature(equivEf);
+		}
+	}
+
 	/*
 	 * id-mapping by xrefs - to primary ChEBI IDs; adds new relationship xrefs to the entity.
 	 * This won't improve our full-text index/search and graph queries (where id-mapping is used again anyway),
@@ -825,20 +996,11 @@ public final class Merger {
 	}
 
 	private Set<String> mapSmallMoleculeByExactName(Named el) {
-		Set<String> mp = new HashSet<>(1);
 		if(el instanceof SmallMolecule || el instanceof SmallMoleculeReference) {
-			//find a warehouse SMR(s) with exactly the same name (case-insensitive).
-			for(SmallMoleculeReference er : warehouseModel.getObjects(SmallMoleculeReference.class)) {
-				for(String erName : er.getName()) {
-					if(el.getName().stream().anyMatch(name -> StringUtils.equalsIgnoreCase(name, erName))) {
-						//extract the ChEBI AC from the normalized SMR URI
-						mp.add(CPathUtils.idFromNormalizedUri(er.getUri()));
-						break;
-					}
-				}
-			}
+			//find the ChEBI ACs of warehouse SMR(s) with exactly the same name (case-insensitive).
+			return smallMoleculeNames.find(el.getName());
 		}
-		return mp;
+		return new HashSet<>(1);
 	}
 
 	/*
@@ -0,0 +1,336 @@
+package cpath.service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+
+import org.biopax.paxtools.controller.*;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A compact binary snapshot of the main BioPAX model, to load it much faster than parsing the RDF/XML archive.
+ *
+ * Format: header (magic, version, source archive size, last modified time and CRC32C checksum, xml:base),
+ * the string dictionary (URIs, string and enum property values, BioPAX type and property names),
+ * the objects (type and URI ids), then - each object's property values as typed records
+ * (object ordinals, string ids, or primitive values).
+ *
+ * A snapshot is valid only for the archive it was made from (checked when reading);
+ * otherwise, the archive must be parsed. The archive checksum is computed again only
+ * when its size is the same but the last modified time is not (e.g. the file was copied).
+ *
+ * @author rodche
+ */
+public final class ModelSnapshot {
+  private static final Logger log = LoggerFactory.getLogger(ModelSnapshot.class);
+
+  private static final int MAGIC = 0x43503253; //"CP2S"
+  private static final int VERSION = 2;
+  private static final EditorMap EDITOR_MAP = SimpleEditorMap.L3;
+
+  private ModelSnapshot() {
+    throw new AssertionError("Not instantiable");
+  }
+
+  /**
+   * Computes the CRC32C checksum of the file.
+   *
+   * @param file path
+   * @return checksum
+   * @throws IOException when reading fails
+   */
+  static long checksum(Path file) throws IOException {
+    try(CheckedInputStream in = new CheckedInputStream(Files.newInputStream(file), new CRC32C())) {
+      byte[] buf = new byte[1 << 16];
+      while (in.read(buf) >= 0) {
+        //just read
+      }
+      return in.getChecksum().getValue();
+    }
+  }
+
+  /**
+   * Writes the model snapshot (to a temporary file first, then replaces the target one).
+   *
+   * @param model the model that was saved to the archive
+   * @param archive BioPAX RDF/XML archive (already saved) the model is from
+   * @param snapshot output file
+   */
+  @SuppressWarnings("unchecked")
+  public static void write(Model model, Path archive, Path snapshot) {
+    final long start = System.currentTimeMillis();
+    try {
+      final long checksum = checksum(archive);
+      final long archiveSize = Files.size(archive);
+      final long archiveTime = Files.getLastModifiedTime(archive).toMillis();
+
+      //assign object ordinals and collect the strings (first pass)
+      final List<BioPAXElement> objects = new ArrayList<>(model.getObjects());
+      final Map<BioPAXElement, Integer> ordinals = new IdentityHashMap<>(objects.size());
+      final Dictionary dictionary = new Dictionary();
+      for (BioPAXElement bpe : objects) {
+        ordinals.put(bpe, ordinals.size());
+        dictionary.id(bpe.getModelInterface().getSimpleName());
+        dictionary.id(bpe.getUri());
+      }
+      for (BioPAXElement bpe : objects) {
+        for (PropertyEditor editor : editorsWithValues(bpe)) {
+          dictionary.id(editor.getProperty());
+          if (!(editor instanceof ObjectPropertyEditor)) {
+            for (Object value : editor.getValueFromBean(bpe)) {
+              if (value instanceof Enum) {
+                dictionary.id(((Enum<?>) value).name());
+              } else if (value instanceof String) {
+                dictionary.id((String) value);
+              }
+            }
+          }
+        }
+      }
+
+      //write the header, dictionary, objects, and property values (second pass)
+      Path tmp = Files.createTempFile(snapshot.toAbsolutePath().getParent(), "snapshot", ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(archiveSize);
+        out.writeLong(archiveTime);
+        out.writeLong(checksum);
+        writeString(out, model.getXmlBase());
+        out.writeInt(dictionary.strings.size());
+        for (String s : dictionary.strings) {
+          writeString(out, s);
+        }
+        out.writeInt(objects.size());
+        for (BioPAXElement bpe : objects) {
+          out.writeInt(dictionary.id(bpe.getModelInterface().getSimpleName()));
+          out.writeInt(dictionary.id(bpe.getUri()));
+        }
+        for (BioPAXElement bpe : objects) {
+          List<PropertyEditor> editors = editorsWithValues(bpe);
+          out.writeShort(editors.size());
+          for (PropertyEditor editor : editors) {
+            Set<?> values = editor.getValueFromBean(bpe);
+            out.writeInt(dictionary.id(editor.getProperty()));
+            out.writeInt(values.size());
+            for (Object value : values) {
+              writeValue(out, editor, value, ordinals, dictionary);
+            }
+          }
+        }
+      }
+      Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING);
+      log.info("write, saved {} objects, {} strings to {} in {} ms", objects.size(), dictionary.strings.size(),
+        snapshot, System.currentTimeMillis() - start);
+    } catch (Exception e) {
+      throw new RuntimeException("Failed writing the model snapshot " + snapshot, e);
+    }
+  }
+
+  /**
+   * Checks the snapshot header (format version, source archive size, modified time or checksum).
+   *
+   * @param snapshot the model snapshot file
+   * @param archive BioPAX RDF/XML archive the snapshot must be made from
+   * @return true if the snapshot can be used instead of the archive
+   */
+  public static boolean isValid(Path snapshot, Path archive) {
+    if (!Files.isReadable(snapshot) || !Files.isReadable(archive)) {
+      return false;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+      return checkHeader(in, snapshot, archive);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static boolean checkHeader(DataInputStream in, Path snapshot, Path archive) throws IOException {
+    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+      log.warn("unsupported snapshot format: {}", snapshot);
+      return false;
+    }
+    final long archiveSize = in.readLong();
+    final long archiveTime = in.readLong();
+    final long checksum = in.readLong();
+    if (archiveSize != Files.size(archive)
+      || (archiveTime != Files.getLastModifiedTime(archive).toMillis() && checksum != checksum(archive))) {
+      log.warn("snapshot {} was not made from the current {}", snapshot, archive);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Reads the model from the snapshot if it was made from the archive (see {@link #isValid(Path, Path)}).
+   *
+   * @param snapshot the model snapshot file
+   * @param archive BioPAX RDF/XML archive the snapshot must be made from
+   * @return new model or null when the snapshot is missing, outdated or cannot be read
+   */
+  public static Model read(Path snapshot, Path archive) {
+    if (!Files.isReadable(snapshot) || !Files.isReadable(archive)) {
+      return null;
+    }
+    final long start = System.currentTimeMillis();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot), 1 << 16))) {
+      if (!checkHeader(in, snapshot, archive)) {
+        return null;
+      }
+
+      final Model model = BioPAXLevel.L3.getDefaultFactory().createModel();
+      model.setXmlBase(readString(in));
+      final String[] strings = new String[in.readInt()];
+      for (int i = 0; i < strings.length; i++) {
+        strings[i] = readString(in);
+      }
+
+      final Map<String, Class<? extends BioPAXElement>> types = new HashMap<>();
+      for (Class<? extends BioPAXElement> c : EDITOR_MAP.getKnownSubClassesOf(BioPAXElement.class)) {
+        if (c.isInterface()) {
+          types.put(c.getSimpleName(), c);
+        }
+      }
+      final BioPAXElement[] objects = new BioPAXElement[in.readInt()];
+      for (int i = 0; i < objects.length; i++) {
+        Class<? extends BioPAXElement> type = types.get(strings[in.readInt()]);
+        objects[i] = model.addNew(type, strings[in.readInt()]);
+      }
+
+      //property editors by BioPAX type and property name
+      final Map<Class<? extends BioPAXElement>, Map<String, PropertyEditor>> editors = new HashMap<>();
+      for (BioPAXElement bpe : objects) {
+        final Map<String, PropertyEditor> typeEditors = editors.computeIfAbsent(bpe.getModelInterface(), c -> {
+          Map<String, PropertyEditor> m = new HashMap<>();
+          for (PropertyEditor editor : EDITOR_MAP.getEditorsOf(bpe)) {
+            m.put(editor.getProperty(), editor);
+          }
+          return m;
+        });
+        final int numProperties = in.readShort();
+        for (int p = 0; p < numProperties; p++) {
+          PropertyEditor editor = typeEditors.get(strings[in.readInt()]);
+          int numValues = in.readInt();
+          for (int v = 0; v < numValues; v++) {
+            editor.setValueToBean(readValue(in, editor, objects, strings), bpe);
+          }
+        }
+      }
+
+      log.info("read, loaded {} objects from {} in {} ms", objects.length, snapshot,
+        System.currentTimeMillis() - start);
+      return model;
+    } catch (Exception e) {
+      log.error("read, failed to load the model from " + snapshot + "; " + e);
+      return null;
+    }
+  }
+
+  //the object's properties that have known values
+  @SuppressWarnings("unchecked")
+  private static List<PropertyEditor> editorsWithValues(BioPAXElement bpe) {
+    List<PropertyEditor> editors = new ArrayList<>();
+    for (PropertyEditor editor : EDITOR_MAP.getEditorsOf(bpe)) {
+      Set<?> values = editor.getValueFromBean(bpe);
+      if (!values.isEmpty() && !(values.size() == 1 && editor.isUnknown(values.iterator().next()))) {
+        editors.add(editor);
+      }
+    }
+    return editors;
+  }
+
+  private static void writeValue(DataOutputStream out, PropertyEditor editor, Object value,
+                                 Map<BioPAXElement, Integer> ordinals, Dictionary dictionary) throws IOException
+  {
+    if (editor instanceof ObjectPropertyEditor) {
+      Integer ord = ordinals.get(value);
+      if (ord == null) { //a value not in the model (should not happen)
+        throw new IllegalStateException(editor.getProperty() + " value is not in the model: " + value);
+      }
+      out.writeInt(ord);
+    } else if (editor instanceof EnumeratedPropertyEditor) {
+      out.writeInt(dictionary.id(((Enum<?>) value).name()));
+    } else if (value instanceof String) {
+      out.writeInt(dictionary.id((String) value));
+    } else if (value instanceof Float) {
+      out.writeFloat((Float) value);
+    } else if (value instanceof Double) {
+      out.writeDouble((Double) value);
+    } else if (value instanceof Integer) {
+      out.writeInt((Integer) value);
+    } else if (value instanceof Boolean) {
+      out.writeBoolean((Boolean) value);
+    } else {
+      throw new IllegalStateException("Unsupported " + editor.getProperty() + " value type: " + value.getClass());
+    }
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Object readValue(DataInputStream in, PropertyEditor editor, BioPAXElement[] objects,
+                                  String[] strings) throws IOException
+  {
+    if (editor instanceof ObjectPropertyEditor) {
+      return objects[in.readInt()];
+    }
+    final Class<?> range = editor.getRange();
+    if (editor instanceof EnumeratedPropertyEditor) {
+      return Enum.valueOf((Class<? extends Enum>) range, strings[in.readInt()]);
+    } else if (range == String.class) {
+      return strings[in.readInt()];
+    } else if (range == Float.class || range == float.class) {
+      return in.readFloat();
+    } else if (range == Double.class || range == double.class) {
+      return in.readDouble();
+    } else if (range == Integer.class || range == int.class) {
+      return in.readInt();
+    } else if (range == Boolean.class || range == boolean.class) {
+      return in.readBoolean();
+    }
+    throw new IllegalStateException("Unsupported " + editor.getProperty() + " value type: " + range);
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int len = in.readInt();
+    if (len < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[len];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  //each distinct string is stored once and referred to by its id
+  private static final class Dictionary {
+    final Map<String, Integer> ids = new HashMap<>();
+    final List<String> strings = new ArrayList<>();
+
+    int id(String s) {
+      Integer id = ids.get(s);
+      if (id == null) {
+        id = strings.size();
+        strings.add(s);
+        ids.put(s, id);
+      }
+      return id;
+    }
+  }
+}
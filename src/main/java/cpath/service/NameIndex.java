@@ -0,0 +1,110 @@
+package cpath.service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.biopax.paxtools.model.level3.Named;
+
+/**
+ * Case-insensitive name to identifiers index of BioPAX objects (e.g., warehouse small molecule references
+ * to ChEBI IDs), built once, to map other objects by exact name, instead of scanning all the objects
+ * and their names for each lookup. Names match as if by {@link String#equalsIgnoreCase(String)}.
+ *
+ * The index is thread-safe (read-only) and counts the lookups, hits, and ambiguous hits (several IDs).
+ *
+ * @author rodche
+ */
+final class NameIndex {
+
+  private final Map<String, String[]> ids;
+  private final AtomicLong lookups = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong ambiguous = new AtomicLong();
+
+  /**
+   * Indexes all the names of the objects.
+   *
+   * @param objects BioPAX objects
+   * @param idOf gets the identifier to index the object's names with (null - skip the object)
+   */
+  NameIndex(Collection<? extends Named> objects, Function<Named, String> idOf) {
+    final Map<String, Set<String>> index = new HashMap<>();
+    for (Named obj : objects) {
+      final String id = idOf.apply(obj);
+      if (id == null) {
+        continue;
+      }
+      for (String name : obj.getName()) {
+        if (name != null) {
+          index.computeIfAbsent(key(name), k -> new TreeSet<>()).add(id);
+        }
+      }
+    }
+    //most names are of one object; arrays take much less memory than sets
+    this.ids = new HashMap<>(index.size() * 4 / 3 + 1);
+    index.forEach((name, set) -> this.ids.put(name, set.toArray(new String[0])));
+  }
+
+  /**
+   * Finds the identifiers of the objects that have any of the names (case-insensitive).
+   *
+   * @param names names to look up
+   * @return identifiers (empty set when not found)
+   */
+  Set<String> find(Collection<String> names) {
+    final Set<String> found = new TreeSet<>();
+    for (String name : names) {
+      if (name != null) {
+        final String[] a = ids.get(key(name));
+        if (a != null) {
+          Collections.addAll(found, a);
+        }
+      }
+    }
+    lookups.incrementAndGet();
+    if (!found.isEmpty()) {
+      hits.incrementAndGet();
+      if (found.size() > 1) {
+        ambiguous.incrementAndGet();
+      }
+    }
+    return found;
+  }
+
+  /**
+   * @return no. distinct names (keys)
+   */
+  int size() {
+    return ids.size();
+  }
+
+  long getLookups() {
+    return lookups.get();
+  }
+
+  long getHits() {
+    return hits.get();
+  }
+
+  long getAmbiguous() {
+    return ambiguous.get();
+  }
+
+  /*
+   * Case folding the same as in String.equalsIgnoreCase (upper, then lower case of each char).
+   */
+  static String key(String name) {
+    final char[] chars = name.toCharArray();
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+    }
+    return new String(chars);
+  }
+
+  @Override
+  public String toString() {
+    return "names: " + size() + ", lookups: " + getLookups() + ", hits: " + getHits()
+      + " (ambiguous: " + getAmbiguous() + ")";
+  }
+}
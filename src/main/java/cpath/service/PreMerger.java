@@ -24,12 +24,18 @@ import org.biopax.validator.api.beans.*;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.util.ClassUtils;
 
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -43,6 +49,11 @@ final class PreMerger {
 
   private static Logger log = LoggerFactory.getLogger(PreMerger.class);
 
+  /**
+   * The logging MDC key of the data source identifier (set for the premerge tasks).
+   */
+  static final String MDC_KEY = "datasource";
+
   private final String xmlBase;
   private final Validator validator;
 
@@ -61,15 +72,53 @@ final class PreMerger {
 
   /**
    * Pre-process (import, clean, normalize) all data from all configured data sources.
+   *
+   * Data sources, and the files within each, are processed in parallel (see {@link Settings#buildThreads()});
+   * a file task starts only when there is enough heap memory for its model in the budget
+   * (see {@link Settings#buildHeapBytes()}). A failure skips the file or data source only.
+   * Log records of each task have the data source identifier in the "datasource" MDC key
+   * (logs/{datasource}.log by default when building, see logback-spring.xml).
    */
   void premerge() {
-    // if this has been run before, there are some intermediate files left
-    // in the corresponding output folder (can continue without processing the data from scratch)
-    // (one can also manually clean up a particular /data subdirectory to start over)
-    for (Datasource datasource : service.metadata().getDatasources())
-    {
-      final String mid = datasource.getIdentifier();
+    final List<Datasource> datasources = service.metadata().getDatasources();
+    final int threads = service.settings().buildThreads();
+    final HeapBudget budget = new HeapBudget(service.settings().buildHeapBytes());
+    log.info("premerge(), processing " + datasources.size() + " data sources; threads: " + threads
+      + ", heap budget: " + budget.total() + "Mb");
+    final ExecutorService datasourcePool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, datasources.size())));
+    final ExecutorService filePool = Executors.newFixedThreadPool(threads);
+    try {
+      final Map<String, Future<?>> futures = new LinkedHashMap<>();
+      for (Datasource datasource : datasources) {
+        futures.put(datasource.getIdentifier(), datasourcePool.submit(() -> premerge(datasource, filePool, budget)));
+      }
+      for (Map.Entry<String, Future<?>> e : futures.entrySet()) {
+        try {
+          e.getValue().get();
+        } catch (ExecutionException ex) {
+          log.error("premerge(), failed for datasource: " + e.getKey(), ex.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("premerge(), interrupted", e);
+    } finally {
+      datasourcePool.shutdownNow();
+      filePool.shutdownNow();
+    }
+    log.info("premerge(), done.");
+  }
 
+  /*
+   * Pre-process the data source (unzip the data and run the pipeline for each file in parallel).
+   */
+  private void premerge(Datasource datasource, ExecutorService filePool, HeapBudget budget) {
+    final String mid = datasource.getIdentifier();
+    MDC.put(MDC_KEY, mid);
+    try {
+      // if this has been run before, there are some intermediate files left
+      // in the corresponding output folder (can continue without processing the data from scratch)
+      // (one can also manually clean up a particular /data subdirectory to start over)
       if(!Files.isDirectory(Paths.get(service.intermediateDataDir(datasource)))) {
         service.clear(datasource); //actually - create, init...
       } else {
@@ -83,45 +132,81 @@ final class PreMerger {
 
       if (datasource.getType() == METADATA_TYPE.MAPPING) {
         log.info("premerge(), done for the mapping type data: " + mid);
-        continue;
+        return;
       }
 
-      try {
-        // Try to instantiate the Cleaner now, and exit if it fails!
-        Cleaner cleaner = null;
-        String cl = datasource.getCleanerClass();
-        if (cl != null && cl.length() > 0) {
-          cleaner = CPathUtils.newCleaner(cl);
-          if (cleaner == null) {
-            log.error("premerge(), failed to create the Cleaner: " + cl
-              + "; skipping for this data source...");
-            return; // skip this data entirely due to the error
-          }
-        } else {
-          log.info("premerge(), Cleaner class is not defined for " + mid);
+      // Try to instantiate the Cleaner and Converter now, and skip the data source if it fails!
+      // (each file task then gets its own instances, for these are not necessarily thread-safe)
+      final String cleanerClass = datasource.getCleanerClass();
+      if (StringUtils.isNotBlank(cleanerClass)) {
+        if (CPathUtils.newCleaner(cleanerClass) == null) {
+          log.error("premerge(), failed to create the Cleaner: " + cleanerClass
+            + "; skipping for this data source...");
+          return; // skip this data entirely due to the error
         }
-
-        Converter converter = null;
-        cl = datasource.getConverterClass();
-        if (cl != null && cl.length() > 0) {
-          converter = CPathUtils.newConverter(cl);
-          if (converter == null) {
-            log.error("premerge(), failed to create the Converter: " + cl
-              + "; skipping for this data source...");
-            return; // skip due to the error
-          }
-          converter.setXmlBase(datasource.getIdentifier()+":");
-        } else {
-          log.info("premerge(), Converter class is not defined for " + mid);
+      } else {
+        log.info("premerge(), Cleaner class is not defined for " + mid);
+      }
+      final String converterClass = datasource.getConverterClass();
+      if (StringUtils.isNotBlank(converterClass)) {
+        if (CPathUtils.newConverter(converterClass) == null) {
+          log.error("premerge(), failed to create the Converter: " + converterClass
+            + "; skipping for this data source...");
+          return; // skip due to the error
         }
+      } else {
+        log.info("premerge(), Converter class is not defined for " + mid);
+      }
 
-        // Premerge for each pathway data: clean, convert, validate.
-        for (String datafile : new HashSet<>(datasource.getFiles())) {
-          pipeline(datasource, datafile, cleaner, converter);
+      // Premerge for each pathway data: clean, convert, validate.
+      final Map<String, Future<?>> futures = new LinkedHashMap<>();
+      for (String datafile : new TreeSet<>(datasource.getFiles())) {
+        futures.put(datafile, filePool.submit(() -> {
+          MDC.put(MDC_KEY, mid);
+          int permits = 0;
+          try {
+            permits = budget.acquire(heapEstimate(datafile));
+            Cleaner cleaner = StringUtils.isNotBlank(cleanerClass) ? CPathUtils.newCleaner(cleanerClass) : null;
+            Converter converter = null;
+            if (StringUtils.isNotBlank(converterClass)) {
+              converter = CPathUtils.newConverter(converterClass);
+              converter.setXmlBase(mid + ":");
+            }
+            pipeline(datasource, datafile, cleaner, converter);
+            return null;
+          } finally {
+            budget.release(permits);
+            MDC.remove(MDC_KEY);
+          }
+        }));
+      }
+      int failed = 0;
+      for (Map.Entry<String, Future<?>> e : futures.entrySet()) {
+        try {
+          e.getValue().get();
+        } catch (ExecutionException ex) {
+          failed++;
+          log.error("premerge(), failed: " + e.getKey(), ex.getCause());
         }
-      } catch (Exception e) {
-        log.error("premerge(), failed for datasource: " + mid, e);
       }
+      log.info("premerge(), done for " + mid + "; files: " + futures.size() + ", failed: " + failed);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.error("premerge(), interrupted: " + mid);
+    } finally {
+      MDC.remove(MDC_KEY);
+    }
+  }
+
+  /*
+   * Roughly, how much heap memory the pipeline needs for the data file
+   * (the model is loaded from the cleaned/converted gzip file, which is usually of the same size as the original).
+   */
+  private static long heapEstimate(String datafile) {
+    try {
+      return Files.size(Paths.get(datafile)) * HeapBudget.BYTES_PER_GZIP_BYTE;
+    } catch (IOException e) {
+      return 0L;
     }
   }
 
@@ -159,6 +244,12 @@ final class PreMerger {
 
     //clear all id-mapping tables
     log.warn("buildWarehouse(), removing all previous id-mapping db entries...");
+    final Path mappingsFile = Paths.get(service.settings().mappingsFile());
+    try {
+      Files.deleteIfExists(mappingsFile); //made from the previous index; a new one is saved below
+    } catch (IOException e) {
+      throw new RuntimeException("Cannot delete the old id-mapping store " + mappingsFile, e);
+    }
     service.initIndex(null, service.settings().indexDir(), false); //allow writing
 
     // Using the just built Warehouse BioPAX model, generate the id-mapping tables:
@@ -198,6 +289,17 @@ final class PreMerger {
         new GZIPOutputStream(new FileOutputStream(whFile)));
     } catch (IOException e) {
       log.error("buildWarehouse(), failed", e);
+      return;
+    }
+
+    //copy all the id-mapping from the index to the memory-mapped store (tied to the warehouse archive),
+    //used for lookups instead of the index, if present (e.g. by the merger)
+    try {
+      MappingStore.Builder builder = new MappingStore.Builder();
+      service.mapping().forEachMapping(builder::add);
+      builder.write(mappingsFile, Paths.get(whFile));
+    } catch (IOException e) {
+      log.error("buildWarehouse(), failed to save the id-mapping store; the index will be used instead", e);
     }
 
     //Don't persist (do later after Merger)
@@ -341,6 +443,7 @@ final class PreMerger {
 
   /*
    * Given Content undergoes clean/convert/validate/normalize data pipeline.
+   * A stage re-runs only if its output file's manifest does not match (input, tool, settings changed).
    *
    * @param datasource about the data provider
    * @param content provider's pathway data (file) to be processed and modified
@@ -358,65 +461,162 @@ final class PreMerger {
     }
 
     log.info("pipeline(), process " + originalDataPath);
-    File inputFile = originalDataPath.toFile(); // will be a different file at different steps
-    final File cleaned = Paths.get(CPathUtils.cleanedFile(inputDataFile)).toFile();
-    final File converted = Paths.get(CPathUtils.convertedFile(inputDataFile)).toFile();
-    final File normalized = Paths.get(CPathUtils.normalizedFile(inputDataFile)).toFile();
-
-    //an important shortcut
-    if(normalized.exists()) {
-      log.info("pipeline(), already normalized, done.");
-      return;
-    }
-
-    // "clean" the data if needed
-    if(cleaned.exists() || converted.exists()) {
-      log.info("pipeline(), already cleaned");
-      inputFile = cleaned;
-    } else {
-      //Clean the original data (apply data-specific "quick fixes" as needed)
-      if (cleaner != null) {
+    Path inputFile = originalDataPath; // will be a different file at different steps
+    final Path cleaned = Paths.get(CPathUtils.cleanedFile(inputDataFile));
+    final Path converted = Paths.get(CPathUtils.convertedFile(inputDataFile));
+    final Path normalized = Paths.get(CPathUtils.normalizedFile(inputDataFile));
+
+    //Clean the original data (apply data-specific "quick fixes") if needed
+    if (cleaner != null) {
+      StageManifest manifest = cleanManifest(inputFile, cleaner.getClass());
+      String mismatch = manifest.mismatch(cleaned);
+      if (mismatch == null) {
+        log.info("pipeline(), already cleaned");
+      } else {
         String cleanerClassName = cleaner.getClass().getSimpleName();
-        try {
-          InputStream is = new GZIPInputStream(new FileInputStream(inputFile));
-          OutputStream os = new GZIPOutputStream(new FileOutputStream(cleaned));
+        log.info("pipeline(), cleaning with " + cleanerClassName + " (" + mismatch + ")");
+        StageManifest.invalidate(cleaned);
+        try (InputStream is = new GZIPInputStream(Files.newInputStream(inputFile));
+             OutputStream os = new GZIPOutputStream(Files.newOutputStream(cleaned))) {
           cleaner.clean(is, os);
-          IOUtils.closeQuietly(is);
-          IOUtils.closeQuietly(os);
         } catch (Exception e) {
           log.warn("pipeline(), failed to run " + cleanerClassName + "; " + e);
+          StageManifest.invalidate(cleaned);
           return;
         }
-        inputFile = cleaned;
+        manifest.save(cleaned);
       }
+      inputFile = cleaned;
     }
 
-    // convert to BioPAX Level3 if needed
-    if(converted.exists()) {
-      log.info("pipeline(), already converted");
-      inputFile = converted;
-    } else {
-      //Convert data to BioPAX L3 if needed (generate the 'converted' output file in any case)
-      if (converter != null) {
+    //Convert data to BioPAX L3 if needed
+    if (converter != null) {
+      StageManifest manifest = convertManifest(inputFile, converter.getClass(), datasource);
+      String mismatch = manifest.mismatch(converted);
+      if (mismatch == null) {
+        log.info("pipeline(), already converted");
+      } else {
         String converterClassName = converter.getClass().getSimpleName();
-        try {
-          InputStream is = new GZIPInputStream(new FileInputStream(inputFile));
-          OutputStream os = new GZIPOutputStream(new FileOutputStream(converted));
+        log.info("pipeline(), converting with " + converterClassName + " (" + mismatch + ")");
+        StageManifest.invalidate(converted);
+        try (InputStream is = new GZIPInputStream(Files.newInputStream(inputFile));
+             OutputStream os = new GZIPOutputStream(Files.newOutputStream(converted))) {
           converter.convert(is, os);
-          IOUtils.closeQuietly(is);
-          IOUtils.closeQuietly(os);
         } catch (Exception e) {
           log.warn("pipeline(), failed to run " + converterClassName + "; " + e);
+          StageManifest.invalidate(converted);
           return;
         }
-        inputFile = converted;
+        manifest.save(converted);
       }
+      inputFile = converted;
     }
 
     // Validate & normalize the BioPAX model:
     // synonyms in xref.db property values may be replaced
     // with the primary db names (based on Miriam db); some URIs get normalized
-    checkAndNormalize(datasource, inputFile);
+    StageManifest manifest = normalizeManifest(inputFile, datasource);
+    String mismatch = manifest.mismatch(normalized);
+    if (mismatch == null) {
+      log.info("pipeline(), already normalized, done.");
+      return;
+    }
+    log.info("pipeline(), normalizing (" + mismatch + ")");
+    StageManifest.invalidate(normalized);
+    if (checkAndNormalize(datasource, inputFile.toFile())) {
+      manifest.save(normalized);
+    }
+  }
+
+  /**
+   * Finds the data sources that {@link #premerge()} will (re-)process, i.e., where the data archive
+   * or at least one stage input, tool or setting has changed since the intermediate files were made.
+   * This does not modify any files (but reads the existing ones to compute the hashes).
+   *
+   * @return data source identifiers mapped to the first reason found to (re-)process it
+   */
+  Map<String, String> outdated() {
+    final Map<String, String> outdated = new LinkedHashMap<>();
+    for (Datasource datasource : service.metadata().getDatasources()) {
+      final String mid = datasource.getIdentifier();
+      try {
+        if (!Files.isDirectory(Paths.get(service.intermediateDataDir(datasource)))) {
+          outdated.put(mid, "new");
+          continue;
+        }
+        final Map<String, Boolean> datafiles = service.checkData(datasource);
+        for (Map.Entry<String, Boolean> e : datafiles.entrySet()) {
+          final String name = Paths.get(e.getKey()).getFileName().toString();
+          if (!e.getValue()) {
+            outdated.put(mid, name + ": archive entry added or changed");
+            break;
+          }
+          if (datasource.getType() == METADATA_TYPE.MAPPING) {
+            continue; //not in the pipeline
+          }
+          final String reason = outdated(datasource, e.getKey());
+          if (reason != null) {
+            outdated.put(mid, name + ": " + reason);
+            break;
+          }
+        }
+      } catch (Exception e) {
+        outdated.put(mid, "cannot check: " + e);
+      }
+    }
+    return outdated;
+  }
+
+  /*
+   * Checks the pipeline stage outputs for the data file, the same way as in pipeline(),
+   * and returns the first mismatch or null (up-to-date).
+   */
+  private String outdated(Datasource datasource, String inputDataFile) throws IOException, ClassNotFoundException {
+    Path inputFile = Paths.get(inputDataFile);
+    if (StringUtils.isNotBlank(datasource.getCleanerClass())) {
+      final Path cleaned = Paths.get(CPathUtils.cleanedFile(inputDataFile));
+      final String mismatch = cleanManifest(inputFile, Class.forName(datasource.getCleanerClass())).mismatch(cleaned);
+      if (mismatch != null) {
+        return "clean, " + mismatch;
+      }
+      inputFile = cleaned;
+    }
+    if (StringUtils.isNotBlank(datasource.getConverterClass())) {
+      final Path converted = Paths.get(CPathUtils.convertedFile(inputDataFile));
+      final String mismatch = convertManifest(inputFile, Class.forName(datasource.getConverterClass()), datasource)
+        .mismatch(converted);
+      if (mismatch != null) {
+        return "convert, " + mismatch;
+      }
+      inputFile = converted;
+    }
+    final String mismatch = normalizeManifest(inputFile, datasource)
+      .mismatch(Paths.get(CPathUtils.normalizedFile(inputDataFile)));
+    return (mismatch != null) ? "normalize, " + mismatch : null;
+  }
+
+  private StageManifest cleanManifest(Path input, Class<?> cleaner) throws IOException {
+    return new StageManifest().input(input).tool("cleaner", cleaner);
+  }
+
+  private StageManifest convertManifest(Path input, Class<?> converter, Datasource datasource) throws IOException {
+    return new StageManifest().input(input).tool("converter", converter)
+      .setting("xmlBase", datasource.getIdentifier() + ":");
+  }
+
+  private StageManifest normalizeManifest(Path input, Datasource datasource) throws IOException {
+    //validation is not done for the warehouse data
+    final Class<?> validatorClass = (validator != null && !datasource.getType().isNotPathwayData())
+      ? ClassUtils.getUserClass(validator) : null;
+    //the provenance (see Datasource.setProvenanceFor) depends on these metadata
+    return new StageManifest().input(input)
+      .tool("validator", validatorClass)
+      .tool("normalizer", Normalizer.class)
+      .setting("xmlBase", xmlBase)
+      .setting("type", datasource.getType())
+      .setting("name", datasource.getName())
+      .setting("description", datasource.getDescription())
+      .setting("dataUrl", datasource.getDataUrl());
   }
 
 
@@ -425,8 +625,9 @@ final class PreMerger {
    *
    * @param datasource data provider's datasource
    * @param file one of data files from the provider
+   * @return true when the normalized file is saved
    */
-  private void checkAndNormalize(Datasource datasource, File file) throws IOException
+  private boolean checkAndNormalize(Datasource datasource, File file) throws IOException
   {
     final String filename = file.getPath();
     InputStream biopaxStream = new GZIPInputStream(new FileInputStream(file));
@@ -436,7 +637,7 @@ final class PreMerger {
     if(datasource.getType().isNotPathwayData()) { //when "warehouse" or "mapping" data type
       if(datasource.getType() == METADATA_TYPE.MAPPING) { //this should never happen, but let's handle and skip -
         log.info("checkAndNormalize, skipped MAPPING data " + filename);
-        return; //skip as checkAndNormalize is not applicable to this datatype
+        return false; //skip as checkAndNormalize is not applicable to this datatype
       }
       //just load the model and skip validation
       log.info("checkAndNormalize, loading (no validation) {} {}", datasource.getType(), filename);
@@ -448,13 +649,18 @@ final class PreMerger {
         // create a new empty validation (options: auto-fix=true, report all) and associate with the model
         Validation validation = new Validation(new BiopaxIdentifier(), filename, true, Behavior.WARNING,
           0, null);
+        // the file tasks (bounded by the file pool and heap budget) validate their models concurrently:
+        // the validator associates the model objects with their own validation (the rules/aspects report to it);
         // errors are also reported during the data are being read (e.g., syntax errors)
         validator.importModel(validation, biopaxStream);
         IOUtils.closeQuietly(biopaxStream);
 
         validator.validate(validation); //check all semantic rules
-        // unregister the validation object
-        validator.getResults().remove(validation);
+        // unregister the validation object from the registry shared by all the tasks
+        final Collection<Validation> results = validator.getResults();
+        synchronized (results) {
+          results.remove(validation);
+        }
 
         // get the updated model
         model = (Model) validation.getModel();
@@ -470,7 +676,7 @@ final class PreMerger {
             validation.getComment().toString(), validation);
       } catch (Exception e) {
         log.error("checkAndNormalize(), failed " + filename + "; " + e);
-        return;
+        return false;
       }
     }
 
@@ -491,5 +697,6 @@ final class PreMerger {
     } catch (Exception e) {
       throw new RuntimeException("checkAndNormalize(), failed " + filename, e);
     }
+    return true;
   }
 }
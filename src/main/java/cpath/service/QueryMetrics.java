@@ -0,0 +1,162 @@
+package cpath.service;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import cpath.service.api.OutputFormat;
+
+/**
+ * Micrometer timers and distribution summaries of the query pipeline stages
+ * (seeds resolution, graph query, sub-model completion/cloning, conversion, writing the response),
+ * tagged by the query kind (e.g. 'neighborhood', 'get') and output format.
+ *
+ * When the actuator is enabled, these are available as e.g. /actuator/metrics/cpath2.query.stage
+ * (if the 'metrics' endpoint is exposed); otherwise - the global (composite) registry is used.
+ *
+ * @author rodche
+ */
+public final class QueryMetrics {
+
+  public static final String STAGE_TIMER = "cpath2.query.stage";
+  public static final String ELEMENTS_SUMMARY = "cpath2.query.elements";
+  public static final String BYTES_SUMMARY = "cpath2.query.bytes";
+  public static final String RESULTS_COUNTER = "cpath2.query.results";
+  public static final String CACHE_REQUESTS = "cpath2.graph.cache.requests";
+  public static final String CACHE_EVICTIONS = "cpath2.graph.cache.evictions";
+  public static final String CACHE_ENTRIES = "cpath2.graph.cache.entries";
+  public static final String CACHE_BYTES = "cpath2.graph.cache.bytes";
+
+  //pipeline stages (timer 'stage' tag values and per-request stats keys prefixes)
+  public static final String SEEDS = "seeds";
+  public static final String QUERY = "query";
+  public static final String CLONE = "clone";
+  public static final String CONVERT = "convert";
+  public static final String WRITE = "write";
+
+  //per-request stats keys (see DataResponse.stats)
+  public static final String ELEMENTS = "elements";
+  public static final String BYTES = "bytes";
+  public static final String SPILLED = "spilled";
+
+  private final MeterRegistry registry;
+
+  public QueryMetrics(MeterRegistry registry) {
+    this.registry = (registry != null) ? registry : Metrics.globalRegistry;
+  }
+
+  /**
+   * Runs and times the query stage.
+   *
+   * @param kind query kind
+   * @param stage pipeline stage
+   * @param format output format (can be null)
+   * @param stats optional per-request stats to add the stage time (ms) to
+   * @param step the stage to execute
+   * @return the stage result
+   */
+  public <T> T time(String kind, String stage, OutputFormat format, Map<String, Long> stats, Supplier<T> step) {
+    final long start = System.nanoTime();
+    try {
+      return step.get();
+    } finally {
+      record(kind, stage, format, stats, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Records the time of a query stage that was measured by the caller.
+   */
+  public void record(String kind, String stage, OutputFormat format, Map<String, Long> stats, long nanos) {
+    Timer.builder(STAGE_TIMER)
+      .description("query pipeline stage latency")
+      .tag("kind", String.valueOf(kind))
+      .tag("stage", stage)
+      .tag("format", String.valueOf(format))
+      .publishPercentileHistogram()
+      .register(registry)
+      .record(nanos, TimeUnit.NANOSECONDS);
+    if(stats != null) {
+      stats.put(stage + "_ms", TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+  }
+
+  /**
+   * Records the result size (no. BioPAX elements, or output bytes).
+   *
+   * @param kind query kind
+   * @param what either {@link #ELEMENTS} or {@link #BYTES}
+   * @param format output format (can be null)
+   * @param stats optional per-request stats to add the value to
+   * @param amount the value
+   */
+  public void size(String kind, String what, OutputFormat format, Map<String, Long> stats, long amount) {
+    DistributionSummary.builder(BYTES.equals(what) ? BYTES_SUMMARY : ELEMENTS_SUMMARY)
+      .description(BYTES.equals(what) ? "query result size (bytes)" : "query result size (BioPAX elements)")
+      .baseUnit(BYTES.equals(what) ? "bytes" : "elements")
+      .tag("kind", String.valueOf(kind))
+      .tag("format", String.valueOf(format))
+      .publishPercentileHistogram()
+      .register(registry)
+      .record(amount);
+    if(stats != null) {
+      stats.put(what, amount);
+    }
+  }
+
+  /**
+   * Counts the converted results by where they were kept - in memory or in a temporary file
+   * (see {@link ResultBuffer}).
+   *
+   * @param kind query kind
+   * @param format output format (can be null)
+   * @param stats optional per-request stats to add the {@link #SPILLED} flag (0 or 1) to
+   * @param inMemory whether the result was not spilled to disk
+   */
+  public void buffered(String kind, OutputFormat format, Map<String, Long> stats, boolean inMemory) {
+    Counter.builder(RESULTS_COUNTER)
+      .description("converted query results kept in memory vs. spilled to disk")
+      .tag("kind", String.valueOf(kind))
+      .tag("format", String.valueOf(format))
+      .tag("storage", inMemory ? "memory" : "disk")
+      .register(registry)
+      .increment();
+    if(stats != null) {
+      stats.put(SPILLED, inMemory ? 0L : 1L);
+    }
+  }
+
+  /**
+   * Registers the graph query cache counters (hits, misses, evictions) and its current size.
+   *
+   * @param cache the graph query cache
+   */
+  public void bind(GraphQueryCache cache) {
+    FunctionCounter.builder(CACHE_REQUESTS, cache, GraphQueryCache::getHits)
+      .description("graph query cache lookups")
+      .tag("result", "hit")
+      .register(registry);
+    FunctionCounter.builder(CACHE_REQUESTS, cache, GraphQueryCache::getMisses)
+      .description("graph query cache lookups")
+      .tag("result", "miss")
+      .register(registry);
+    FunctionCounter.builder(CACHE_EVICTIONS, cache, GraphQueryCache::getEvictions)
+      .description("graph query cache evictions (over the size limit or idle)")
+      .register(registry);
+    Gauge.builder(CACHE_ENTRIES, cache, GraphQueryCache::getSize)
+      .description("graph query cache entries")
+      .register(registry);
+    Gauge.builder(CACHE_BYTES, cache, GraphQueryCache::getSizeBytes)
+      .description("graph query cache size")
+      .baseUnit("bytes")
+      .register(registry);
+  }
+}
@@ -0,0 +1,184 @@
+package cpath.service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A converted query result (e.g. BioPAX, SIF, GSEA data) holder -
+ * the output stream that keeps the data in memory up to the threshold size
+ * and spills it to a temporary file only when it grows larger than that.
+ *
+ * Write the data, close the stream, then read it back (once or more times)
+ * and finally {@link #release()} the buffer (deletes the temporary file, if any).
+ *
+ * @author rodche
+ */
+public final class ResultBuffer extends OutputStream {
+  private static final Logger log = LoggerFactory.getLogger(ResultBuffer.class);
+
+  public static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+  private static final int INITIAL_CAPACITY = 8 * 1024;
+  private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
+  private final int threshold;
+  private final String suffix;
+  private byte[] buf;
+  private long count;
+  private Path file; //null - in memory
+  private OutputStream fileOut;
+  private boolean closed;
+
+  /**
+   * Constructor.
+   *
+   * @param threshold max. size of the in-memory data (bytes); larger results are written to a temporary file
+   * @param suffix temporary file name suffix (e.g., format extension)
+   */
+  public ResultBuffer(int threshold, String suffix) {
+    this.threshold = Math.max(0, threshold);
+    this.suffix = suffix;
+    this.buf = new byte[Math.min(this.threshold, INITIAL_CAPACITY)];
+  }
+
+  /**
+   * Wraps the existing data (not copied) into a new closed in-memory buffer.
+   *
+   * @param data bytes
+   * @return new result buffer
+   */
+  static ResultBuffer of(byte[] data) {
+    ResultBuffer b = new ResultBuffer(data.length, null);
+    b.buf = data;
+    b.count = data.length;
+    b.closed = true;
+    return b;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[]{(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if(closed) {
+      throw new IOException("Result buffer is closed");
+    }
+    if(file == null && count + len > threshold) {
+      spill();
+    }
+    if(file == null) {
+      int size = (int) count;
+      if(size + len > buf.length) {
+        buf = Arrays.copyOf(buf, (int) Math.min(threshold, Math.max(2L * buf.length, size + len)));
+      }
+      System.arraycopy(b, off, buf, size, len);
+    } else {
+      fileOut.write(b, off, len);
+    }
+    count += len;
+  }
+
+  private void spill() throws IOException {
+    file = Files.createTempFile("cpath2", suffix);
+    fileOut = new BufferedOutputStream(Files.newOutputStream(file), FILE_BUFFER_SIZE);
+    fileOut.write(buf, 0, (int) count);
+    buf = null;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if(fileOut != null) {
+      fileOut.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if(!closed) {
+      closed = true;
+      if(fileOut != null) {
+        fileOut.close();
+      }
+    }
+  }
+
+  /**
+   * @return total number of bytes written
+   */
+  public long size() {
+    return count;
+  }
+
+  /**
+   * @return true when the data were not spilled to a file
+   */
+  public boolean isInMemory() {
+    return file == null;
+  }
+
+  /**
+   * Reads the data.
+   *
+   * @return new input stream
+   * @throws IOException when cannot read the temporary file
+   */
+  public InputStream getInputStream() throws IOException {
+    return (file == null) ? new ByteArrayInputStream(buf, 0, (int) count) : Files.newInputStream(file);
+  }
+
+  /**
+   * Copies the data to the output stream (does not close it).
+   *
+   * @param os output stream
+   * @throws IOException when there is an i/o error
+   */
+  public void writeTo(OutputStream os) throws IOException {
+    if(file == null) {
+      os.write(buf, 0, (int) count);
+    } else {
+      Files.copy(file, os);
+    }
+  }
+
+  /**
+   * @return a copy of the data
+   * @throws IOException when cannot read the temporary file
+   */
+  public byte[] toByteArray() throws IOException {
+    return (file == null) ? Arrays.copyOf(buf, (int) count) : Files.readAllBytes(file);
+  }
+
+  /**
+   * Frees the memory or deletes the temporary file.
+   */
+  public void release() {
+    closed = true;
+    buf = null;
+    if(file != null) {
+      try {
+        if(fileOut != null) {
+          fileOut.close();
+        }
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        log.error("release, failed to delete " + file + "; " + e);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ResultBuffer(" + count + " bytes" + ((file == null) ? ", in memory)" : ", " + file + ")");
+  }
+}
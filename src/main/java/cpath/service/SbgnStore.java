@@ -0,0 +1,331 @@
+package cpath.service;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.Interaction;
+import org.biopax.paxtools.model.level3.Pathway;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cpath.service.api.OutputFormat;
+import cpath.service.jaxb.DataResponse;
+import cpath.service.jaxb.ServiceResponse;
+
+/**
+ * The pre-converted (at build time) SBGN-ML of each non-trivial pathway of the main model,
+ * so that the most expensive single pathway SBGN (with layout) requests are served from the disk
+ * (the stored bytes are copied to the response as is) rather than converted again.
+ *
+ * File format: header (magic, version, the main model archive size and last modified time,
+ * whether the layout was applied), the SBGN-ML documents, the index
+ * (pathway URI, offset, length, data providers), and the index offset (last 8 bytes).
+ *
+ * A store is valid only for the main model archive it was made from (checked when opening).
+ *
+ * @author rodche
+ */
+public final class SbgnStore implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(SbgnStore.class);
+
+  private static final int MAGIC = 0x43505347; //"CPSG"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 1;
+
+  private final FileChannel channel;
+  private final boolean layout;
+  private final Map<String, Entry> entries;
+
+  private static final class Entry {
+    final long offset;
+    final int length;
+    final Set<String> providers;
+
+    Entry(long offset, int length, Set<String> providers) {
+      this.offset = offset;
+      this.length = length;
+      this.providers = providers;
+    }
+  }
+
+  private SbgnStore(FileChannel channel, boolean layout, Map<String, Entry> entries) {
+    this.channel = channel;
+    this.layout = layout;
+    this.entries = entries;
+  }
+
+  /**
+   * Whether the pathway is worth converting - has interactions
+   * (as pathway components or step processes, excluding sub-pathways).
+   *
+   * @param pathway BioPAX pathway
+   * @return true if it's a non-trivial pathway
+   */
+  static boolean isNonTrivial(Pathway pathway) {
+    return pathway.getPathwayComponent().stream().anyMatch(Interaction.class::isInstance)
+      || pathway.getPathwayOrder().stream()
+      .anyMatch(step -> step.getStepProcess().stream().anyMatch(Interaction.class::isInstance));
+  }
+
+  /**
+   * Converts each non-trivial pathway of the main model to SBGN-ML in parallel
+   * and saves the results (to a temporary file first, then replaces the store file).
+   *
+   * @param model the main model
+   * @param fetch the SBGN 'get' query by pathway URI (result: data response with a result buffer or streaming output)
+   * @param layout whether the results have the layout applied (configured default)
+   * @param archive the main model archive
+   * @param store the output file
+   * @param threads no. parallel conversions
+   * @throws IOException when there is a file i/o error
+   */
+  public static void build(Model model, Function<String, ServiceResponse> fetch, boolean layout,
+                           Path archive, Path store, int threads) throws IOException {
+    final long start = System.currentTimeMillis();
+    final List<String> uris = model.getObjects(Pathway.class).stream()
+      .filter(SbgnStore::isNonTrivial).map(Pathway::getUri).sorted().toList();
+    log.info("build, converting " + uris.size() + " pathways to SBGN (layout: " + layout + "), threads: " + threads);
+
+    final Path tmp = Files.createTempFile(store.toAbsolutePath().getParent(), "sbgn", ".tmp");
+    final Map<String, Entry> entries = new TreeMap<>();
+    final AtomicInteger failed = new AtomicInteger();
+    final long[] position = {HEADER_SIZE}; //DataOutputStream.size() is an int (would overflow)
+    final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(Files.size(archive));
+      out.writeLong(Files.getLastModifiedTime(archive).toMillis());
+      out.writeBoolean(layout);
+
+      final List<Future<?>> futures = new ArrayList<>(uris.size());
+      for (String uri : uris) {
+        futures.add(pool.submit(() -> {
+          ServiceResponse res = fetch.apply(uri);
+          if (!(res instanceof DataResponse) || res.isEmpty()) {
+            log.warn("build, skip " + uri + ": " + res);
+            failed.incrementAndGet();
+            return;
+          }
+          DataResponse dr = (DataResponse) res;
+          byte[] data;
+          try {
+            data = bytes(dr.getData());
+          } catch (Exception e) {
+            log.warn("build, failed to convert " + uri + "; " + e);
+            failed.incrementAndGet();
+            return;
+          }
+          synchronized (out) {
+            try {
+              out.write(data);
+              entries.put(uri, new Entry(position[0], data.length, Set.copyOf(dr.getProviders())));
+              position[0] += data.length;
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          }
+        }));
+      }
+      for (Future<?> f : futures) {
+        try {
+          f.get();
+        } catch (Exception e) {
+          throw new IOException("build, failed to save the SBGN data", e);
+        }
+      }
+
+      final long indexOffset = position[0];
+      out.writeInt(entries.size());
+      for (Map.Entry<String, Entry> e : entries.entrySet()) {
+        out.writeUTF(e.getKey());
+        out.writeLong(e.getValue().offset);
+        out.writeInt(e.getValue().length);
+        out.writeInt(e.getValue().providers.size());
+        for (String p : e.getValue().providers) {
+          out.writeUTF(p);
+        }
+      }
+      out.writeLong(indexOffset);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(tmp);
+      throw e;
+    } finally {
+      pool.shutdownNow();
+    }
+    Files.move(tmp, store, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    log.info("build, saved " + entries.size() + " SBGN documents (" + failed.get() + " skipped/failed) to "
+      + store + " in " + (System.currentTimeMillis() - start) / 1000 + " s");
+  }
+
+  //the converted result bytes
+  private static byte[] bytes(Object data) throws IOException {
+    if (data instanceof ResultBuffer) {
+      ResultBuffer buffer = (ResultBuffer) data;
+      try {
+        return buffer.toByteArray();
+      } finally {
+        buffer.release();
+      }
+    } else if (data instanceof StreamingOutput) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      ((StreamingOutput) data).writeTo(bos);
+      return bos.toByteArray();
+    } else {
+      throw new IllegalArgumentException("unexpected data: " + data);
+    }
+  }
+
+  /**
+   * Checks whether the store file was made from the main model archive.
+   *
+   * @param store the store file
+   * @param archive the main model archive
+   * @return true if the store can be used
+   */
+  public static boolean isValid(Path store, Path archive) {
+    return isValid(store, archive, null);
+  }
+
+  /**
+   * Checks whether the store file was made from the main model archive
+   * with or without the layout.
+   *
+   * @param store the store file
+   * @param archive the main model archive
+   * @param layout whether the layout must have been applied (null - any)
+   * @return true if the store can be used
+   */
+  public static boolean isValid(Path store, Path archive, Boolean layout) {
+    if (!Files.isRegularFile(store) || !Files.isRegularFile(archive)) {
+      return false;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(store)))) {
+      return in.readInt() == MAGIC && in.readInt() == VERSION
+        && in.readLong() == Files.size(archive)
+        && in.readLong() == Files.getLastModifiedTime(archive).toMillis()
+        && (layout == null || in.readBoolean() == layout);
+    } catch (IOException e) {
+      log.warn("isValid, cannot read " + store + "; " + e);
+      return false;
+    }
+  }
+
+  /**
+   * Opens the store if it's valid for the main model archive.
+   *
+   * @param store the store file
+   * @param archive the main model archive
+   * @return the store or null
+   */
+  public static SbgnStore open(Path store, Path archive) {
+    if (!isValid(store, archive)) {
+      return null;
+    }
+    FileChannel channel = null;
+    try {
+      channel = FileChannel.open(store, StandardOpenOption.READ);
+      ByteBuffer trailer = ByteBuffer.allocate(8);
+      channel.read(trailer, channel.size() - 8);
+      final long indexOffset = trailer.flip().getLong();
+      final boolean layout;
+      final Map<String, Entry> entries = new HashMap<>();
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(store)))) {
+        in.skipNBytes(HEADER_SIZE - 1);
+        layout = in.readBoolean();
+        in.skipNBytes(indexOffset - HEADER_SIZE);
+        final int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+          String uri = in.readUTF();
+          long offset = in.readLong();
+          int length = in.readInt();
+          int np = in.readInt();
+          Set<String> providers = new TreeSet<>();
+          for (int j = 0; j < np; j++) {
+            providers.add(in.readUTF());
+          }
+          entries.put(uri, new Entry(offset, length, providers));
+        }
+      }
+      log.info("open, " + entries.size() + " SBGN documents (layout: " + layout + ") in " + store);
+      return new SbgnStore(channel, layout, entries);
+    } catch (IOException e) {
+      log.error("open, failed to read " + store + "; " + e);
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException ex) {
+          //ignore
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * @return whether the layout was applied to the stored SBGN
+   */
+  public boolean isLayout() {
+    return layout;
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Gets the SBGN-ML of the pathway.
+   *
+   * @param uri pathway URI
+   * @return data response with the streaming output (copies the bytes from the file), or null (not found)
+   */
+  public DataResponse get(String uri) {
+    final Entry e = entries.get(uri);
+    if (e == null) {
+      return null;
+    }
+    DataResponse r = new DataResponse();
+    r.setFormat(OutputFormat.SBGN);
+    r.setProviders(e.providers);
+    r.setData(new StreamingOutput() {
+      public void writeTo(OutputStream os) throws IOException {
+        final WritableByteChannel target = Channels.newChannel(os);
+        long position = e.offset;
+        long remaining = e.length;
+        while (remaining > 0) {
+          long n = channel.transferTo(position, remaining, target);
+          if (n <= 0) {
+            throw new EOFException("SBGN store is truncated");
+          }
+          position += n;
+          remaining -= n;
+        }
+      }
+
+      public long size() {
+        return e.length;
+      }
+    });
+    return r;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
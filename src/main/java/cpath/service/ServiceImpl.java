@@ -1,12 +1,17 @@
 package cpath.service;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
@@ -33,10 +38,12 @@ import org.biopax.validator.api.beans.Validation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.Resource;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
 import cpath.analysis.TraverseAnalysis;
 import cpath.service.api.*;
@@ -58,8 +65,6 @@ public class ServiceImpl implements Service {
   private static final Logger log = LoggerFactory.getLogger(ServiceImpl.class);
   private static final Class<? extends BioPAXElement>[] DEFAULT_SEED_TYPES = new Class[]{PhysicalEntity.class, Gene.class};
 
-  IndexImpl index;
-
   Metadata metadata;
 
   @Autowired
@@ -67,11 +72,24 @@ public class ServiceImpl implements Service {
 
   private SimpleIOHandler simpleIO;
 
-  //init on first access to getBlacklist(); so do not use it directly
-  private Blacklist blacklist;
+  //the main model, index, blacklist, etc. currently in use (replaced all at once; do not use directly - see gen())
+  private volatile Generation current = Generation.builder().build();
+
+  //the generation captured by the current thread (see pin())
+  private final ThreadLocal<Generation> pinned = new ThreadLocal<>();
+
+  //set while a new generation is being loaded in the background
+  private final AtomicBoolean reloading = new AtomicBoolean();
+
+  //rough estimate of the heap required to load the main model (and index readers) per byte of the model file
+  private static final int ARCHIVE_HEAP_FACTOR = 25; //gzipped BioPAX RDF/XML
+  private static final int SNAPSHOT_HEAP_FACTOR = 6; //binary snapshot
 
-  //on first access when proxy model mode is enabled (so do not use the var. directly!)
-  private Model paxtoolsModel;
+  //query pipeline stage timers (uses the actuator's registry when available)
+  private QueryMetrics metrics = new QueryMetrics(null);
+
+  //converted graph query results (created on first access; cleared when the model, index or blacklist changes)
+  private GraphQueryCache graphQueryCache;
 
   private final Pattern isoformIdPattern = Pattern.compile(Resolver.getNamespace("uniprot.isoform", true).getPattern());
   private final Pattern refseqIdPattern = Pattern.compile(Resolver.getNamespace("refseq", true).getPattern());
@@ -86,18 +104,196 @@ public class ServiceImpl implements Service {
    * Call this after the web service is up and running or from the console app.
    */
   synchronized public void init() {
-    if(paxtoolsModel == null) {
-      paxtoolsModel = loadMainModel();
-      if (paxtoolsModel != null) {
-        paxtoolsModel.setXmlBase(settings().getXmlBase());
+    Model model = current.model;
+    if(model == null) {
+      model = loadMainModel();
+      if (model != null) {
+        model.setXmlBase(settings().getXmlBase());
         log.info("Main BioPAX model (in-memory) is now ready for queries.");
       }
     }
-    initIndex(paxtoolsModel, settings.indexDir(), true); //read-only (search) index
-    index.setMaxHitsPerPage(settings.getMaxHitsPerPage());
-    if(blacklist == null) {
-      loadBlacklist();
+    Blacklist blacklist = (current.blacklist != null) ? current.blacklist : readBlacklist();
+    //close the previous index (if any) before opening the read-only (search) one
+    swap(Generation.builder().model(model).blacklist(blacklist).build()).retire();
+    swap(openGeneration(model, settings.indexDir(), blacklist));
+  }
+
+  /**
+   * Loads the main BioPAX model, blacklist and the read-only index in the background
+   * while the current ones keep serving; then makes them current all at once and retires
+   * the old generation, which is released as soon as the requests that use it are done.
+   *
+   * @param indexLocation the index directory to open (null/empty - the configured one)
+   * @return the new generation, once it's loaded and in use
+   * @throws IllegalStateException when the reload is already in progress or there's not enough heap
+   */
+  public CompletableFuture<Generation> reload(String indexLocation) {
+    if(!reloading.compareAndSet(false, true)) {
+      throw new IllegalStateException("reload is already in progress");
+    }
+    try {
+      checkHeapHeadroom();
+    } catch (RuntimeException e) {
+      reloading.set(false);
+      throw e;
     }
+    final String location = (StringUtils.hasText(indexLocation)) ? indexLocation : settings.indexDir();
+    return CompletableFuture.supplyAsync(() -> {
+        log.info("reload, loading the main model and index: " + location);
+        final long start = System.currentTimeMillis();
+        Model model = loadMainModel();
+        if(model == null) {
+          throw new IllegalStateException("failed to load the main model");
+        }
+        model.setXmlBase(settings().getXmlBase());
+        Generation next = openGeneration(model, location, readBlacklist());
+        Generation prev = swap(next);
+        prev.retire();
+        log.info("reload, generation " + next.id + " replaced " + prev.id + " (in-flight: "
+          + prev.getInFlight() + ") in " + (System.currentTimeMillis() - start) + " ms");
+        return next;
+      }, task -> {
+        Thread thread = new Thread(task, "cpath2-reload");
+        thread.setDaemon(true);
+        thread.start();
+      })
+      .whenComplete((g, e) -> {
+        reloading.set(false);
+        if(e != null) {
+          log.error("reload failed", e);
+        }
+      });
+  }
+
+  public boolean isReloading() {
+    return reloading.get();
+  }
+
+  public Generation generation() {
+    return gen();
+  }
+
+  /**
+   * Captures the current generation for the calling thread (e.g. for the duration of a web request),
+   * so that it's not released and all the queries in the thread use the same model and index.
+   * Nested calls return the already captured one.
+   *
+   * @return the lease to close (in the same thread) when done
+   */
+  public Generation.Lease pin() {
+    final Generation outer = pinned.get();
+    if(outer != null) {
+      return new Pin(outer, false);
+    }
+    Generation g = current;
+    while(!g.enter()) {
+      g = current; //just retired; get the new one
+    }
+    pinned.set(g);
+    return new Pin(g, true);
+  }
+
+  private final class Pin implements Generation.Lease {
+    private final Generation generation;
+    private boolean active;
+
+    Pin(Generation generation, boolean active) {
+      this.generation = generation;
+      this.active = active;
+    }
+
+    public Generation generation() {
+      return generation;
+    }
+
+    public void close() {
+      if(active) {
+        active = false;
+        if(pinned.get() == generation) {
+          pinned.remove();
+        }
+        generation.exit();
+      }
+    }
+  }
+
+  //the generation captured by the current thread if any, or else the current one
+  private Generation gen() {
+    Generation g = pinned.get();
+    return (g != null) ? g : current;
+  }
+
+  //makes the generation current; returns the replaced one (to retire unless they share the index)
+  private synchronized Generation swap(Generation next) {
+    Generation prev = current;
+    current = next;
+    if(graphQueryCache != null) {
+      graphQueryCache.clear();
+    }
+    return prev;
+  }
+
+  /*
+   * Opens the read-only index and makes a new generation (not yet current),
+   * building the id dictionary and the most common top pathways result.
+   */
+  private Generation openGeneration(Model model, String indexLocation, Blacklist blacklist) {
+    IndexImpl index = new IndexImpl(model, indexLocation, true);
+    try {
+      index.setMaxHitsPerPage(settings.getMaxHitsPerPage());
+      if (settings.getHitsCountThreshold() != null) {
+        index.setHitsCountThreshold(settings.getHitsCountThreshold());
+      }
+      Generation.Builder builder = Generation.builder().model(model).index(index).blacklist(blacklist)
+        .mappings(openMappingStore());
+      if (model != null) {
+        builder.idDictionary(index.buildIdDictionary(DEFAULT_SEED_TYPES))
+          .graph(settings.isCompactGraphEnabled() ? CompactGraph.build(model, blacklist) : null)
+          .sbgn(SbgnStore.open(Paths.get(settings.sbgnStoreFile()), Paths.get(settings.mainModelFile())))
+          .sif(SifEdgeTable.read(Paths.get(settings.sifEdgesFile()), Paths.get(settings.mainModelFile()),
+            Paths.get(settings.blacklistFile())));
+      }
+      Generation g = builder.build();
+      if (model != null) {
+        topPathways(g, "*", null, null, null); //precompute the most common (no filters) result
+      }
+      return g;
+    } catch (RuntimeException e) {
+      index.close();
+      throw e;
+    }
+  }
+
+  /*
+   * Checks there is enough free heap to load another main model (and index)
+   * while the current one is still in use.
+   */
+  private void checkHeapHeadroom() {
+    Path archive = Paths.get(settings.mainModelFile());
+    Path snapshot = Paths.get(settings.mainModelSnapshotFile());
+    long required;
+    try {
+      required = (ModelSnapshot.isValid(snapshot, archive))
+        ? Files.size(snapshot) * SNAPSHOT_HEAP_FACTOR : Files.size(archive) * ARCHIVE_HEAP_FACTOR;
+    } catch (IOException e) {
+      throw new IllegalStateException("cannot read the main model file " + archive, e);
+    }
+    long available = availableHeap();
+    if(available < required) {
+      System.gc(); //the used heap includes garbage; try once more
+      available = availableHeap();
+    }
+    if(available < required) {
+      throw new IllegalStateException(String.format(
+        "not enough free heap to load a new model: %d MB available, ~%d MB required",
+        available >> 20, required >> 20));
+    }
+  }
+
+  private static long availableHeap() {
+    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    long max = (heap.getMax() > 0) ? heap.getMax() : Runtime.getRuntime().maxMemory();
+    return max - heap.getUsed();
   }
 
   /**
@@ -108,46 +304,134 @@ public class ServiceImpl implements Service {
    * @param readOnly
    */
   @Override
-  public void initIndex(Model model, String indexLocation, boolean readOnly) {
-    if(index != null) {
-      index.close();
+  public synchronized void initIndex(Model model, String indexLocation, boolean readOnly) {
+    //close the current index first (the new one may need the write lock)
+    swap(current.withIndex(null)).retire();
+    IndexImpl index = new IndexImpl(model, indexLocation, readOnly);
+    if(!readOnly && settings != null && settings.getIndexThreads() != null) {
+      index.setIndexThreads(settings.getIndexThreads());
     }
-    index = new IndexImpl(model, indexLocation, readOnly);
+    //also use the id-mapping store, if it's there for the current warehouse (e.g. when merging)
+    Generation next = current.toBuilder().index(index)
+      .mappings((settings != null) ? openMappingStore() : null).build();
+    swap(next).retire(next);
+  }
+
+  private MappingStore openMappingStore() {
+    return MappingStore.open(Paths.get(settings.mappingsFile()), Paths.get(settings.warehouseModelFile()));
   }
 
   public Settings settings() {return settings;}
 
+  @Autowired(required = false)
+  public void setMeterRegistry(MeterRegistry meterRegistry) {
+    this.metrics = new QueryMetrics(meterRegistry);
+    if(graphQueryCache != null) {
+      metrics.bind(graphQueryCache);
+    }
+  }
+
+  public QueryMetrics metrics() {
+    return metrics;
+  }
+
   public void setSettings(Settings settings) {
     this.settings = settings;
   }
 
   public Model getModel() {
-    return paxtoolsModel;
+    return gen().model;
   }
-  public void setModel(Model paxtoolsModel) {
-    this.paxtoolsModel = paxtoolsModel;
-    if(index != null) {
-      index.setModel(paxtoolsModel);
+  /**
+   * Replaces the main model while building the data (merge, index), not while serving queries:
+   * the new generation shares the current index, which is switched to the new model in place
+   * (to replace the model that the queries use, see {@link #reload(String)}).
+   *
+   * @param paxtoolsModel new main model
+   * @throws IllegalStateException when there are requests in progress
+   */
+  public synchronized void setModel(Model paxtoolsModel) {
+    Generation g = current;
+    if(g.getInFlight() > 0) {
+      throw new IllegalStateException("setModel: " + g.getInFlight()
+        + " requests in progress; use reload instead");
+    }
+    if(g.index != null) {
+      g.index.setModel(paxtoolsModel);
     }
+    Generation next = g.withModel(paxtoolsModel);
+    swap(next).retire(next); //closes the dropped SBGN store but not the shared index
   }
 
   public Blacklist getBlacklist() {
-    return blacklist;
+    return gen().blacklist;
+  }
+
+  /**
+   * Replaces the blacklist while building the data (the new generation shares the current index).
+   *
+   * @param blacklist ubiquitous molecules
+   * @throws IllegalStateException when there are requests in progress
+   */
+  public synchronized void setBlacklist(Blacklist blacklist) {
+    if(current.getInFlight() > 0) {
+      throw new IllegalStateException("setBlacklist: " + current.getInFlight()
+        + " requests in progress; use reload instead");
+    }
+    Generation next = current.withBlacklist(blacklist);
+    swap(next).retire(next); //closes the dropped SBGN store but not the shared index
+  }
+
+  /**
+   * Gets the graph query results cache (e.g. to report the hit/miss/eviction counters).
+   *
+   * @return the cache (created on first access using current settings)
+   */
+  public synchronized GraphQueryCache graphQueryCache() {
+    if(graphQueryCache == null) {
+      Long maxBytes = settings().getGraphCacheMaxBytes();
+      Long maxIdle = settings().getGraphCacheMaxIdleSeconds();
+      graphQueryCache = new GraphQueryCache((maxBytes != null) ? maxBytes : 0L,
+        (maxIdle != null) ? maxIdle : 3600L);
+      metrics.bind(graphQueryCache);
+    }
+    return graphQueryCache;
   }
 
-  public void setBlacklist(Blacklist blacklist) {
-    this.blacklist = blacklist;
+  /*
+   * Returns the cached graph query result if any; otherwise - executes the query
+   * and caches the successful (not error) result.
+   */
+  private ServiceResponse cachedGraphQuery(String kind, String key, Supplier<ServiceResponse> query) {
+    try(Generation.Lease lease = pin()) {
+      //a replaced generation may still be finishing some queries; do not mix the results
+      final String gkey = lease.generation().id + ":" + key;
+      GraphQueryCache cache = graphQueryCache();
+      DataResponse cached = cache.get(gkey);
+      if(cached != null) {
+        cached.setQueryKind(kind);
+        cached.getStats().put("cached", 1L);
+      }
+      ServiceResponse res = cached;
+      if(res == null) {
+        res = query.get();
+        if(res instanceof DataResponse) {
+          cache.put(gkey, (DataResponse) res);
+        }
+      }
+      return res;
+    }
   }
 
   public ServiceResponse search(String queryStr,
                                 int page, Class<? extends BioPAXElement> biopaxClass,
                                 String[] dsources, String[] organisms) {
-    if(modelNotReady() || index == null) {
+    if(modelNotReady() || gen().index == null) {
       return new ErrorResponse(MAINTENANCE, "Waiting for the initialization to complete (try later)...");
     }
-    try {
+    try(Generation.Lease lease = pin()) {
       // do search
-      SearchResponse hits = index.search(queryStr, page, biopaxClass, dsources, organisms);
+      SearchResponse hits = lease.generation().index.search(queryStr, page, biopaxClass, dsources, organisms);
       hits.setComment("Search '" + queryStr  + "' in " +
         ((biopaxClass == null) ? "all types" : biopaxClass.getSimpleName())
         + "; ds: " + Arrays.toString(dsources)+ "; org.: " + Arrays.toString(organisms));
@@ -158,6 +442,26 @@ public class ServiceImpl implements Service {
     }
   }
 
+  public ServiceResponse search(String queryStr,
+                                String cursor, Class<? extends BioPAXElement> biopaxClass,
+                                String[] dsources, String[] organisms) {
+    if(modelNotReady() || gen().index == null) {
+      return new ErrorResponse(MAINTENANCE, "Waiting for the initialization to complete (try later)...");
+    }
+    try(Generation.Lease lease = pin()) {
+      SearchResponse hits = lease.generation().index.search(queryStr, cursor, biopaxClass, dsources, organisms);
+      hits.setComment("Search '" + queryStr  + "' in " +
+        ((biopaxClass == null) ? "all types" : biopaxClass.getSimpleName())
+        + "; ds: " + Arrays.toString(dsources)+ "; org.: " + Arrays.toString(organisms));
+      return hits;
+    } catch (IllegalArgumentException e) {
+      return new ErrorResponse(BAD_REQUEST, e.getMessage());
+    } catch (Exception e) {
+      log.error("search() failed - " + e);
+      return new ErrorResponse(INTERNAL_ERROR, e);
+    }
+  }
+
   public ServiceResponse fetch(final OutputFormat format, Map<String, String> formatOptions,
                                boolean subPathways, final String... uris)
   {
@@ -165,9 +469,21 @@ public class ServiceImpl implements Service {
       return new ErrorResponse(MAINTENANCE,"Waiting for the initialization to complete (try later)...");
 
     // extract/convert a sub-model
-    try {
-      Set<BioPAXElement> elements = seedBiopaxElements(uris);
-      Model m = autoCompleteAndClone(elements, subPathways);
+    final String kind = "get";
+    try(Generation.Lease lease = pin()) {
+      final Map<String, Long> stats = new LinkedHashMap<>();
+      DataResponse stored = storedSbgn(lease.generation(), format, formatOptions, subPathways, uris);
+      if(stored != null) {
+        //the output size is recorded by the writer (web controller), as for other streaming results
+        stored.setQueryKind(kind);
+        stats.put("stored", 1L);
+        stored.getStats().putAll(stats);
+        return stored;
+      }
+      Set<BioPAXElement> elements = metrics.time(kind, QueryMetrics.SEEDS, format, stats,
+        () -> seedBiopaxElements(uris));
+      Model m = metrics.time(kind, QueryMetrics.CLONE, format, stats,
+        () -> autoCompleteAndClone(elements, subPathways));
       //name the sub-model - can be useful when converted to GSEA, etc...
       if(m!= null && !m.getObjects().isEmpty()) {
         if(elements.size()==1) {
@@ -185,18 +501,39 @@ public class ServiceImpl implements Service {
           m.setName(desc);
         }
       }
-      return convert(m, format, formatOptions);
+      return convert(kind, m, format, formatOptions, stats, settings.isStreamingEnabled());
     } catch (Exception e) {
       return new ErrorResponse(INTERNAL_ERROR, e);
     }
   }
 
 
+  /*
+   * Gets the pre-converted SBGN of a pathway if that's what is requested
+   * (a single pathway URI; default or the same layout option).
+   */
+  private DataResponse storedSbgn(Generation g, OutputFormat format, Map<String, String> formatOptions,
+                                  boolean subPathways, String... uris) {
+    if(g.sbgn == null || format != OutputFormat.SBGN || subPathways || uris == null || uris.length != 1) {
+      return null;
+    }
+    String layout = (formatOptions != null) ? formatOptions.get("layout") : null;
+    boolean doLayout = (layout != null) ? Boolean.parseBoolean(layout) : settings().isSbgnLayoutEnabled();
+    return (doLayout == g.sbgn.isLayout()) ? g.sbgn.get(uris[0]) : null;
+  }
+
+  //the compact graph of the current generation, if enabled; otherwise - null
+  private CompactGraph compactGraph() {
+    return gen().graph;
+  }
+
+  //Paxtools query filters (used when the compact graph is disabled)
   private Filter[] createFilters(String[] organisms, String[] datasources) {
     List<Filter> filters = new ArrayList<>();
 
-    if(blacklist != null)
-      filters.add(new UbiqueFilter(blacklist.getListed()));
+    final UbiqueFilter ubiqueFilter = gen().ubiqueFilter; //one per generation (blacklist)
+    if(ubiqueFilter != null)
+      filters.add(ubiqueFilter);
     else
       log.warn("createFilters: blacklist is NULL, why..."); //normally, it's not null here
 
@@ -211,7 +548,7 @@ public class ServiceImpl implements Service {
 
 
   // auto-complete and clone - makes a reasonable size detached (copy) sub-model
-  private Model autoCompleteAndClone(final Set<BioPAXElement> elements, final boolean includeSubPathways)
+  Model autoCompleteAndClone(final Set<BioPAXElement> elements, final boolean includeSubPathways)
   {
     if(elements == null || elements.isEmpty())
       return null;
@@ -240,26 +577,35 @@ public class ServiceImpl implements Service {
     if(modelNotReady())
       return new ErrorResponse(MAINTENANCE,"Waiting for the initialization to complete (try later)...");
 
-    if(direction == null) {
-      direction = Direction.UNDIRECTED;
-    }
+    final Direction dir = (direction == null) ? Direction.UNDIRECTED : direction;
+    String key = GraphQueryCache.key("neighborhood", sources, null, limit, null, dir,
+      organisms, datasources, subPathways, format, formatOptions);
 
     // execute the paxtools graph query
-    try {
-      Set<Set<BioPAXElement>> elements = seedBiopaxElementGroups(sources);
-      // Execute the query, get result elements
-      Set<BioPAXElement> nhood = QueryExecuter.runNeighborhoodMultiSet(elements, paxtoolsModel,
-        limit, direction, createFilters(organisms, datasources));
-      Model m = autoCompleteAndClone(nhood, subPathways);
-      if( m != null) {
-        String desc = Arrays.toString(sources);
-        m.setUri("PC_graph_neighborhood_" + desc.hashCode());
-        m.setName(desc);
-      }
-      return convert(m, format, formatOptions); //m==null is ok
-    } catch (Exception e) {
-      return new ErrorResponse(INTERNAL_ERROR, e);
-    }
+    final String kind = "neighborhood";
+    return cachedGraphQuery(kind, key, () -> {
+      try {
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        Set<Set<BioPAXElement>> elements = metrics.time(kind, QueryMetrics.SEEDS, format, stats,
+          () -> seedBiopaxElementGroups(sources));
+        // Execute the query, get result elements
+        Set<BioPAXElement> nhood = metrics.time(kind, QueryMetrics.QUERY, format, stats,
+          () -> (compactGraph() != null)
+            ? compactGraph().neighborhood(elements, limit, dir, organisms, datasources)
+            : QueryExecuter.runNeighborhoodMultiSet(elements, gen().model,
+              limit, dir, createFilters(organisms, datasources)));
+        Model m = metrics.time(kind, QueryMetrics.CLONE, format, stats,
+          () -> autoCompleteAndClone(nhood, subPathways));
+        if (m != null) {
+          String desc = GraphQueryCache.sorted(sources); //same for a cached query with other ids order
+          m.setUri("PC_graph_neighborhood_" + desc.hashCode());
+          m.setName(desc);
+        }
+        return convert(kind, m, format, formatOptions, stats); //m==null is ok
+      } catch (Exception e) {
+        return new ErrorResponse(INTERNAL_ERROR, e);
+      }
+    });
   }
 
   public ServiceResponse getPathsBetween(OutputFormat format,
@@ -273,23 +619,35 @@ public class ServiceImpl implements Service {
     if(modelNotReady())
       return new ErrorResponse(MAINTENANCE,"Waiting for the initialization to complete (try later)...");
 
+    String key = GraphQueryCache.key("pathsbetween", sources, null, limit, null, null,
+      organisms, datasources, subPathways, format, formatOptions);
+
     // execute the paxtools graph query
-    try {
-      // init source elements
-      Set<Set<BioPAXElement>> elements = seedBiopaxElementGroups(sources);
-      // Execute the query, get result elements
-      Set<BioPAXElement> result = QueryExecuter.runPathsBetweenMultiSet(elements, paxtoolsModel, limit,
-        createFilters(organisms, datasources));
-      Model m = autoCompleteAndClone(result,subPathways);
-      if(m != null) {
-        String desc = Arrays.toString(sources);
-        m.setUri("PC_graph_pathsbetween_" + desc.hashCode());
-        m.setName(desc);
-      }
-      return convert(m, format, formatOptions);
-    } catch (Exception e) {
-      return new ErrorResponse(INTERNAL_ERROR, e);
-    }
+    final String kind = "pathsbetween";
+    return cachedGraphQuery(kind, key, () -> {
+      try {
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        // init source elements
+        Set<Set<BioPAXElement>> elements = metrics.time(kind, QueryMetrics.SEEDS, format, stats,
+          () -> seedBiopaxElementGroups(sources));
+        // Execute the query, get result elements
+        Set<BioPAXElement> result = metrics.time(kind, QueryMetrics.QUERY, format, stats,
+          () -> (compactGraph() != null)
+            ? compactGraph().pathsBetween(elements, limit, organisms, datasources)
+            : QueryExecuter.runPathsBetweenMultiSet(elements, gen().model, limit,
+              createFilters(organisms, datasources)));
+        Model m = metrics.time(kind, QueryMetrics.CLONE, format, stats,
+          () -> autoCompleteAndClone(result, subPathways));
+        if (m != null) {
+          String desc = GraphQueryCache.sorted(sources);
+          m.setUri("PC_graph_pathsbetween_" + desc.hashCode());
+          m.setName(desc);
+        }
+        return convert(kind, m, format, formatOptions, stats);
+      } catch (Exception e) {
+        return new ErrorResponse(INTERNAL_ERROR, e);
+      }
+    });
   }
 
   public ServiceResponse getPathsFromTo(OutputFormat format,
@@ -305,40 +663,92 @@ public class ServiceImpl implements Service {
     if(modelNotReady())
       return new ErrorResponse(MAINTENANCE,"Waiting for the initialization to complete (try later)...");
 
+    String key = GraphQueryCache.key("pathsfromto", sources, targets, limit, limitType, null,
+      organisms, datasources, subPathways, format, formatOptions);
+
     // execute the paxtools graph query
-    try {
-      // init source and target elements
-      Set<Set<BioPAXElement>> source = seedBiopaxElementGroups(sources);
-      Set<Set<BioPAXElement>> target = seedBiopaxElementGroups(targets);
+    final String kind = "pathsfromto";
+    return cachedGraphQuery(kind, key, () -> {
+      try {
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        // init source and target elements (one seeds stage)
+        List<Set<Set<BioPAXElement>>> seeds = metrics.time(kind, QueryMetrics.SEEDS, format, stats,
+          () -> List.of(seedBiopaxElementGroups(sources), seedBiopaxElementGroups(targets)));
+        Set<Set<BioPAXElement>> source = seeds.get(0);
+        Set<Set<BioPAXElement>> target = seeds.get(1);
+
+        Model m = null;
+        if (!source.isEmpty()) {
+          // Execute the query
+          Set<BioPAXElement> elements = metrics.time(kind, QueryMetrics.QUERY, format, stats,
+            () -> {
+              final CompactGraph graph = compactGraph();
+              if (target == null || target.isEmpty()) {
+                return (graph != null) ? graph.pathsBetween(source, limit, organisms, datasources)
+                  : QueryExecuter.runPathsBetweenMultiSet(source, gen().model, limit,
+                  createFilters(organisms, datasources));
+              } else {
+                return (graph != null) ? graph.pathsFromTo(source, target, limitType, limit, organisms, datasources)
+                  : QueryExecuter.runPathsFromToMultiSet(source, target, gen().model, limitType, limit,
+                  createFilters(organisms, datasources));
+              }
+            });
 
-      Model m = null;
-      if(!source.isEmpty())
-      {
-        // Execute the query
-        Set<BioPAXElement> elements = (target == null || target.isEmpty())
-          ? QueryExecuter.runPathsBetweenMultiSet(source, paxtoolsModel, limit,
-          createFilters(organisms, datasources))
-          : QueryExecuter.runPathsFromToMultiSet(source, target, paxtoolsModel, limitType, limit,
-          createFilters(organisms, datasources));
-
-        m = autoCompleteAndClone(elements,subPathways);
-
-        if(m != null) {
-          String desc = Arrays.toString(sources) + "-to-" + Arrays.toString(targets);
-          m.setUri("PC_graph_pathsfromto_" + desc.hashCode());
-          m.setName(desc);
+          m = metrics.time(kind, QueryMetrics.CLONE, format, stats,
+            () -> autoCompleteAndClone(elements, subPathways));
+
+          if (m != null) {
+            String desc = GraphQueryCache.sorted(sources) + "-to-" + GraphQueryCache.sorted(targets);
+            m.setUri("PC_graph_pathsfromto_" + desc.hashCode());
+            m.setName(desc);
+          }
         }
+
+        return convert(kind, m, format, formatOptions, stats); //m==null is ok too
+      } catch (Exception e) {
+        return new ErrorResponse(INTERNAL_ERROR, e);
       }
+    });
+  }
 
-      return convert(m, format, formatOptions); //m==null is ok too
-    } catch (Exception e) {
-      return new ErrorResponse(INTERNAL_ERROR, e);
-    }
+  /*
+   * Converts the query result model, times the conversion, records the result size,
+   * and attaches the query stats to the data response.
+   * A graph query result is streamed (converted later, when written to the client) only
+   * if the graph query cache is disabled (the cache keeps the converted data).
+   */
+  private ServiceResponse convert(String kind, Model m, OutputFormat format, Map<String, String> options,
+                                  Map<String, Long> stats) {
+    return convert(kind, m, format, options, stats,
+      settings.isStreamingEnabled() && !graphQueryCache().isEnabled());
+  }
 
+  /*
+   * When streaming, the conversion time and output size are recorded by the writer
+   * (web controller) instead.
+   */
+  private ServiceResponse convert(String kind, Model m, OutputFormat format, Map<String, String> options,
+                                  Map<String, Long> stats, boolean streaming) {
+    metrics.size(kind, QueryMetrics.ELEMENTS, format, stats, (m == null) ? 0 : m.getObjects().size());
+    ServiceResponse res = metrics.time(kind, QueryMetrics.CONVERT, format, stats,
+      () -> convert(m, format, options, streaming));
+    if(res instanceof DataResponse) {
+      DataResponse dr = (DataResponse) res;
+      if(dr.getData() instanceof ResultBuffer) {
+        ResultBuffer buffer = (ResultBuffer) dr.getData();
+        metrics.size(kind, QueryMetrics.BYTES, format, stats, buffer.size());
+        metrics.buffered(kind, format, stats, buffer.isInMemory());
+      }
+      dr.setQueryKind(kind);
+      dr.getStats().putAll(stats);
+    }
+    return res;
   }
 
-  private ServiceResponse convert(Model m, OutputFormat format, Map<String, String> options) {
-    BiopaxConverter biopaxConverter = new BiopaxConverter(blacklist);
+  private ServiceResponse convert(Model m, OutputFormat format, Map<String, String> options, boolean streaming) {
+    Integer threshold = settings().getResultBufferBytes();
+    BiopaxConverter biopaxConverter = new BiopaxConverter(gen().blacklist,
+      (threshold != null) ? threshold : ResultBuffer.DEFAULT_THRESHOLD, gen().sif);
 
     if(options == null)
       options = new HashMap<>();
@@ -362,7 +772,8 @@ public class ServiceImpl implements Service {
       }
     }
 
-    return biopaxConverter.convert(m, format, options);
+    return (streaming) ? biopaxConverter.stream(m, format, options)
+      : biopaxConverter.convert(m, format, options);
   }
 
   public ServiceResponse getCommonStream(OutputFormat format,
@@ -380,29 +791,39 @@ public class ServiceImpl implements Service {
 
     if (direction == Direction.BOTHSTREAM || direction == Direction.UNDIRECTED) {
       return new ErrorResponse(BAD_REQUEST, "COMMONSTREAM graph query direction must be either UPSTREAM or DOWNSTREAM (default)");
-    } else if(direction == null) {
-      direction = Direction.DOWNSTREAM;
     }
+    final Direction dir = (direction == null) ? Direction.DOWNSTREAM : direction;
+    //format options are not used by this query (see convert call below)
+    String key = GraphQueryCache.key("commonstream", sources, null, limit, null, dir,
+      organisms, datasources, subPathways, format, null);
 
     // execute the paxtools graph query
-    try {
-      // init source elements
-      Set<Set<BioPAXElement>> elements = seedBiopaxElementGroups(sources);
-      // Execute the query, get result elements
-      Set<BioPAXElement> result = QueryExecuter
-        .runCommonStreamWithPOIMultiSet(elements, paxtoolsModel, direction, limit,
-          createFilters(organisms, datasources));
-      Model m = autoCompleteAndClone(result, subPathways);
-      if(m != null) {
-        String desc = Arrays.toString(sources);
-        //m.setXmlBase(settings().getXmlBase()); //already set in autoCompleteAndClone
-        m.setUri(m.getXmlBase() + "commonstream_" + desc.hashCode());
-        m.setName(desc);
-      }
-      return convert(m, format, null);
-    } catch (Exception e) {
-      return new ErrorResponse(INTERNAL_ERROR, e);
-    }
+    final String kind = "commonstream";
+    return cachedGraphQuery(kind, key, () -> {
+      try {
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        // init source elements
+        Set<Set<BioPAXElement>> elements = metrics.time(kind, QueryMetrics.SEEDS, format, stats,
+          () -> seedBiopaxElementGroups(sources));
+        // Execute the query, get result elements
+        Set<BioPAXElement> result = metrics.time(kind, QueryMetrics.QUERY, format, stats,
+          () -> (compactGraph() != null)
+            ? compactGraph().commonStreamWithPOI(elements, dir, limit, organisms, datasources)
+            : QueryExecuter.runCommonStreamWithPOIMultiSet(elements, gen().model, dir, limit,
+              createFilters(organisms, datasources)));
+        Model m = metrics.time(kind, QueryMetrics.CLONE, format, stats,
+          () -> autoCompleteAndClone(result, subPathways));
+        if (m != null) {
+          String desc = GraphQueryCache.sorted(sources);
+          //m.setXmlBase(settings().getXmlBase()); //already set in autoCompleteAndClone
+          m.setUri(m.getXmlBase() + "commonstream_" + desc.hashCode());
+          m.setName(desc);
+        }
+        return convert(kind, m, format, null, stats);
+      } catch (Exception e) {
+        return new ErrorResponse(INTERNAL_ERROR, e);
+      }
+    });
   }
 
 
@@ -419,13 +840,20 @@ public class ServiceImpl implements Service {
    * @return URIs of matching Xrefs
    *
    */
-  private Set<Set<String>> mapToSeeds(String[] identifiers)
+  Set<Set<String>> mapToSeeds(String[] identifiers)
   {
     Set<Set<String>> sets = new HashSet<>();
 
-    if(identifiers != null)
-      for(String identifier: identifiers)
-        sets.add(findUrisById(identifier));
+    if(identifiers != null) {
+      //resolve all the ids at once using the dictionary, if available
+      final IdDictionary dictionary = gen().idDictionary;
+      Map<String, Set<String>> found = (dictionary != null)
+        ? dictionary.lookup(Arrays.asList(identifiers)) : Collections.emptyMap();
+      for (String identifier : identifiers) {
+        Set<String> uris = found.get(identifier);
+        sets.add((uris != null) ? uris : findUrisById(identifier));
+      }
+    }
 
     return sets;
   }
@@ -449,10 +877,20 @@ public class ServiceImpl implements Service {
 
     Set<String> uris = new TreeSet<>();
 
+    if(types.length==0) {
+      types = DEFAULT_SEED_TYPES; //BioPAX types to search in
+    }
+
+    //the dictionary only has the default seed types (PhysicalEntity, Gene and subclasses)
+    final Generation g = gen();
+    final IdDictionary dictionary = (g.idDictionary != null && isSeedType(types)) ? g.idDictionary : null;
+
     StringBuilder q = new StringBuilder();
     for (String identifier : identifiers) {
-      if(getModel().containsID(identifier)) {
+      if(g.model.containsID(identifier)) {
         uris.add(identifier);
+      } else if(dictionary != null && addFromDictionary(dictionary, identifier, types, uris)) {
+        continue; //resolved without the full-text search
       } else {
         //Build a Lucene query (eq. to xrefid:"A" OR xrefid:"B" OR ...);
         //let's sanitize the ID by simply using double quotes around each identifier:
@@ -466,10 +904,6 @@ public class ServiceImpl implements Service {
       //find all entity URIs by IDs using a specific full-text search
       final String query = q.toString().trim();
 
-      if(types.length==0) {
-        types = DEFAULT_SEED_TYPES; //BioPAX types to search in
-      }
-
       for(Class<? extends BioPAXElement> type : types) {
         findAllUris(uris, query, type);
       }
@@ -478,6 +912,43 @@ public class ServiceImpl implements Service {
     return uris.toArray(new String[]{});
   }
 
+  //whether all the types are the default seed types or their subclasses
+  private boolean isSeedType(Class<? extends BioPAXElement>[] types) {
+    for(Class<? extends BioPAXElement> type : types) {
+      boolean ok = false;
+      for(Class<? extends BioPAXElement> seedType : DEFAULT_SEED_TYPES) {
+        ok |= seedType.isAssignableFrom(type);
+      }
+      if(!ok) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  //collects the URIs of objects of the types by ID using the dictionary; returns false if the ID is unknown
+  private boolean addFromDictionary(IdDictionary dictionary, String identifier,
+                                    Class<? extends BioPAXElement>[] types, Set<String> uris)
+  {
+    Set<String> found = dictionary.lookup(identifier);
+    if(found.isEmpty()) {
+      return false;
+    }
+    final Model model = gen().model;
+    for(String uri : found) {
+      BioPAXElement bpe = model.getByID(uri);
+      if(bpe != null) {
+        for(Class<? extends BioPAXElement> type : types) {
+          if(type.isInstance(bpe)) {
+            uris.add(uri);
+            break;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
   /**
    * Mapping some ID to the BioPAX entity URI(s).
    *
@@ -497,6 +968,13 @@ public class ServiceImpl implements Service {
       // must be valid URI of some existing BioPAX object in our model
       uris.add(idOrUri);
     } else {
+      final IdDictionary dictionary = gen().idDictionary;
+      if(dictionary != null) {
+        Set<String> found = dictionary.lookup(idOrUri);
+        if(!found.isEmpty()) {
+          return new TreeSet<>(found);
+        }
+      }
       //Find all entity URIs by ID and specific Lucene query (eq. to xrefid:"A" OR xrefid:"B" OR ...
       //sanitize the ID by simply using double quotes around each id):
       String query = "xrefid:\""+idOrUri+"\"";
@@ -510,15 +988,8 @@ public class ServiceImpl implements Service {
 
   private void findAllUris(Set<String> collectedUris, String query, Class<? extends BioPAXElement> biopaxTypeFilter) {
     log.debug("findAllUris, search in " + biopaxTypeFilter.getSimpleName() + " using query: " + query);
-    int page = 0; // will use search pagination; collect all hits from all result pages
-    SearchResponse resp = (SearchResponse) search(query, page, biopaxTypeFilter, null, null);
-    while (!resp.isEmpty())
-    {
-      for (SearchHit h : resp.getSearchHit())
-        collectedUris.add(h.getUri());
-      // go to next page
-      resp = (SearchResponse) search(query, ++page, biopaxTypeFilter, null, null);
-    }
+    // collect all hits at once (no scoring, paging)
+    gen().index.forEachHit(query, biopaxTypeFilter, null, null, h -> collectedUris.add(h.getUri()));
   }
 
   public ServiceResponse traverse(String propertyPath, String... uris) {
@@ -529,7 +1000,7 @@ public class ServiceImpl implements Service {
     TraverseResponse res = new TraverseResponse();
     res.setPropertyPath(propertyPath);
 
-    try {
+    try(Generation.Lease lease = pin()) {
       int idx = propertyPath.indexOf('/');
       if(idx <= 0){
         throw new IllegalBioPAXArgumentException("Path does not start from a BioPAX type name.");
@@ -538,7 +1009,7 @@ public class ServiceImpl implements Service {
       Class<? extends BioPAXElement> type = BioPAXLevel.L3.getInterfaceForName(propertyPath.substring(0, idx));
       //Not only absolute URIs but also IDs (to search for biopax type objects) now work!
       String[] sourceUris =  findUrisByIds(uris, type);
-      new TraverseAnalysis(res, sourceUris).execute(paxtoolsModel);
+      new TraverseAnalysis(res, sourceUris).execute(lease.generation().model);
       return res;
     } catch (IllegalArgumentException e) { //- catches IllegalBioPAXArgumentException too
       log.error("traverse() failed to init path accessor. " + e);
@@ -558,76 +1029,56 @@ public class ServiceImpl implements Service {
    * controlledOf, pathwayComponentOf and stepProcessOf properties empty, and
    * excluding pathways with less than three components unless there is a non-trivial sub-pathway.
    */
-  public ServiceResponse topPathways(String q, final String[] organisms, final String[] datasources) {
+  public ServiceResponse topPathways(String q, final String[] organisms, final String[] datasources,
+                                     final Integer page) {
 
-    if(modelNotReady() || index == null)
+    if(modelNotReady() || gen().index == null)
       return new ErrorResponse(MAINTENANCE,"Waiting for the initialization to complete (try later)...");
 
     if(q==null || q.isEmpty()) //too much data
       return new ErrorResponse(BAD_REQUEST,"Query string was empty.");
 
-    SearchResponse topPathways = new SearchResponse();
-    final List<SearchHit> hits = topPathways.getSearchHit(); //empty list
-    int page = 0; // will use search pagination
-
-    SearchResponse r;
-    try {
-      r = index.search(q, page, Pathway.class, datasources, organisms);
-    } catch(Exception e) {
-      log.error("topPathways() failed", e);
-      return new ErrorResponse(INTERNAL_ERROR, e);
+    try(Generation.Lease lease = pin()) {
+      return topPathways(lease.generation(), q, organisms, datasources, page);
     }
+  }
 
-    //go over all hits, all pages
-    final long numPathways = r.getNumHits();
-    int processed = 0;
-    while(!r.isEmpty()) {
-      log.debug("Retrieving top pathways search results, page #" + page);
-      //keep only pathways where 'pathway' index field
-      //is empty (no controlledOf and pathwayComponentOf values)
-      for(SearchHit h : r.getSearchHit()) {
-        if( h.getPathway().isEmpty() ||
-          (h.getPathway().size()==1
-            && h.getPathway().get(0).equalsIgnoreCase(h.getUri())
-          )
-        ){
-          if(h.getNumProcesses()>2) //skip e.g. CTD "pathways" that contain one-two interactions
-            hits.add(h); //add to the list
-          else { //add only if it has a child non-empty pathway
-            Pathway hp = (Pathway) getModel().getByID(h.getUri());
-            for(Process component : hp.getPathwayComponent()) {
-              if(component instanceof Pathway
-                && ((Pathway)component).getPathwayComponent().size()>2)
-              {
-                hits.add(h);
-                break;
-              }
-            }
-          }
-        }
-        processed++;
-      }
-
-      if(processed >= numPathways)
-        break; //may save us one uselss query
+  private ServiceResponse topPathways(Generation g, String q, String[] organisms, String[] datasources,
+                                      Integer page) {
 
-      // go next page
+    //the top pathway flag is computed at index time, so it's just one filtered query
+    final int p = (page != null && page >= 0) ? page : -1;
+    final boolean all = p < 0 && "*".equals(q.trim());
+    final String key = all ? topPathwaysKey(organisms, datasources) : null;
+    SearchResponse topPathways = all ? g.topPathways.get(key) : null;
+    if(topPathways == null) {
       try {
-        r = index.search(q, ++page, Pathway.class, datasources, organisms);
+        topPathways = g.index.topPathways(q, p, datasources, organisms);
       } catch(Exception e) {
         log.error("topPathways() failed", e);
         return new ErrorResponse(INTERNAL_ERROR, e);
       }
+      topPathways.setComment("Top Pathways (neither components of other pathways nor controlled by any process)");
+      //set here, once, as the cached response is shared by the requests (read-only)
+      topPathways.setVersion(settings.getVersion());
+      if(all) {
+        g.topPathways.put(key, topPathways);
+      }
     }
 
-    topPathways.setNumHits((long)hits.size());
-    topPathways.setComment("Top Pathways (neither components of other pathways nor controlled by any process)");
-    topPathways.setMaxHitsPerPage(hits.size());
-    topPathways.setPageNo(0);
-
     return topPathways;
   }
 
+  //the all top pathways cache key - the filter values (their order and case do not matter)
+  private static String topPathwaysKey(String[] organisms, String[] datasources) {
+    return filterValues(organisms) + "|" + filterValues(datasources);
+  }
+
+  private static String filterValues(String[] values) {
+    return (values == null) ? "" : Arrays.stream(values).filter(Objects::nonNull)
+      .map(v -> v.trim().toLowerCase()).sorted().distinct().collect(Collectors.joining(","));
+  }
+
   /**
    * Prepares the seed objects for a get(fetch) or traverse query.
    *
@@ -657,33 +1108,36 @@ public class ServiceImpl implements Service {
 
   private Set<BioPAXElement> getByUri(String[] uris) {
     Set<BioPAXElement> elements = new HashSet<>();
+    final Model model = gen().model;
     for (String uri : uris) {
-      BioPAXElement e = paxtoolsModel.getByID(uri);
+      BioPAXElement e = model.getByID(uri);
       if (e != null) elements.add(e);
     }
 
     return elements;
   }
 
-  private synchronized void loadBlacklist()
+  private Blacklist readBlacklist()
   {
+    Blacklist blacklist = null;
     Resource blacklistResource = new DefaultResourceLoader().getResource("file:" + settings.blacklistFile());
     if(blacklistResource.exists()) {
       try {
-        this.blacklist = new Blacklist(blacklistResource.getInputStream());
-        log.info("loadBlacklist, loaded: " + blacklistResource.getDescription());
+        blacklist = new Blacklist(blacklistResource.getInputStream());
+        log.info("readBlacklist, loaded: " + blacklistResource.getDescription());
         Assert.notEmpty(blacklist.getListed(),"The blacklist is empty");
       } catch (IOException e) {
-        log.error("loadBlacklist, failed using: "
+        log.error("readBlacklist, failed using: "
           + blacklistResource.getDescription(), e);
       }
     } else {
-      log.warn("loadBlacklist, " + settings.blacklistFile() + " is not found");
+      log.warn("readBlacklist, " + settings.blacklistFile() + " is not found");
     }
+    return blacklist;
   }
 
   private boolean modelNotReady() {
-    return paxtoolsModel == null;
+    return gen().model == null;
   }
 
   /**
@@ -724,16 +1178,14 @@ public class ServiceImpl implements Service {
       sourceIds.add(fromId); //collect
     }
 
-    //use Mappings repository to execute the search and get results
-    Set<String> results = mapping().findBySrcIdInAndDstDbIgnoreCase(sourceIds, toDb).stream()
-            .map(Mapping::getDstId)
-            .collect(Collectors.toCollection(TreeSet::new));
-
-    return results;
+    //use the id-mapping store (if made for the current warehouse) or the index to get results
+    Generation g = gen();
+    MappingLookup mappings = (g.mappings != null) ? g.mappings : g.index;
+    return mappings.findDstIds(sourceIds, toDb);
   }
 
   public Mappings mapping() {
-    return index;
+    return gen().index;
   }
 
   public Metadata metadata() {
@@ -744,7 +1196,7 @@ public class ServiceImpl implements Service {
   }
 
   public Index index() {
-    return index;
+    return gen().index;
   }
 
   public void clear(Datasource datasource) {
@@ -756,6 +1208,11 @@ public class ServiceImpl implements Service {
   }
 
   public Model loadMainModel() {
+    //prefer the binary snapshot if it was made from the current archive
+    Model model = ModelSnapshot.read(Paths.get(settings.mainModelSnapshotFile()), Paths.get(settings.mainModelFile()));
+    if(model != null) {
+      return model;
+    }
     return CPathUtils.importFromTheArchive(settings.mainModelFile());
   }
 
@@ -784,6 +1241,22 @@ public class ServiceImpl implements Service {
   }
 
   public void unzipData(Datasource datasource) {
+    unzip(datasource, true);
+    if(datasource.getFiles().isEmpty())
+      log.warn("unzipData(), no data found for " + datasource);
+  }
+
+  public Map<String, Boolean> checkData(Datasource datasource) {
+    return unzip(datasource, false);
+  }
+
+  /*
+   * Lists (and expands, if needed) the data files of the data source archive;
+   * an existing data file is re-written only when its manifest (the zip entry name, crc, size) does not match.
+   * Returns the data file names and whether they were up-to-date.
+   */
+  private Map<String, Boolean> unzip(Datasource datasource, boolean extract) {
+    final Map<String, Boolean> datafiles = new TreeMap<>();
     try {
       String fname = (datasource.getDataUrl().startsWith("classpath:"))//a hack for test
         ? CPathUtils.LOADER.getResource(datasource.getDataUrl()).getFile().getPath()
@@ -795,22 +1268,32 @@ public class ServiceImpl implements Service {
       {
         ZipEntry entry = entries.nextElement();
         String entryName = entry.getName();
-        log.info("unzipData(), processing zip entry: " + entryName);
+        if(extract) {
+          log.info("unzipData(), processing zip entry: " + entryName);
+        }
         //skip some sys/tmp files (that MacOSX creates sometimes)
         if(entry.isDirectory() || entryName.contains("__MACOSX") || entryName.startsWith(".")
           || entryName.contains("/.") || entryName.contains("\\."))
         {
-          log.info("unzipData(), skipped " + entryName);
+          log.debug("unzipData(), skipped " + entryName);
           continue;
         }
         //create the original data file path/name, replacing all unsafe symbols with underscores
         String datafile = CPathUtils.originalFile(intermediateDataDir(datasource), entryName);
-        datasource.getFiles().add(datafile);
-        // expand original contend and save to the gzip output file
         Path out = Paths.get(datafile);
-        if(!Files.exists(out)) {
-          CPathUtils.copy(zipFile.getInputStream(entry), new GZIPOutputStream(Files.newOutputStream(out)));
-          //streams get auto-closed after copied
+        StageManifest manifest = new StageManifest().setting("entry", entryName)
+          .setting("crc", entry.getCrc()).setting("size", entry.getSize());
+        boolean current = manifest.matches(out);
+        datafiles.put(datafile, current);
+        if(extract) {
+          datasource.getFiles().add(datafile);
+          // expand original content and save to the gzip output file (unless it's been done already)
+          if(!current) {
+            StageManifest.invalidate(out);
+            CPathUtils.copy(zipFile.getInputStream(entry), new GZIPOutputStream(Files.newOutputStream(out)));
+            //streams get auto-closed after copied
+            manifest.save(out);
+          }
         }
       }
       //done all zip entries
@@ -818,9 +1301,7 @@ public class ServiceImpl implements Service {
     } catch (IOException e) {
       throw new RuntimeException("unzipData(), failed reading from: " + datasource.getIdentifier() , e);
     }
-
-    if(datasource.getFiles().isEmpty())
-      log.warn("unzipData(), no data found for " + datasource);
+    return datafiles;
   }
 
   public void saveValidationReport(Validation v, String reportFile) {
@@ -56,6 +56,8 @@ public class Settings
   private Boolean sbgnLayoutEnabled;
   private String xmlBase;
   private Integer maxHitsPerPage;
+  private Integer hitsCountThreshold;
+  private Integer indexThreads;
   private String metadataLocation = "file:" + Paths.get(homeDir(), METADATA_FILE);
   private String name;
   private String description;
@@ -66,12 +68,22 @@ public class Settings
   private String downloads;
   private String email;
   private String organization;
+  private Long graphCacheMaxBytes;
+  private Long graphCacheMaxIdleSeconds;
+  private String adminToken;
+  private Boolean compactGraphEnabled;
+  private Boolean streamingEnabled;
+  private Integer resultBufferBytes;
+  private Integer buildThreads;
+  private Long buildHeapBytes;
 
   public Settings() {
     LOG.info("Working ('home') directory: " + homeDir());
     subDir(""); //creates if not exists
     subDir(DATA_SUBDIR);
     sbgnLayoutEnabled = Boolean.FALSE;
+    graphCacheMaxBytes = 256L * 1024 * 1024;
+    graphCacheMaxIdleSeconds = 3600L;
   }
 
   public String getXmlBase() {
@@ -90,6 +102,30 @@ public class Settings
     this.maxHitsPerPage = maxHitsPerPage;
   }
 
+  /**
+   * Search hits are counted exactly up to this number, and then -
+   * the total is a lower bound; not set or 0 - always count exactly.
+   */
+  public Integer getHitsCountThreshold() {
+    return hitsCountThreshold;
+  }
+
+  public void setHitsCountThreshold(Integer hitsCountThreshold) {
+    this.hitsCountThreshold = hitsCountThreshold;
+  }
+
+  /**
+   * Number of threads to build the full-text index documents with (--index, merge);
+   * not set or 1 - single thread.
+   */
+  public Integer getIndexThreads() {
+    return indexThreads;
+  }
+
+  public void setIndexThreads(Integer indexThreads) {
+    this.indexThreads = indexThreads;
+  }
+
   public String getMetadataLocation() { //uri string
     return metadataLocation;
   }
@@ -178,6 +214,121 @@ public class Settings
     this.downloads = downloads;
   }
 
+  /**
+   * Total size limit (bytes) of the cached graph query results;
+   * 0 disables the cache.
+   */
+  public Long getGraphCacheMaxBytes() {
+    return graphCacheMaxBytes;
+  }
+
+  public void setGraphCacheMaxBytes(Long graphCacheMaxBytes) {
+    this.graphCacheMaxBytes = graphCacheMaxBytes;
+  }
+
+  /**
+   * A cached graph query result not accessed for this long (seconds) gets evicted.
+   */
+  public Long getGraphCacheMaxIdleSeconds() {
+    return graphCacheMaxIdleSeconds;
+  }
+
+  public void setGraphCacheMaxIdleSeconds(Long graphCacheMaxIdleSeconds) {
+    this.graphCacheMaxIdleSeconds = graphCacheMaxIdleSeconds;
+  }
+
+  /**
+   * Secret value of the X-Admin-Token header required by the web admin requests
+   * (e.g. to reload the model and index); not set - the admin requests are disabled.
+   */
+  public String getAdminToken() {
+    return adminToken;
+  }
+
+  public void setAdminToken(String adminToken) {
+    this.adminToken = adminToken;
+  }
+
+  /**
+   * Whether to build the compact (int-indexed) graph of the main model at startup
+   * and use it, and its organism/datasource bitsets, for the graph queries (default: true; uses more memory).
+   * When disabled, the queries run on the Paxtools graph, with the Paxtools filters.
+   */
+  public Boolean getCompactGraphEnabled() {
+    return compactGraphEnabled;
+  }
+
+  public void setCompactGraphEnabled(Boolean compactGraphEnabled) {
+    this.compactGraphEnabled = compactGraphEnabled;
+  }
+
+  public boolean isCompactGraphEnabled() {
+    return (compactGraphEnabled == null) ? true : compactGraphEnabled.booleanValue();
+  }
+
+  /**
+   * Whether to convert the get/graph query results directly to the HTTP response
+   * (chunked, gzip on the fly) rather than via temporary files;
+   * the graph query results still go via files when the graph query cache is enabled.
+   */
+  public Boolean getStreamingEnabled() {
+    return streamingEnabled;
+  }
+
+  public void setStreamingEnabled(Boolean streamingEnabled) {
+    this.streamingEnabled = streamingEnabled;
+  }
+
+  public boolean isStreamingEnabled() {
+    return (streamingEnabled == null) ? false : streamingEnabled.booleanValue();
+  }
+
+  /**
+   * Max. size (bytes) of a converted query result to keep in memory;
+   * larger results are spilled to temporary files (default is 1Mb).
+   */
+  public Integer getResultBufferBytes() {
+    return resultBufferBytes;
+  }
+
+  public void setResultBufferBytes(Integer resultBufferBytes) {
+    this.resultBufferBytes = resultBufferBytes;
+  }
+
+  /**
+   * No. threads for the parallel data build (console app) tasks;
+   * default is the no. available processors.
+   */
+  public Integer getBuildThreads() {
+    return buildThreads;
+  }
+
+  public void setBuildThreads(Integer buildThreads) {
+    this.buildThreads = buildThreads;
+  }
+
+  public int buildThreads() {
+    return (buildThreads == null || buildThreads < 1)
+      ? Runtime.getRuntime().availableProcessors() : buildThreads.intValue();
+  }
+
+  /**
+   * Max. heap memory (bytes) that the parallel premerge/merge tasks may use at once to load the data models;
+   * default is 3/4 of the JVM max heap size.
+   */
+  public Long getBuildHeapBytes() {
+    return buildHeapBytes;
+  }
+
+  public void setBuildHeapBytes(Long buildHeapBytes) {
+    this.buildHeapBytes = buildHeapBytes;
+  }
+
+  public long buildHeapBytes() {
+    return (buildHeapBytes == null || buildHeapBytes < 1)
+      ? Runtime.getRuntime().maxMemory() / 4 * 3 : buildHeapBytes.longValue();
+  }
+
   public boolean isSbgnLayoutEnabled() {
     return (getSbgnLayoutEnabled()==null)? false : getSbgnLayoutEnabled().booleanValue();
   }
@@ -322,6 +473,34 @@ public class Settings
     return biopaxFileName("pc-biopax");
   }
 
+  /*
+   * Path to the binary snapshot of the main model (see ModelSnapshot), to load it faster than the archive.
+   */
+  String mainModelSnapshotFile() {
+    return dataDir() + FileSystems.getDefault().getSeparator() + "pc-biopax.snapshot";
+  }
+
+  /*
+   * Path to the pre-converted SBGN-ML of the main model pathways (see SbgnStore).
+   */
+  String sbgnStoreFile() {
+    return dataDir() + FileSystems.getDefault().getSeparator() + "pc-sbgn.store";
+  }
+
+  /*
+   * Path to the SIF interactions table of the main model (see SifEdgeTable).
+   */
+  String sifEdgesFile() {
+    return dataDir() + FileSystems.getDefault().getSeparator() + "pc-sif.edges";
+  }
+
+  /*
+   * Path to the read-only id-mapping store (see MappingStore).
+   */
+  String mappingsFile() {
+    return dataDir() + FileSystems.getDefault().getSeparator() + "pc-mappings.store";
+  }
+
   String warehouseModelFile() {
     return biopaxFileName("utility");
   }
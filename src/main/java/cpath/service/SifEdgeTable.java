@@ -0,0 +1,604 @@
+package cpath.service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.*;
+import org.biopax.paxtools.model.level3.Process;
+import org.biopax.paxtools.pattern.miner.SIFEnum;
+import org.biopax.paxtools.pattern.miner.SIFInteraction;
+import org.biopax.paxtools.pattern.miner.SIFSearcher;
+import org.biopax.paxtools.pattern.miner.SIFType;
+import org.biopax.paxtools.pattern.util.Blacklist;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The SIF interactions (default rules and gene/chemical ID types) of the main model,
+ * found by the SIF patterns search once, at build time, and stored in a compact columnar table:
+ * per edge - the source and target ids, SIF type, and the mediator groups;
+ * per mediator (interaction, control, complex) - the URI and the datasource and organism tags.
+ *
+ * A sub-model's (query result's) SIF is then the edges that have at least one mediator group
+ * (a control with one of the processes it controls, or a single interaction/complex) entirely
+ * in the sub-model, without searching the sub-model again. Only the SIF types whose pattern match
+ * takes one such group are in the table; the rest (e.g. catalysis-precedes, which takes two controls
+ * and two conversions) are still searched for in the sub-model.
+ *
+ * File format: header (magic, version, the main model archive size and last modified time,
+ * the blacklist file size and CRC32), SIF types, the string dictionaries, mediators (sorted by URI), and edges.
+ * A table is valid only for the main model archive and blacklist it was made from (checked when reading).
+ *
+ * @author rodche
+ */
+public final class SifEdgeTable {
+  private static final Logger log = LoggerFactory.getLogger(SifEdgeTable.class);
+
+  private static final int MAGIC = 0x43505346; //"CPSF"
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 4 + 4 + 4 * 8;
+
+  /**
+   * The SIF types a pattern match of which can take several interactions
+   * (catalysis-precedes; controls-state-change-of through a controlling small molecule), so that
+   * the mediators of an edge do not tell which of them must be in the sub-model together.
+   */
+  static final Set<SIFEnum> SEARCHED_TYPES = Collections.unmodifiableSet(
+    EnumSet.of(SIFEnum.CATALYSIS_PRECEDES, SIFEnum.CONTROLS_STATE_CHANGE_OF));
+
+  private final EnumSet<SIFEnum> types; //the SIF rules that were applied
+  private final String[] ids; //gene symbols, chemical ids
+  private final String[] datasources; //Provenance URIs
+  private final String[] organisms; //BioSource URIs
+
+  //mediators
+  private final String[] mediators; //URIs (sorted)
+  private final int[] mediatorDatasourceStart; //offsets (no. mediators + 1) into mediatorDatasources
+  private final int[] mediatorDatasources;
+  private final int[] mediatorOrganismStart;
+  private final int[] mediatorOrganisms;
+
+  //edges
+  private final int[] source;
+  private final int[] target;
+  private final byte[] type; //SIFEnum ordinal
+  private final int[] groupStart; //offsets (no. edges + 1) into groupMediatorStart
+  private final int[] groupMediatorStart; //offsets (no. groups + 1) into groupMediators
+  private final int[] groupMediators;
+
+  //mediator to edges index (made when the table is created or read)
+  private final int[] mediatorEdgeStart; //offsets (no. mediators + 1) into mediatorEdges
+  private final int[] mediatorEdges;
+
+  private SifEdgeTable(EnumSet<SIFEnum> types, String[] ids, String[] datasources, String[] organisms,
+                       String[] mediators, int[] mediatorDatasourceStart, int[] mediatorDatasources,
+                       int[] mediatorOrganismStart, int[] mediatorOrganisms,
+                       int[] source, int[] target, byte[] type,
+                       int[] groupStart, int[] groupMediatorStart, int[] groupMediators) {
+    this.types = types;
+    this.ids = ids;
+    this.datasources = datasources;
+    this.organisms = organisms;
+    this.mediators = mediators;
+    this.mediatorDatasourceStart = mediatorDatasourceStart;
+    this.mediatorDatasources = mediatorDatasources;
+    this.mediatorOrganismStart = mediatorOrganismStart;
+    this.mediatorOrganisms = mediatorOrganisms;
+    this.source = source;
+    this.target = target;
+    this.type = type;
+    this.groupStart = groupStart;
+    this.groupMediatorStart = groupMediatorStart;
+    this.groupMediators = groupMediators;
+
+    //reverse the edge-group-mediator index
+    this.mediatorEdgeStart = new int[mediators.length + 1];
+    for (int e = 0; e < source.length; e++) {
+      for (int k = groupMediatorStart[groupStart[e]]; k < groupMediatorStart[groupStart[e + 1]]; k++) {
+        mediatorEdgeStart[groupMediators[k] + 1]++;
+      }
+    }
+    for (int i = 0; i < mediators.length; i++) {
+      mediatorEdgeStart[i + 1] += mediatorEdgeStart[i];
+    }
+    this.mediatorEdges = new int[mediatorEdgeStart[mediators.length]];
+    final int[] next = Arrays.copyOf(mediatorEdgeStart, mediators.length);
+    for (int e = 0; e < source.length; e++) {
+      for (int k = groupMediatorStart[groupStart[e]]; k < groupMediatorStart[groupStart[e + 1]]; k++) {
+        mediatorEdges[next[groupMediators[k]]++] = e;
+      }
+    }
+  }
+
+  /**
+   * Runs the default SIF rules (all but neighbor-of and {@link #SEARCHED_TYPES}; HGNC symbols and ChEBI ids)
+   * over the whole model and makes the edge table.
+   *
+   * @param model the main model
+   * @param blacklist ubiquitous small molecules (the same as used to convert the query results)
+   * @return new table
+   */
+  public static SifEdgeTable build(Model model, Blacklist blacklist) {
+    final long start = System.currentTimeMillis();
+    EnumSet<SIFEnum> types = EnumSet.noneOf(SIFEnum.class);
+    for (SIFType t : BiopaxConverter.defaultSifTypes()) {
+      if (!SEARCHED_TYPES.contains(sifEnum(t))) {
+        types.add(sifEnum(t));
+      }
+    }
+    SIFSearcher searcher = new SIFSearcher(BiopaxConverter.idFetcher(null), types.toArray(new SIFType[0]));
+    searcher.setBlacklist((blacklist != null) ? blacklist : new Blacklist());
+    List<SIFInteraction> inters = new ArrayList<>(searcher.searchSIF(model));
+    inters.sort(Comparator.comparing(SIFInteraction::toString));
+
+    //mediator groups of each edge; all the mediators, sorted by URI
+    List<List<Set<BioPAXElement>>> edgeGroups = new ArrayList<>(inters.size());
+    SortedMap<String, BioPAXElement> sortedMediators = new TreeMap<>();
+    for (SIFInteraction inter : inters) {
+      List<Set<BioPAXElement>> groups = groups(inter.mediators);
+      for (Set<BioPAXElement> group : groups) {
+        for (BioPAXElement m : group) {
+          sortedMediators.put(m.getUri(), m);
+        }
+      }
+      edgeGroups.add(groups);
+    }
+    String[] mediators = sortedMediators.keySet().toArray(new String[0]);
+
+    Dictionary ids = new Dictionary();
+    Dictionary datasources = new Dictionary();
+    Dictionary organisms = new Dictionary();
+    int[] source = new int[inters.size()];
+    int[] target = new int[inters.size()];
+    byte[] type = new byte[inters.size()];
+    int[] groupStart = new int[inters.size() + 1];
+    IntList groupMediatorStart = new IntList();
+    IntList groupMediators = new IntList();
+    groupMediatorStart.add(0);
+    for (int e = 0; e < inters.size(); e++) {
+      SIFInteraction inter = inters.get(e);
+      source[e] = ids.id(inter.sourceID);
+      target[e] = ids.id(inter.targetID);
+      type[e] = (byte) sifEnum(inter.type).ordinal();
+      for (Set<BioPAXElement> group : edgeGroups.get(e)) {
+        for (BioPAXElement m : group) {
+          groupMediators.add(Arrays.binarySearch(mediators, m.getUri()));
+        }
+        groupMediatorStart.add(groupMediators.size());
+      }
+      groupStart[e + 1] = groupMediatorStart.size() - 1;
+    }
+
+    //mediator tags
+    int[] mediatorDatasourceStart = new int[mediators.length + 1];
+    int[] mediatorOrganismStart = new int[mediators.length + 1];
+    IntList mediatorDatasources = new IntList();
+    IntList mediatorOrganisms = new IntList();
+    for (int i = 0; i < mediators.length; i++) {
+      final BioPAXElement m = sortedMediators.get(mediators[i]);
+      if (m instanceof Entity) {
+        for (Provenance p : ((Entity) m).getDataSource()) {
+          mediatorDatasources.add(datasources.id(p.getUri()));
+        }
+      }
+      mediatorDatasourceStart[i + 1] = mediatorDatasources.size();
+      for (String org : organisms(m)) {
+        mediatorOrganisms.add(organisms.id(org));
+      }
+      mediatorOrganismStart[i + 1] = mediatorOrganisms.size();
+    }
+
+    SifEdgeTable table = new SifEdgeTable(types, ids.toArray(), datasources.toArray(), organisms.toArray(),
+      mediators, mediatorDatasourceStart, mediatorDatasources.toArray(),
+      mediatorOrganismStart, mediatorOrganisms.toArray(),
+      source, target, type, groupStart, groupMediatorStart.toArray(), groupMediators.toArray());
+    log.info("build, " + table.size() + " SIF edges, " + mediators.length + " mediators, in "
+      + (System.currentTimeMillis() - start) / 1000 + " s");
+    return table;
+  }
+
+  private static SIFEnum sifEnum(SIFType t) {
+    return (t instanceof SIFEnum) ? (SIFEnum) t : SIFEnum.typeOf(t.getTag());
+  }
+
+  /*
+   * Splits the mediators of an interaction into the sets that come from one pattern match
+   * (for the SIF types other than SEARCHED_TYPES): a control with a process it controls
+   * (directly or via other controls), a control alone if it controls none of the mediators,
+   * and the rest - one by one.
+   */
+  private static List<Set<BioPAXElement>> groups(Set<BioPAXElement> mediators) {
+    List<Set<BioPAXElement>> groups = new ArrayList<>();
+    Set<BioPAXElement> covered = new HashSet<>();
+    for (BioPAXElement m : mediators) {
+      if (m instanceof Control) {
+        covered.add(m);
+        boolean controlsAny = false;
+        for (Process p : controlled((Control) m)) {
+          if (mediators.contains(p)) {
+            groups.add(Set.of(m, p));
+            covered.add(p);
+            controlsAny = true;
+          }
+        }
+        if (!controlsAny) {
+          groups.add(Collections.singleton(m));
+        }
+      }
+    }
+    for (BioPAXElement m : mediators) {
+      if (!covered.contains(m)) {
+        groups.add(Collections.singleton(m));
+      }
+    }
+    return groups;
+  }
+
+  //processes (but controls) the control controls, directly or via other controls
+  private static Set<Process> controlled(Control control) {
+    Set<Process> processes = new HashSet<>();
+    Set<Control> visited = new HashSet<>();
+    Deque<Control> controls = new ArrayDeque<>();
+    controls.add(control);
+    while (!controls.isEmpty()) {
+      Control c = controls.poll();
+      if (visited.add(c)) {
+        for (Process p : c.getControlled()) {
+          if (p instanceof Control) {
+            controls.add((Control) p);
+          } else {
+            processes.add(p);
+          }
+        }
+      }
+    }
+    return processes;
+  }
+
+  //organisms of the mediator's participants/components (sequence entity references)
+  private static Set<String> organisms(BioPAXElement m) {
+    Set<Entity> entities = new HashSet<>();
+    if (m instanceof Interaction) {
+      entities.addAll(((Interaction) m).getParticipant());
+    } else if (m instanceof Complex) {
+      entities.addAll(((Complex) m).getComponent());
+    }
+    Set<String> orgs = new TreeSet<>();
+    for (Entity e : entities) {
+      if (e instanceof SimplePhysicalEntity
+        && ((SimplePhysicalEntity) e).getEntityReference() instanceof SequenceEntityReference) {
+        BioSource org = ((SequenceEntityReference) ((SimplePhysicalEntity) e).getEntityReference()).getOrganism();
+        if (org != null) {
+          orgs.add(org.getUri());
+        }
+      }
+    }
+    return orgs;
+  }
+
+  /**
+   * @return no. edges
+   */
+  public int size() {
+    return source.length;
+  }
+
+  /**
+   * Whether the SIF interactions of this type are selected from the table
+   * (otherwise, they are searched for in the sub-model).
+   *
+   * @param sifType SIF rule
+   * @return true if the rule was applied when making this table
+   */
+  public boolean contains(SIFType sifType) {
+    return types.contains(sifEnum(sifType));
+  }
+
+  /**
+   * Writes the simple SIF (sorted "source type target" lines) of the sub-model
+   * (e.g., a graph query result), the same as the SIF search over that sub-model would:
+   * selects the edges of the types that are in the table and searches for the other types' ones.
+   *
+   * @param m sub-model of the main model
+   * @param sifTypes SIF rules to use (null elements are ignored)
+   * @param blacklist the same blacklist the table was made with (for the types searched for)
+   * @param out output stream
+   * @throws IOException when there is an output stream writing error
+   */
+  public void writeSif(Model m, SIFType[] sifTypes, Blacklist blacklist, OutputStream out) throws IOException {
+    final boolean[] allowed = new boolean[SIFEnum.values().length];
+    final List<SIFType> searched = new ArrayList<>();
+    for (SIFType t : sifTypes) {
+      if (t == null) {
+        continue;
+      }
+      if (contains(t)) {
+        allowed[sifEnum(t).ordinal()] = true;
+      } else {
+        searched.add(t);
+      }
+    }
+
+    //the table's mediators in the sub-model (sorted indices), and their edges
+    final IntList found = new IntList();
+    for (BioPAXElement e : m.getObjects()) {
+      if (e instanceof Interaction || e instanceof Complex) {
+        int i = Arrays.binarySearch(mediators, e.getUri());
+        if (i >= 0) {
+          found.add(i);
+        }
+      }
+    }
+    final int[] present = found.toArray();
+    Arrays.sort(present);
+    final IntList candidates = new IntList();
+    for (int i : present) {
+      for (int k = mediatorEdgeStart[i]; k < mediatorEdgeStart[i + 1]; k++) {
+        candidates.add(mediatorEdges[k]);
+      }
+    }
+
+    Set<String> lines = new TreeSet<>();
+    final SIFEnum[] enums = SIFEnum.values();
+    for (int e : candidates.toArray()) {
+      if (allowed[type[e]] && selected(e, present)) {
+        lines.add(ids[source[e]] + "\t" + enums[type[e]].getTag() + "\t" + ids[target[e]]);
+      }
+    }
+
+    if (!searched.isEmpty()) {
+      SIFSearcher searcher = new SIFSearcher(BiopaxConverter.idFetcher(null), searched.toArray(new SIFType[0]));
+      searcher.setBlacklist((blacklist != null) ? blacklist : new Blacklist());
+      for (SIFInteraction inter : searcher.searchSIF(m)) {
+        lines.add(inter.toString());
+      }
+    }
+
+    if (!lines.isEmpty()) {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+      writer.write(String.join("\n", lines));
+      writer.flush();
+    }
+  }
+
+  //whether any mediator group of the edge is entirely in the sub-model (present - sorted mediator indices)
+  private boolean selected(int edge, int[] present) {
+    for (int g = groupStart[edge]; g < groupStart[edge + 1]; g++) {
+      boolean all = true;
+      for (int k = groupMediatorStart[g]; k < groupMediatorStart[g + 1] && all; k++) {
+        all = Arrays.binarySearch(present, groupMediators[k]) >= 0;
+      }
+      if (all) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Counts the edges per datasource (by the mediators' data source tags).
+   *
+   * @return datasource URI to the no. edges map
+   */
+  public Map<String, Integer> countByDatasource() {
+    return count(mediatorDatasourceStart, mediatorDatasources, datasources);
+  }
+
+  /**
+   * Counts the edges per organism (by the mediators' participants' organism tags).
+   *
+   * @return organism (BioSource) URI to the no. edges map
+   */
+  public Map<String, Integer> countByOrganism() {
+    return count(mediatorOrganismStart, mediatorOrganisms, organisms);
+  }
+
+  private Map<String, Integer> count(int[] tagStart, int[] tags, String[] names) {
+    Map<String, Integer> counts = new TreeMap<>();
+    for (int e = 0; e < source.length; e++) {
+      BitSet edgeTags = new BitSet(names.length);
+      for (int k = groupMediatorStart[groupStart[e]]; k < groupMediatorStart[groupStart[e + 1]]; k++) {
+        int m = groupMediators[k];
+        for (int t = tagStart[m]; t < tagStart[m + 1]; t++) {
+          edgeTags.set(tags[t]);
+        }
+      }
+      edgeTags.stream().forEach(t -> counts.merge(names[t], 1, Integer::sum));
+    }
+    return counts;
+  }
+
+  /**
+   * Saves the table (to a temporary file first, then replaces the target one).
+   *
+   * @param archive the main model archive the table was made from
+   * @param blacklist the blacklist file the table was made with (may not exist - no blacklist)
+   * @param file output file
+   * @throws IOException when there is a file i/o error
+   */
+  public void write(Path archive, Path blacklist, Path file) throws IOException {
+    Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), "sif", ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+      for (long v : header(archive, blacklist)) {
+        out.writeLong(v);
+      }
+      out.writeInt(types.size());
+      for (SIFEnum t : types) {
+        out.writeUTF(t.name());
+      }
+      writeStrings(out, ids);
+      writeStrings(out, datasources);
+      writeStrings(out, organisms);
+      writeStrings(out, mediators);
+      writeInts(out, mediatorDatasourceStart);
+      writeInts(out, mediatorDatasources);
+      writeInts(out, mediatorOrganismStart);
+      writeInts(out, mediatorOrganisms);
+      writeInts(out, source);
+      writeInts(out, target);
+      out.writeInt(type.length);
+      out.write(type);
+      writeInts(out, groupStart);
+      writeInts(out, groupMediatorStart);
+      writeInts(out, groupMediators);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(tmp);
+      throw e;
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    log.info("write, saved " + size() + " SIF edges to " + file);
+  }
+
+  //magic and version, the main model archive size and last modified time, the blacklist file size and CRC32
+  private static long[] header(Path archive, Path blacklist) throws IOException {
+    long blacklistSize = -1L;
+    long blacklistCrc = 0L;
+    if (Files.isRegularFile(blacklist)) {
+      byte[] bytes = Files.readAllBytes(blacklist);
+      CRC32 crc = new CRC32();
+      crc.update(bytes);
+      blacklistSize = bytes.length;
+      blacklistCrc = crc.getValue();
+    }
+    return new long[]{((long) MAGIC << 32) | VERSION,
+      Files.size(archive), Files.getLastModifiedTime(archive).toMillis(), blacklistSize, blacklistCrc};
+  }
+
+  /**
+   * Checks whether the table file was made from the main model archive and with the blacklist.
+   *
+   * @param file the table file
+   * @param archive the main model archive
+   * @param blacklist the blacklist file (may not exist - no blacklist)
+   * @return true if the table can be used
+   */
+  public static boolean isValid(Path file, Path archive, Path blacklist) {
+    if (!Files.isRegularFile(file) || !Files.isRegularFile(archive)) {
+      return false;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      for (long v : header(archive, blacklist)) {
+        if (in.readLong() != v) {
+          return false;
+        }
+      }
+      return true;
+    } catch (IOException e) {
+      log.warn("isValid, cannot read " + file + "; " + e);
+      return false;
+    }
+  }
+
+  /**
+   * Reads the table if it's valid for the main model archive and blacklist.
+   *
+   * @param file the table file
+   * @param archive the main model archive
+   * @param blacklist the blacklist file (may not exist - no blacklist)
+   * @return the table or null
+   */
+  public static SifEdgeTable read(Path file, Path archive, Path blacklist) {
+    if (!isValid(file, archive, blacklist)) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+      in.skipNBytes(HEADER_SIZE);
+      EnumSet<SIFEnum> types = EnumSet.noneOf(SIFEnum.class);
+      int n = in.readInt();
+      for (int i = 0; i < n; i++) {
+        types.add(SIFEnum.valueOf(in.readUTF()));
+      }
+      String[] ids = readStrings(in);
+      String[] datasources = readStrings(in);
+      String[] organisms = readStrings(in);
+      String[] mediators = readStrings(in);
+      int[] mediatorDatasourceStart = readInts(in);
+      int[] mediatorDatasources = readInts(in);
+      int[] mediatorOrganismStart = readInts(in);
+      int[] mediatorOrganisms = readInts(in);
+      int[] source = readInts(in);
+      int[] target = readInts(in);
+      byte[] type = new byte[in.readInt()];
+      in.readFully(type);
+      SifEdgeTable table = new SifEdgeTable(types, ids, datasources, organisms,
+        mediators, mediatorDatasourceStart, mediatorDatasources, mediatorOrganismStart, mediatorOrganisms,
+        source, target, type, readInts(in), readInts(in), readInts(in));
+      log.info("read, " + table.size() + " SIF edges from " + file);
+      return table;
+    } catch (IOException | IllegalArgumentException e) {
+      log.error("read, failed to read " + file + "; " + e);
+      return null;
+    }
+  }
+
+  private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+    out.writeInt(values.length);
+    for (String v : values) {
+      out.writeUTF(v);
+    }
+  }
+
+  private static String[] readStrings(DataInputStream in) throws IOException {
+    String[] values = new String[in.readInt()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = in.readUTF();
+    }
+    return values;
+  }
+
+  private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+    out.writeInt(values.length);
+    for (int v : values) {
+      out.writeInt(v);
+    }
+  }
+
+  private static int[] readInts(DataInputStream in) throws IOException {
+    int[] values = new int[in.readInt()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = in.readInt();
+    }
+    return values;
+  }
+
+  //string to int id
+  private static final class Dictionary {
+    private final Map<String, Integer> ids = new LinkedHashMap<>();
+
+    int id(String s) {
+      return ids.computeIfAbsent(s, k -> ids.size());
+    }
+
+    String[] toArray() {
+      return ids.keySet().toArray(new String[0]);
+    }
+  }
+
+  //growable int array
+  private static final class IntList {
+    private int[] values = new int[1024];
+    private int size;
+
+    void add(int v) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, 2 * size);
+      }
+      values[size++] = v;
+    }
+
+    int size() {
+      return size;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+}
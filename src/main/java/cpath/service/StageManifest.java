@@ -0,0 +1,183 @@
+package cpath.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * What an intermediate data file (e.g. cleaned, converted, normalized) was made from:
+ * the input file content hash, the class and version of the tool (cleaner, converter, normalizer, ...),
+ * and the relevant settings. It is saved next to the output file ({@link #SUFFIX}),
+ * so that a data processing stage re-runs only when the current manifest does not match the saved one.
+ *
+ * @author rodche
+ */
+final class StageManifest {
+
+  static final String SUFFIX = ".manifest";
+
+  //input file hashes by the path, size and last modified time (not to read the same files over again)
+  private static final Map<String, String> HASHES = new ConcurrentHashMap<>();
+  private static final Map<Class<?>, String> VERSIONS = new ConcurrentHashMap<>();
+
+  private final SortedMap<String, String> entries = new TreeMap<>();
+
+  /**
+   * Adds the input file name and content hash.
+   *
+   * @param file input file
+   * @return this manifest
+   * @throws IOException when cannot read the file
+   */
+  StageManifest input(Path file) throws IOException {
+    entries.put("input", file.getFileName().toString());
+    entries.put("input.sha256", sha256(file));
+    return this;
+  }
+
+  /**
+   * Adds the tool class name and version (the jar implementation version and class file hash).
+   *
+   * @param role e.g. "cleaner", "converter"
+   * @param tool implementation class or null (none)
+   * @return this manifest
+   */
+  StageManifest tool(String role, Class<?> tool) {
+    entries.put(role, (tool != null) ? tool.getName() : "none");
+    entries.put(role + ".version", (tool != null) ? VERSIONS.computeIfAbsent(tool, StageManifest::version) : "none");
+    return this;
+  }
+
+  /**
+   * Adds a setting that affects the output.
+   *
+   * @param key name
+   * @param value value
+   * @return this manifest
+   */
+  StageManifest setting(String key, Object value) {
+    entries.put("setting." + key, String.valueOf(value));
+    return this;
+  }
+
+  /**
+   * Compares this manifest with the one saved for the output file.
+   *
+   * @param output data file
+   * @return null when the output is up-to-date; otherwise, why it's not (what's missing or changed)
+   */
+  String mismatch(Path output) {
+    final Path file = fileOf(output);
+    if (!Files.isRegularFile(output) || !Files.isRegularFile(file)) {
+      return "no output";
+    }
+    final Properties saved = new Properties();
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      saved.load(reader);
+    } catch (IOException e) {
+      return "bad manifest";
+    }
+    final Set<String> keys = new TreeSet<>(entries.keySet());
+    keys.addAll(saved.stringPropertyNames());
+    final String changed = keys.stream()
+      .filter(k -> !Objects.equals(entries.get(k), saved.getProperty(k)))
+      .collect(Collectors.joining(","));
+    return (changed.isEmpty()) ? null : "changed " + changed;
+  }
+
+  /**
+   * @param output data file
+   * @return true when the output exists and was made the same way
+   */
+  boolean matches(Path output) {
+    return mismatch(output) == null;
+  }
+
+  /**
+   * Saves the manifest for the output file (call after the output is complete).
+   *
+   * @param output data file
+   * @throws IOException when cannot write the manifest file
+   */
+  void save(Path output) throws IOException {
+    final Properties props = new Properties();
+    props.putAll(entries);
+    try (Writer writer = Files.newBufferedWriter(fileOf(output), StandardCharsets.UTF_8)) {
+      props.store(writer, output.getFileName().toString());
+    }
+  }
+
+  /**
+   * Deletes the output file and its manifest (before the stage re-runs or after it fails).
+   *
+   * @param output data file
+   * @throws IOException when cannot delete
+   */
+  static void invalidate(Path output) throws IOException {
+    Files.deleteIfExists(fileOf(output));
+    Files.deleteIfExists(output);
+  }
+
+  static Path fileOf(Path output) {
+    return output.resolveSibling(output.getFileName() + SUFFIX);
+  }
+
+  static String sha256(Path file) throws IOException {
+    final String key = file.toAbsolutePath() + "|" + Files.size(file) + "|" + Files.getLastModifiedTime(file).toMillis();
+    final String hash = HASHES.get(key);
+    if (hash != null) {
+      return hash;
+    }
+    final MessageDigest md = sha256();
+    try (InputStream is = Files.newInputStream(file)) {
+      final byte[] buf = new byte[1 << 16];
+      int n;
+      while ((n = is.read(buf)) > 0) {
+        md.update(buf, 0, n);
+      }
+    }
+    final String digest = HexFormat.of().formatHex(md.digest());
+    HASHES.put(key, digest);
+    return digest;
+  }
+
+  /*
+   * The tool version: its jar (package) implementation version, if any, and the class file hash
+   * (which changes with the code, e.g. of a cpath2 cleaner, whereas the cpath2 version might not).
+   */
+  private static String version(Class<?> tool) {
+    final String impl = (tool.getPackage() != null) ? tool.getPackage().getImplementationVersion() : null;
+    String hash = "-";
+    final String name = tool.getName();
+    try (InputStream is = tool.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class")) {
+      if (is != null) {
+        hash = HexFormat.of().formatHex(sha256().digest(is.readAllBytes()));
+      }
+    } catch (IOException e) {
+      //use the implementation version only
+    }
+    return ((impl != null) ? impl : "-") + ";" + hash;
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); //every JVM supports SHA-256
+    }
+  }
+
+  @Override
+  public String toString() {
+    return entries.toString();
+  }
+}
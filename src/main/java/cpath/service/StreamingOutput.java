@@ -0,0 +1,30 @@
+package cpath.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A query result that is converted on demand, directly to the given (e.g. HTTP response) stream,
+ * instead of being written to a temporary file first (see {@link BiopaxConverter#stream}).
+ *
+ * @author rodche
+ */
+@FunctionalInterface
+public interface StreamingOutput {
+
+  /**
+   * Writes (converts) the result to the output stream;
+   * the caller closes the stream, unless this method fails (then the output is incomplete).
+   *
+   * @param os output stream
+   * @throws IOException when there is an output stream writing error
+   */
+  void writeTo(OutputStream os) throws IOException;
+
+  /**
+   * @return the output size (bytes) if known in advance; otherwise -1
+   */
+  default long size() {
+    return -1;
+  }
+}
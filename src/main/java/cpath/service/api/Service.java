@@ -4,7 +4,10 @@ package cpath.service.api;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
+import cpath.service.Generation;
+import cpath.service.QueryMetrics;
 import cpath.service.Settings;
 import cpath.service.metadata.Datasource;
 import cpath.service.metadata.Index;
@@ -62,6 +65,19 @@ public interface Service {
   ServiceResponse search(String queryStr,
                          int page, Class<? extends BioPAXElement> biopaxClass, String[] dsources, String[] organisms);
 
+  /**
+   * Full-text search for the BioPAX elements, using the cursor instead of page no.
+   *
+   * @param queryStr search expression (a keyword or Lucene query string)
+   * @param cursor continuation token from the previous search response (null/empty - first page)
+   * @param biopaxClass biopax type (interface, such as Pathway, Complex)
+   * @param dsources URIs of data sources
+   * @param organisms URIs of organisms
+   * @return search/error response
+   */
+  ServiceResponse search(String queryStr,
+                         String cursor, Class<? extends BioPAXElement> biopaxClass, String[] dsources, String[] organisms);
+
   /**
    * Runs a neighborhood query using the given parameters
    * (returns a sub-model in the specified format,
@@ -150,9 +166,10 @@ public interface Service {
    * @param q query string (keywords or Lucene syntax query string)
    * @param organisms filter values (URIs, names, or taxonomy IDs)
    * @param datasources filter values (URIs, names)
+   * @param page hits page number (N&gt;=0); null - all the hits at once
    * @return top pathways or error response object
    */
-  ServiceResponse topPathways(String q, String[] organisms, String[] datasources);
+  ServiceResponse topPathways(String q, String[] organisms, String[] datasources, Integer page);
 
   /**
    * Maps multiple identifiers to primary IDs of given type.
@@ -165,6 +182,12 @@ public interface Service {
    */
   Set<String> map(Collection<String> fromIds, String toDb);
 
+  /**
+   * The id-mapping index, to save the mappings when building the warehouse
+   * (the queries use the read-only lookup, see {@link #map(Collection, String)}).
+   *
+   * @return writable id-mapping
+   */
   Mappings mapping();
 
   Metadata metadata();
@@ -186,6 +209,28 @@ public interface Service {
    */
   void initIndex(Model model, String indexLocation, boolean readOnly);
 
+  /**
+   * Loads the main model, blacklist and the full-text index in the background
+   * and then replaces the current ones (without interrupting the in-flight requests).
+   *
+   * @param indexLocation index directory (null - the configured one)
+   * @return the new generation when it's in use
+   * @throws IllegalStateException if the reload is in progress or there is not enough memory
+   */
+  CompletableFuture<Generation> reload(String indexLocation);
+
+  boolean isReloading();
+
+  /**
+   * The model, index, etc. currently in use (or captured by the calling thread).
+   */
+  Generation generation();
+
+  /**
+   * Captures the current generation for the calling thread until the lease is closed.
+   */
+  Generation.Lease pin();
+
   // Datasource and data processing methods
 
   /**
@@ -212,9 +257,22 @@ public interface Service {
    */
   void unzipData(Datasource datasource);
 
+  /**
+   * Given data source, lists the data files that its archive expands to,
+   * without expanding it (see {@link #unzipData(Datasource)}).
+   * @param datasource Datasource
+   * @return data file names mapped to whether the existing file was expanded from the same archive entry
+   */
+  Map<String, Boolean> checkData(Datasource datasource);
+
   void saveValidationReport(Validation v, String reportFile);
 
   Settings settings();
 
+  /**
+   * Query pipeline stage timers and result size metrics.
+   */
+  QueryMetrics metrics();
+
   void setSettings(Settings settings); //mainly for tests
 }
@@ -3,6 +3,8 @@ package cpath.service.jaxb;
 import cpath.service.api.OutputFormat;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import jakarta.xml.bind.annotation.*;
@@ -22,9 +24,14 @@ public class DataResponse extends ServiceResponse {
 	@XmlTransient
 	private Set<String> providers; //pathway data provider standard names (for logging/stats)
 	private OutputFormat format;
+	@XmlTransient
+	private String queryKind; //e.g. 'get', 'neighborhood' (for metrics and logging)
+	@XmlTransient
+	private Map<String, Long> stats; //query stage times (ms), result size, etc. (for logging)
 	
 	public DataResponse() {
 		providers = Collections.emptySet();
+		stats = new LinkedHashMap<>();
 	}
 
 	@XmlTransient
@@ -56,4 +63,20 @@ public class DataResponse extends ServiceResponse {
 	public void setFormat(OutputFormat format) {
 		this.format = format;
 	}
+
+	@XmlTransient
+	public String getQueryKind() {
+		return queryKind;
+	}
+	public void setQueryKind(String queryKind) {
+		this.queryKind = queryKind;
+	}
+
+	@XmlTransient
+	public Map<String, Long> getStats() {
+		return stats;
+	}
+	public void setStats(Map<String, Long> stats) {
+		this.stats = stats;
+	}
 }
@@ -14,6 +14,9 @@ import java.util.Set;
 public class SearchResponse extends ServiceResponse {
     @XmlAttribute
     private Long numHits;
+
+    @XmlAttribute
+    private Boolean numHitsExact; //false when numHits is a lower bound
     
     @XmlAttribute
     private Integer maxHitsPerPage;
@@ -28,6 +31,9 @@ public class SearchResponse extends ServiceResponse {
 
 	@XmlAttribute
 	private String version;
+
+	@XmlAttribute
+	private String nextCursor; //opaque token to get the next hits page (if there are more hits)
     
     @XmlTransient
     private Set<String> providers; //pathway data provider standard names (for logging/stats)
@@ -51,6 +57,19 @@ public class SearchResponse extends ServiceResponse {
 		this.version = version;
 	}
 
+	/**
+	 * An opaque token to get the next page of hits
+	 * (an alternative to the page number; efficient for deep pagination).
+	 * @return the token or null (there are no more hits)
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public void setNextCursor(String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+
 	public List<SearchHit> getSearchHit() {
         if (searchHit == null) {
             searchHit = new ArrayList<>();
@@ -74,6 +93,19 @@ public class SearchResponse extends ServiceResponse {
 		this.numHits = numHits;
 	}
 
+	/**
+	 * Whether {@link #getNumHits()} is the exact total number of hits
+	 * or a lower bound (when there are too many hits to count).
+	 * @return true/false or null (not applicable)
+	 */
+	public Boolean getNumHitsExact() {
+		return numHitsExact;
+	}
+
+	public void setNumHitsExact(Boolean numHitsExact) {
+		this.numHitsExact = numHitsExact;
+	}
+
 	public Integer getPageNo() {
 		return pageNo;
 	}
@@ -2,9 +2,12 @@ package cpath.service.metadata;
 
 import org.biopax.paxtools.model.BioPAXElement;
 
+import cpath.service.jaxb.SearchHit;
 import cpath.service.jaxb.SearchResponse;
 import org.biopax.paxtools.model.Model;
 
+import java.util.function.Consumer;
+
 public interface Index {
 	// search fields
 	String FIELD_URI = "uri";
@@ -21,6 +24,8 @@ public interface Index {
 	//index data source names, but only URIs are stored in the index
 	String FIELD_DATASOURCE = "datasource";
 	String FIELD_TYPE = "type";
+	//"true" for top pathways (not a component of other pathways, not controlled, non-trivial); indexed, not stored
+	String FIELD_TOP_PATHWAY = "toppathway";
 
 	//Default fields to use with the MultiFieldQueryParser;
 	//one can still search in other fields directly, like - pathway:some_keywords datasource:"pid"
@@ -33,6 +38,24 @@ public interface Index {
 
 	void setMaxHitsPerPage(int maxHitsPerPage);
 	int getMaxHitsPerPage();
+
+	/**
+	* Sets the max. number of hits to count exactly; when a query matches more documents,
+	* the total hits number in the search response is a lower bound
+	* (which allows skipping non-competitive documents).
+	*
+	* @param hitsCountThreshold threshold; 0 or less - always count exactly
+	*/
+	void setHitsCountThreshold(int hitsCountThreshold);
+	int getHitsCountThreshold();
+
+	/**
+	* Sets the number of worker threads that build the documents in {@link #save(Model)}.
+	*
+	* @param indexThreads no. threads; 1 or less - sequential indexing
+	*/
+	void setIndexThreads(int indexThreads);
+	int getIndexThreads();
 	
 	/**
 	* Full-text search for an object.
@@ -46,6 +69,46 @@ public interface Index {
     */
 	SearchResponse search(String query, int page, Class<? extends BioPAXElement> type, String[] datasources, String[] organisms);
 
+	/**
+	* Full-text search for an object, continuing from the last hit of the previous page.
+	*
+  * @param query String (keywords or Lucene query string)
+	* @param cursor an opaque token from the previous response ({@link SearchResponse#getNextCursor()});
+	*               null or empty - to get the first page
+	* @param type - filter by class
+	* @param datasources  - filter by datasource
+	* @param organisms - filter by organism
+	* @return ordered list of hits (by score), with the next page cursor if there might be more hits
+	* @throws IllegalArgumentException when the cursor is invalid or expired (the index has changed)
+    */
+	SearchResponse search(String query, String cursor, Class<? extends BioPAXElement> type, String[] datasources, String[] organisms);
+
+	/**
+	* Visits all the hits (in the index order; no scoring, sorting or pagination),
+	* e.g. to collect the URIs.
+	*
+	* @param query String (keywords or Lucene query string)
+	* @param type - filter by class
+	* @param datasources  - filter by datasource
+	* @param organisms - filter by organism
+	* @param action to perform for each hit
+	*/
+	void forEachHit(String query, Class<? extends BioPAXElement> type, String[] datasources, String[] organisms,
+									Consumer<SearchHit> action);
+
+	/**
+	* Full-text search for the "top" pathways, i.e. ones that are neither components
+	* of other pathways nor controlled by any process, excluding pathways with less than
+	* three processes unless there is a non-trivial sub-pathway.
+	*
+	* @param query String (keywords or Lucene query string)
+	* @param page hits page number; or -1 to get all the hits at once
+	* @param datasources  - filter by datasource
+	* @param organisms - filter by organism
+	* @return hits
+	*/
+	SearchResponse topPathways(String query, int page, String[] datasources, String[] organisms);
+
 	void save(BioPAXElement bpe);
 
 	void save(Model model);
@@ -0,0 +1,41 @@
+package cpath.service.metadata;
+
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * BIO ID-mapping lookup (read-only).
+ *
+ * @author rodche
+ */
+public interface MappingLookup {
+
+	List<Mapping> findByDstDbIgnoreCaseAndDstId(String dstDb, String dstId);
+
+	List<Mapping> findBySrcIdInAndDstDbIgnoreCase(List<String> srcIds, String dstDb);
+
+	/**
+	 * Batch id-mapping lookup.
+	 *
+	 * @param srcIds source identifiers
+	 * @param dstDb target database name (case-insensitive)
+	 * @return sorted target identifiers
+	 */
+	default Set<String> findDstIds(Collection<String> srcIds, String dstDb) {
+		Set<String> dstIds = new TreeSet<>();
+		findBySrcIdInAndDstDbIgnoreCase(List.copyOf(srcIds), dstDb).forEach(m -> dstIds.add(m.getDstId()));
+		return dstIds;
+	}
+
+	/**
+	 * Iterates over all the id-mapping entries.
+	 *
+	 * @param action what to do with each entry
+	 */
+	void forEachMapping(Consumer<Mapping> action);
+
+}
@@ -1,24 +1,18 @@
 package cpath.service.metadata;
 
 
-import java.util.List;
-
 /**
- * BIO ID-mapping.
+ * BIO ID-mapping (the index that stores the mappings).
  * 
  * @author rodche
  */
-public interface Mappings {
+public interface Mappings extends MappingLookup {
 	String FIELD_SRCDB = "srcDb";
 	String FIELD_SRCID = "srcId";
 	String FIELD_DSTDB = "dstDb";
 	String FIELD_DSTID = "dstId";
 	String FIELD_DOCID = "docId";
 
-	List<Mapping> findByDstDbIgnoreCaseAndDstId(String dstDb, String dstId);
-
-	List<Mapping> findBySrcIdInAndDstDbIgnoreCase(List<String> srcIds, String dstDb);
-
 	void save(Mapping mapping);
 
 	void commit();
@@ -0,0 +1,83 @@
+package cpath.web;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.TreeMap;
+
+import io.swagger.v3.oas.annotations.Hidden;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.*;
+
+import cpath.service.Generation;
+
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+/**
+ * Web service administration (disabled unless cpath2.admin-token is set).
+ *
+ * @author rodche
+ */
+@Profile("web")
+@Hidden
+@RestController
+public class AdminController extends BasicController {
+
+  private static final Logger log = LoggerFactory.getLogger(AdminController.class);
+
+  static final String TOKEN_HEADER = "X-Admin-Token";
+
+  /**
+   * Starts loading the main model, blacklist and index in the background;
+   * the current ones keep serving until the new ones are ready.
+   *
+   * @param token admin token (must match the cpath2.admin-token property)
+   * @param index optional index directory (default - the configured one)
+   * @return 202 - the reload has started, 409 - in progress or not enough memory, 403 - not allowed
+   */
+  @PostMapping(path = "/admin/reload", produces = APPLICATION_JSON_VALUE)
+  public ResponseEntity<Map<String, Object>> reload(@RequestHeader(name = TOKEN_HEADER, required = false) String token,
+                                                    @RequestParam(required = false) String index) {
+    Map<String, Object> body = status();
+    if (!authorized(token)) {
+      body.put("error", "forbidden");
+      return ResponseEntity.status(HttpStatus.FORBIDDEN).body(body);
+    }
+    try {
+      service.reload(index);
+      log.info("reload requested; index: " + ((index != null) ? index : "default"));
+      body.put("reloading", true);
+      return ResponseEntity.status(HttpStatus.ACCEPTED).body(body);
+    } catch (IllegalStateException e) {
+      body.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.CONFLICT).body(body);
+    }
+  }
+
+  @GetMapping(path = "/admin/reload", produces = APPLICATION_JSON_VALUE)
+  public ResponseEntity<Map<String, Object>> reloadStatus(@RequestHeader(name = TOKEN_HEADER, required = false) String token) {
+    if (!authorized(token)) {
+      return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+    }
+    return ResponseEntity.ok(status());
+  }
+
+  private Map<String, Object> status() {
+    Map<String, Object> status = new TreeMap<>();
+    Generation g = service.generation();
+    status.put("generation", g.getId());
+    status.put("reloading", service.isReloading());
+    return status;
+  }
+
+  private boolean authorized(String token) {
+    String expected = service.settings().getAdminToken();
+    return StringUtils.hasText(expected) && token != null
+      && MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+  }
+}
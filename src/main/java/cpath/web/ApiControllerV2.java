@@ -76,7 +76,8 @@ public class ApiControllerV2 extends BasicController {
         errorFromBindingResult(bindingResult)), request, response);
       return null;
     } else {
-      ServiceResponse results = service.topPathways(args.getQ(), args.getOrganism(), args.getDatasource());
+      ServiceResponse results = service.topPathways(args.getQ(), args.getOrganism(), args.getDatasource(),
+        args.getPage());
       if (results instanceof ErrorResponse) {
         errorResponse(args, (ErrorResponse) results, request, response);
         return null;
@@ -84,8 +85,7 @@ public class ApiControllerV2 extends BasicController {
         SearchResponse hits = (SearchResponse) results;
         // log/track data access events
         audit(request, args, hits.getProviders(), null);
-        hits.setVersion(service.settings().getVersion());
-        return hits;
+        return hits; //the version is already set (the response can be a shared cached one)
       }
     }
   }
@@ -154,8 +154,9 @@ public class ApiControllerV2 extends BasicController {
         errorFromBindingResult(bindingResult)), request, response);
     } else {
       // get results from the service
-      ServiceResponse results = service.search(args.getQ(), args.getPage(), args.getBiopaxClass(),
-        args.getDatasource(), args.getOrganism());
+      ServiceResponse results = (StringUtils.isNotBlank(args.getCursor()))
+        ? service.search(args.getQ(), args.getCursor(), args.getBiopaxClass(), args.getDatasource(), args.getOrganism())
+        : service.search(args.getQ(), args.getPage(), args.getBiopaxClass(), args.getDatasource(), args.getOrganism());
 
       if(results instanceof ErrorResponse) {
         errorResponse(args, (ErrorResponse) results, request, response);
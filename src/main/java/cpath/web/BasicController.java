@@ -4,10 +4,11 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.OutputStream;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -18,11 +19,15 @@ import static cpath.service.api.Status.*;
 
 import cpath.service.api.Service;
 import cpath.service.ErrorResponse;
+import cpath.service.QueryMetrics;
+import cpath.service.ResultBuffer;
+import cpath.service.StreamingOutput;
 import cpath.service.api.OutputFormat;
 import cpath.web.args.ServiceQuery;
 import cpath.service.jaxb.*;
 
 import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.biopax.paxtools.io.SimpleIOHandler;
 import org.biopax.paxtools.model.BioPAXLevel;
@@ -30,6 +35,7 @@ import org.biopax.paxtools.model.Model;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.util.CollectionUtils;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
@@ -43,6 +49,9 @@ public abstract class BasicController
 {
   private static final Logger log = LoggerFactory.getLogger(BasicController.class);
 
+  //response buffer size for the streamed results (an error that occurs earlier can still be reported normally)
+  private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
   protected Service service;
 
   protected ObjectMapper jsonObjectMapper = new ObjectMapper();
@@ -110,30 +119,41 @@ public abstract class BasicController
     } else if (result instanceof DataResponse) {
       final DataResponse dataResponse = (DataResponse) result;
 
-      // log/track one data access event for each data provider listed in the result
-      audit(request, command, dataResponse.getProviders(), null);
-
-      if (dataResponse.getData() instanceof Path) {
-        //get the temp file
-        Path resultFile = (Path) dataResponse.getData();
+      if (dataResponse.getData() instanceof ResultBuffer) {
+        //get the converted data (in memory or a temp file)
+        ResultBuffer buffer = (ResultBuffer) dataResponse.getData();
         try {
           response.setContentType(String
             .format("%s; %s", dataResponse.getFormat().getMediaType(), "charset=UTF-8"));
-          long size = Files.size(resultFile);
+          long size = buffer.size();
+          final long start = System.nanoTime();
           if (size > 13) { // a hack to skip for trivial/empty results
-            Files.copy(resultFile, response.getOutputStream());
+            response.setContentLengthLong(size);
+            buffer.writeTo(response.getOutputStream());
           }
+          QueryMetrics metrics = service.metrics();
+          if (metrics != null) {
+            metrics.record(dataResponse.getQueryKind(), QueryMetrics.WRITE, dataResponse.getFormat(),
+              dataResponse.getStats(), System.nanoTime() - start);
+          }
+          // log/track one data access event for each data provider listed in the result
+          audit(request, command, dataResponse.getProviders(), null, dataResponse.getStats());
         } catch (IOException e) {
-          String msg = String.format("Failed to process the (temporary) result file %s; %s.", resultFile, e);
-          errorResponse(command, new ErrorResponse(INTERNAL_ERROR, msg), request, response);
-        } finally {
-          try {
-            Files.delete(resultFile);
-          } catch (Exception e) {
-            log.error(e.toString());
+          String msg = String.format("Failed to process the result %s; %s.", buffer, e);
+          if (!response.isCommitted()) {
+            errorResponse(command, new ErrorResponse(INTERNAL_ERROR, msg), request, response);
+          } else { //the client got a part of the result; log the failed write with the stats
+            log.error(msg);
+            audit(request, command, dataResponse.getProviders(), new ErrorResponse(INTERNAL_ERROR, msg),
+              dataResponse.getStats());
           }
+        } finally {
+          buffer.release();
         }
+      } else if (dataResponse.getData() instanceof StreamingOutput) {
+        streamResponse(command, dataResponse, request, response);
       } else if (dataResponse.isEmpty()) {
+        audit(request, command, dataResponse.getProviders(), null, dataResponse.getStats());
         //return empty string or trivial valid RDF/XML
         response.setContentType(dataResponse.getFormat().getMediaType());
         try {
@@ -150,7 +170,7 @@ public abstract class BasicController
           errorResponse(command, new ErrorResponse(INTERNAL_ERROR, msg), request, response);
         }
       } else { //it's probably a bug -
-        String msg = String.format("BUG: DataResponse.data has value: %s, %s instead of a Path or null.",
+        String msg = String.format("BUG: DataResponse.data has value: %s, %s instead of a ResultBuffer, StreamingOutput or null.",
           dataResponse.getData().getClass().getSimpleName(), dataResponse);
         errorResponse(command, new ErrorResponse(INTERNAL_ERROR, msg), request, response);
       }
@@ -161,6 +181,67 @@ public abstract class BasicController
   }
 
 
+  /*
+   * Converts the query result directly to the HTTP response output stream
+   * (chunked transfer; gzip-compressed on the fly when the client accepts that).
+   * If the conversion fails after some data has been sent already, the connection is aborted
+   * (by re-throwing the exception) so that the client does not take the partial result for a complete one.
+   */
+  private void streamResponse(ServiceQuery command,
+                              DataResponse dataResponse,
+                              HttpServletRequest request,
+                              HttpServletResponse response)
+  {
+    final StreamingOutput output = (StreamingOutput) dataResponse.getData();
+    final boolean gzip = acceptsGzip(request);
+    response.setContentType(String
+      .format("%s; %s", dataResponse.getFormat().getMediaType(), "charset=UTF-8"));
+    response.setBufferSize(STREAM_BUFFER_SIZE);
+    response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    if (gzip) {
+      response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+    } else if (output.size() >= 0) {
+      response.setContentLengthLong(output.size());
+    }
+
+    final long start = System.nanoTime();
+    try {
+      OutputStream os = response.getOutputStream();
+      if (gzip) {
+        os = new GZIPOutputStream(os, STREAM_BUFFER_SIZE);
+      }
+      CountingOutputStream counter = new CountingOutputStream(os);
+      output.writeTo(counter);
+      counter.close(); //finishes the gzip stream, if any (ok if already closed by the converter)
+      QueryMetrics metrics = service.metrics();
+      if (metrics != null) {
+        //conversion and writing happen at once here
+        metrics.record(dataResponse.getQueryKind(), QueryMetrics.WRITE, dataResponse.getFormat(),
+          dataResponse.getStats(), System.nanoTime() - start);
+        metrics.size(dataResponse.getQueryKind(), QueryMetrics.BYTES, dataResponse.getFormat(),
+          dataResponse.getStats(), counter.getByteCount());
+      }
+      audit(request, command, dataResponse.getProviders(), null, dataResponse.getStats());
+    } catch (Exception e) {
+      if (!response.isCommitted()) {
+        response.reset(); //drops the partial output and headers (e.g. Content-Encoding)
+        String msg = String.format("Failed to convert the result to %s; %s.", dataResponse.getFormat(), e);
+        errorResponse(command, new ErrorResponse(INTERNAL_ERROR, msg), request, response);
+      } else {
+        ErrorResponse error = new ErrorResponse(INTERNAL_ERROR,
+          String.format("Failed streaming the result (incomplete); %s.", e));
+        audit(request, command, dataResponse.getProviders(), error, dataResponse.getStats());
+        throw new IllegalStateException("Aborted the incomplete response", e);
+      }
+    }
+  }
+
+  private static boolean acceptsGzip(HttpServletRequest request) {
+    String accept = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+    return accept != null && accept.toLowerCase().contains("gzip");
+  }
+
+
   /*
    * Resizes the image.
    */
@@ -188,6 +269,15 @@ public abstract class BasicController
   }
 
   void audit(HttpServletRequest request, ServiceQuery command, Set<String> providers, ErrorResponse err)
+  {
+    audit(request, command, providers, err, null);
+  }
+
+  /*
+   * Logs the query with optional stats, such as the stage times (ms), no. result elements and bytes.
+   */
+  void audit(HttpServletRequest request, ServiceQuery command, Set<String> providers, ErrorResponse err,
+             Map<String, Long> stats)
   {
     ObjectNode root = jsonObjectMapper.createObjectNode();
 
@@ -204,6 +294,10 @@ public abstract class BasicController
       root.put("pro", jsonObjectMapper.valueToTree(providers));
     }
 
+    if (!CollectionUtils.isEmpty(stats)) {
+      root.set("stats", jsonObjectMapper.valueToTree(stats));
+    }
+
     log.info(root.toString());
   }
 
@@ -0,0 +1,50 @@
+package cpath.web;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import cpath.service.Generation;
+import cpath.service.api.Service;
+
+/**
+ * Captures the current model/index generation when a request comes in
+ * and lets it go when the response is complete, so that the request is served
+ * by the same data even when the model and index get reloaded meanwhile
+ * (and the replaced ones are not released until the request is done).
+ *
+ * @author rodche
+ */
+@Profile("web")
+@Component
+public class GenerationInterceptor implements HandlerInterceptor {
+
+  private static final String LEASE_ATTRIBUTE = GenerationInterceptor.class.getName() + ".lease";
+
+  private final Service service;
+
+  @Autowired
+  public GenerationInterceptor(Service service) {
+    this.service = service;
+  }
+
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+    request.setAttribute(LEASE_ATTRIBUTE, service.pin());
+    return true;
+  }
+
+  @Override
+  public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                              Exception ex) {
+    Object lease = request.getAttribute(LEASE_ATTRIBUTE);
+    if (lease instanceof Generation.Lease) {
+      request.removeAttribute(LEASE_ATTRIBUTE);
+      ((Generation.Lease) lease).close();
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package cpath.web;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringBootConfiguration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.web.servlet.config.annotation.*;
@@ -11,6 +12,15 @@ import org.springframework.web.servlet.view.JstlView;
 @Profile({"web"})
 public class WebApplication implements WebMvcConfigurer
 {
+  @Autowired
+  private GenerationInterceptor generationInterceptor;
+
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    //each request uses the same model/index generation till the end (see Service.reload)
+    registry.addInterceptor(generationInterceptor).excludePathPatterns("/admin/**");
+  }
+
   @Override
   public void addResourceHandlers(ResourceHandlerRegistry registry) {
     registry.addResourceHandler("/**")
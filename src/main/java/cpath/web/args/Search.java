@@ -5,6 +5,7 @@ import javax.validation.constraints.NotBlank;
 
 import cpath.web.args.binding.BiopaxTypeEditor;
 import io.swagger.v3.oas.annotations.media.Schema;
+import org.apache.commons.lang3.StringUtils;
 import org.biopax.paxtools.model.BioPAXElement;
 
 import java.util.Arrays;
@@ -79,6 +80,15 @@ public class Search extends ServiceQuery {
   )
   private Integer page;
 
+  @Schema(
+    description = """
+        Pagination: an opaque token, <var>nextCursor</var>, from the previous search response
+        to get the next page of hits; an alternative to the <var>page</var> number (which is then ignored),
+        efficient for deep pagination.
+        """
+  )
+  private String cursor;
+
   public Search() {
     page = 0;
   }
@@ -126,9 +136,19 @@ public class Search extends ServiceQuery {
     this.page = page;
   }
 
+  public String getCursor() {
+    return cursor;
+  }
+
+  public void setCursor(String cursor) {
+    this.cursor = cursor;
+  }
+
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder(super.toString()).append(" q:").append(q).append("; p:").append(page);
+    if (StringUtils.isNotBlank(cursor))
+      sb.append("; c:").append(cursor);
     if (biopaxClass != null)
       sb.append("; t:").append(biopaxClass.getSimpleName());
     if (organism != null && organism.length > 0)
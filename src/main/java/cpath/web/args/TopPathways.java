@@ -2,6 +2,7 @@ package cpath.web.args;
 
 import io.swagger.v3.oas.annotations.media.Schema;
 
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
 import java.util.Arrays;
 
@@ -28,6 +29,13 @@ public class TopPathways extends ServiceQuery {
   )
   private String[] datasource;
 
+  @Min(0)
+  @Schema(
+    description = "Pagination: the result page number, N&gt;=0; default - all the top pathways at once.",
+    example = "0"
+  )
+  private Integer page;
+
   public TopPathways() {
   }
 
@@ -55,6 +63,14 @@ public class TopPathways extends ServiceQuery {
     this.datasource = datasource;
   }
 
+  public Integer getPage() {
+    return page;
+  }
+
+  public void setPage(Integer page) {
+    this.page = page;
+  }
+
 
   @Override
   public String toString() {
@@ -65,6 +81,8 @@ public class TopPathways extends ServiceQuery {
       sb.append("; org:").append(Arrays.toString(organism));
     if (datasource != null && datasource.length > 0)
       sb.append("; dts:").append(Arrays.toString(datasource));
+    if (page != null)
+      sb.append("; p:").append(page);
     return sb.toString();
   }
 
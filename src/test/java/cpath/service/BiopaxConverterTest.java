@@ -5,17 +5,26 @@ import static org.junit.jupiter.api.Assertions.*;
 import cpath.service.api.OutputFormat;
 import cpath.service.jaxb.DataResponse;
 import cpath.service.jaxb.ServiceResponse;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
 import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.io.jsonld.JsonldBiopaxConverter;
+import org.biopax.paxtools.model.BioPAXElement;
 import org.biopax.paxtools.model.BioPAXLevel;
 import org.biopax.paxtools.model.Model;
 import org.biopax.paxtools.model.level3.Pathway;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 
 public class BiopaxConverterTest {
@@ -39,8 +48,9 @@ public class BiopaxConverterTest {
 
         assertTrue(sr instanceof DataResponse && !sr.isEmpty());
 
-        String resf = ((DataResponse)sr).getData().toString(); //must be a temp. file name
-        String res = Files.readString(Paths.get(resf));
+        ResultBuffer data = (ResultBuffer) ((DataResponse)sr).getData();
+        String res = new String(data.toByteArray(), StandardCharsets.UTF_8);
+        data.release();
 
         Assertions.assertAll(
             () -> Assertions.assertThrows(IllegalArgumentException.class, () -> URI.create("http://")), //bad URI
@@ -53,4 +63,55 @@ public class BiopaxConverterTest {
         );
     }
 
+    @Test
+    public final void testJsonldSameGraph() throws IOException {
+        Model m = new SimpleIOHandler().convertFromOWL(getClass().getResourceAsStream("/demo-pathway.owl"));
+        //the previous, two-step (via RDF/XML) conversion
+        ByteArrayOutputStream owl = new ByteArrayOutputStream();
+        new SimpleIOHandler().convertToOWL(m, owl);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new JsonldBiopaxConverter().convertToJsonld(new ByteArrayInputStream(owl.toByteArray()), expected);
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        JsonldWriter.write(m, actual);
+
+        Set<String> uris = m.getObjects().stream().map(BioPAXElement::getUri).collect(Collectors.toSet());
+        Set<String> triples = triples(expected, uris);
+        assertFalse(triples.isEmpty());
+        assertEquals(triples, triples(actual, uris));
+    }
+
+    //the BioPAX objects' statements (the literals are compared by the lexical form)
+    private static Set<String> triples(ByteArrayOutputStream jsonld, Set<String> subjects) {
+        org.apache.jena.rdf.model.Model g = ModelFactory.createDefaultModel();
+        RDFDataMgr.read(g, new ByteArrayInputStream(jsonld.toByteArray()), Lang.JSONLD);
+        return g.listStatements().toList().stream()
+            .filter(s -> subjects.contains(s.getSubject().getURI()))
+            .map(s -> s.getSubject().getURI() + " " + s.getPredicate().getURI() + " "
+                + (s.getObject().isLiteral() ? s.getObject().asLiteral().getLexicalForm() : s.getObject().toString()))
+            .collect(Collectors.toSet());
+    }
+
+    @Test
+    public final void testStream() throws IOException {
+        Model m = new SimpleIOHandler().convertFromOWL(getClass().getResourceAsStream("/demo-pathway.owl"));
+        BiopaxConverter converter = new BiopaxConverter(null);
+        for(OutputFormat format : new OutputFormat[]{OutputFormat.SIF, OutputFormat.GSEA, OutputFormat.JSONLD}) {
+            DataResponse streamed = (DataResponse) converter.stream(m, format, new HashMap<>());
+            assertTrue(streamed.getData() instanceof StreamingOutput);
+            assertFalse(streamed.getProviders().isEmpty());
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ((StreamingOutput) streamed.getData()).writeTo(bos);
+
+            DataResponse converted = (DataResponse) converter.convert(m, format, new HashMap<>());
+            ResultBuffer data = (ResultBuffer) converted.getData();
+            //same lines (the order of SIF/GSEA rows is not guaranteed)
+            assertEquals(new String(data.toByteArray(), StandardCharsets.UTF_8).lines().sorted().toList(),
+                bos.toString("UTF-8").lines().sorted().toList(), format.toString());
+            data.release();
+        }
+        //empty result - no data
+        assertTrue(converter.stream(null, OutputFormat.SIF, null).isEmpty());
+    }
+
 }
@@ -0,0 +1,213 @@
+package cpath.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.BioSource;
+import org.biopax.paxtools.model.level3.Entity;
+import org.biopax.paxtools.model.level3.PhysicalEntity;
+import org.biopax.paxtools.model.level3.Provenance;
+import org.biopax.paxtools.model.level3.SequenceEntityReference;
+import org.biopax.paxtools.model.level3.SmallMolecule;
+import org.biopax.paxtools.model.level3.UnificationXref;
+import org.biopax.paxtools.model.level3.Xref;
+import org.biopax.paxtools.pattern.util.Blacklist;
+import org.biopax.paxtools.query.QueryExecuter;
+import org.biopax.paxtools.query.algorithm.Direction;
+import org.biopax.paxtools.query.algorithm.LimitType;
+import org.biopax.paxtools.query.wrapperL3.DataSourceFilter;
+import org.biopax.paxtools.query.wrapperL3.OrganismFilter;
+import org.biopax.paxtools.query.wrapperL3.UbiqueFilter;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class CompactGraphTest {
+
+  static Model model;
+  static Blacklist blacklist;
+  static CompactGraph graph;
+  static List<PhysicalEntity> entities;
+
+  @BeforeAll
+  public static void init() {
+    model = new SimpleIOHandler().convertFromOWL(CompactGraphTest.class.getResourceAsStream("/NetPath_7.owl"));
+    //make a couple of small molecules ubiquitous
+    blacklist = new Blacklist();
+    model.getObjects(SmallMolecule.class).stream().map(BioPAXElement::getUri).sorted().limit(2)
+      .forEach(uri -> blacklist.addEntry(uri, 1, null));
+    graph = CompactGraph.build(model, blacklist);
+    entities = model.getObjects(PhysicalEntity.class).stream()
+      .filter(pe -> !pe.getParticipantOf().isEmpty())
+      .sorted(Comparator.comparing(BioPAXElement::getUri))
+      .limit(12).collect(Collectors.toList());
+  }
+
+  @Test
+  public void neighborhood() {
+    for (PhysicalEntity pe : entities) {
+      Set<Set<BioPAXElement>> seeds = groups(pe);
+      for (Direction dir : Direction.values()) {
+        for (int limit = 1; limit <= 2; limit++) {
+          assertEquals(
+            uris(QueryExecuter.runNeighborhoodMultiSet(seeds, model, limit, dir, ubique())),
+            uris(graph.neighborhood(seeds, limit, dir)), pe.getUri() + " " + dir + " " + limit);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void pathsBetween() {
+    for (int i = 1; i < entities.size(); i++) {
+      Set<Set<BioPAXElement>> seeds = groups(entities.get(i - 1), entities.get(i));
+      for (int limit = 1; limit <= 3; limit++) {
+        assertEquals(
+          uris(QueryExecuter.runPathsBetweenMultiSet(seeds, model, limit, ubique())),
+          uris(graph.pathsBetween(seeds, limit)), seeds + " " + limit);
+      }
+    }
+  }
+
+  @Test
+  public void pathsFromTo() {
+    for (int i = 1; i < entities.size(); i++) {
+      Set<Set<BioPAXElement>> source = groups(entities.get(i - 1));
+      Set<Set<BioPAXElement>> target = groups(entities.get(i));
+      for (LimitType type : LimitType.values()) {
+        assertEquals(
+          uris(QueryExecuter.runPathsFromToMultiSet(source, target, model, type, 2, ubique())),
+          uris(graph.pathsFromTo(source, target, type, 2)), source + " " + target + " " + type);
+      }
+    }
+  }
+
+  @Test
+  public void commonStream() {
+    for (int i = 1; i < entities.size(); i++) {
+      Set<Set<BioPAXElement>> seeds = groups(entities.get(i - 1), entities.get(i));
+      for (Direction dir : new Direction[]{Direction.UPSTREAM, Direction.DOWNSTREAM}) {
+        assertEquals(
+          uris(QueryExecuter.runCommonStreamWithPOIMultiSet(seeds, model, dir, 2, ubique())),
+          uris(graph.commonStreamWithPOI(seeds, dir, 2)), seeds + " " + dir);
+      }
+    }
+  }
+
+  @Test
+  public void filters() {
+    Provenance provenance = model.getObjects(Provenance.class).iterator().next();
+    BioSource organism = model.getObjects(BioSource.class).iterator().next();
+    String taxonomyId = organism.getXref().stream().filter(x -> x instanceof UnificationXref)
+      .map(Xref::getId).findFirst().orElseThrow();
+    String[] datasources = {provenance.getName().iterator().next(), "foo"};
+    String[] organisms = {taxonomyId};
+    String[] organismNames = {organism.getName().iterator().next()};
+    String[] none = {"foo"};
+    String[] uris = {provenance.getUri()}; //not a name
+    for (PhysicalEntity pe : entities) {
+      Set<Set<BioPAXElement>> seeds = groups(pe);
+      assertEquals(
+        uris(QueryExecuter.runNeighborhoodMultiSet(seeds, model, 2, Direction.BOTHSTREAM,
+          ubique(), new DataSourceFilter(datasources))),
+        uris(graph.neighborhood(seeds, 2, Direction.BOTHSTREAM, null, datasources)), pe.getUri());
+      assertEquals(
+        uris(QueryExecuter.runNeighborhoodMultiSet(seeds, model, 2, Direction.BOTHSTREAM,
+          ubique(), new OrganismFilter(organisms))),
+        uris(graph.neighborhood(seeds, 2, Direction.BOTHSTREAM, organisms, null)), pe.getUri());
+      assertEquals(
+        uris(QueryExecuter.runNeighborhoodMultiSet(seeds, model, 2, Direction.BOTHSTREAM,
+          ubique(), new OrganismFilter(organismNames))),
+        uris(graph.neighborhood(seeds, 2, Direction.BOTHSTREAM, organismNames, null)), pe.getUri());
+      assertEquals(
+        uris(QueryExecuter.runNeighborhoodMultiSet(seeds, model, 2, Direction.BOTHSTREAM,
+          ubique(), new DataSourceFilter(none))),
+        uris(graph.neighborhood(seeds, 2, Direction.BOTHSTREAM, null, none)), pe.getUri());
+      assertEquals(
+        uris(QueryExecuter.runNeighborhoodMultiSet(seeds, model, 2, Direction.BOTHSTREAM,
+          ubique(), new DataSourceFilter(uris))),
+        uris(graph.neighborhood(seeds, 2, Direction.BOTHSTREAM, null, uris)), pe.getUri());
+      assertEquals(
+        uris(QueryExecuter.runNeighborhoodMultiSet(seeds, model, 2, Direction.UNDIRECTED,
+          ubique(), new OrganismFilter(organisms), new DataSourceFilter(datasources))),
+        uris(graph.neighborhood(seeds, 2, Direction.UNDIRECTED, organisms, datasources)), pe.getUri());
+    }
+    //the combined filters are reused
+    assertSame(graph.filter(organisms, datasources), graph.filter(organisms, datasources));
+    assertNull(graph.filter(null, new String[0]));
+  }
+
+  @Test
+  public void filtersTwoDatasources() {
+    Model m = new SimpleIOHandler().convertFromOWL(CompactGraphTest.class.getResourceAsStream("/NetPath_7.owl"));
+    //move every other entity to another data source, and every other sequence entity reference - to another organism
+    Provenance other = m.addNew(Provenance.class, "http://example.org/other");
+    other.addName("Other");
+    BioSource mouse = m.addNew(BioSource.class, "http://example.org/mouse");
+    mouse.addName("Mus musculus");
+    UnificationXref taxon = m.addNew(UnificationXref.class, "http://example.org/taxonomy_10090");
+    taxon.setDb("taxonomy");
+    taxon.setId("10090");
+    mouse.addXref(taxon);
+    List<Entity> ents = m.getObjects(Entity.class).stream()
+      .sorted(Comparator.comparing(BioPAXElement::getUri)).collect(Collectors.toList());
+    for (int i = 1; i < ents.size(); i += 2) {
+      Entity e = ents.get(i);
+      new HashSet<>(e.getDataSource()).forEach(e::removeDataSource);
+      e.addDataSource(other);
+    }
+    List<SequenceEntityReference> refs = m.getObjects(SequenceEntityReference.class).stream()
+      .sorted(Comparator.comparing(BioPAXElement::getUri)).collect(Collectors.toList());
+    for (int i = 1; i < refs.size(); i += 2) {
+      refs.get(i).setOrganism(mouse);
+    }
+    CompactGraph g = CompactGraph.build(m, blacklist);
+
+    String[] datasources = {"other"};
+    String[] organisms = {"10090"};
+    boolean filtered = false;
+    List<PhysicalEntity> pes = m.getObjects(PhysicalEntity.class).stream()
+      .filter(pe -> !pe.getParticipantOf().isEmpty())
+      .sorted(Comparator.comparing(BioPAXElement::getUri))
+      .limit(12).collect(Collectors.toList());
+    for (PhysicalEntity pe : pes) {
+      Set<Set<BioPAXElement>> seeds = groups(pe);
+      for (Direction dir : Direction.values()) {
+        Set<String> expected = uris(QueryExecuter.runNeighborhoodMultiSet(seeds, m, 2, dir,
+          ubique(), new DataSourceFilter(datasources), new OrganismFilter(organisms)));
+        assertEquals(expected, uris(g.neighborhood(seeds, 2, dir, organisms, datasources)), pe.getUri() + " " + dir);
+        assertEquals(
+          uris(QueryExecuter.runNeighborhoodMultiSet(seeds, m, 2, dir, ubique(), new DataSourceFilter(datasources))),
+          uris(g.neighborhood(seeds, 2, dir, null, datasources)), pe.getUri() + " " + dir);
+        filtered |= !expected.equals(uris(QueryExecuter.runNeighborhoodMultiSet(seeds, m, 2, dir, ubique())));
+      }
+    }
+    for (int i = 1; i < pes.size(); i++) {
+      Set<Set<BioPAXElement>> seeds = groups(pes.get(i - 1), pes.get(i));
+      assertEquals(
+        uris(QueryExecuter.runPathsBetweenMultiSet(seeds, m, 3, ubique(), new DataSourceFilter(datasources))),
+        uris(g.pathsBetween(seeds, 3, null, datasources)), seeds.toString());
+    }
+    assertTrue(filtered); //the filters did change some results
+  }
+
+  private static UbiqueFilter ubique() {
+    return new UbiqueFilter(blacklist.getListed());
+  }
+
+  private static Set<Set<BioPAXElement>> groups(PhysicalEntity... pes) {
+    Set<Set<BioPAXElement>> groups = new HashSet<>();
+    for (PhysicalEntity pe : pes) {
+      groups.add(Collections.singleton(pe));
+    }
+    return groups;
+  }
+
+  private static Set<String> uris(Set<BioPAXElement> elements) {
+    return elements.stream().map(BioPAXElement::getUri).collect(Collectors.toCollection(TreeSet::new));
+  }
+}
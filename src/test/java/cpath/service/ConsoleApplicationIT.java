@@ -32,10 +32,14 @@ import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.FileSystemUtils;
 
 import java.io.*;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.zip.GZIPOutputStream;
 
@@ -248,6 +252,8 @@ public class ConsoleApplicationIT
     assertEquals(2, mps.size());
     assertArrayEquals(new String[]{"P01116","P0DP23"}, mps.stream().map(Mapping::getDstId).sorted().toArray());
 
+    assertParallelMergeIsSequential();
+
     // **** MERGE ***
     Merger merger = new Merger(service);
     // For testing here, we don't use Datasource and thus bypass some Merger methods
@@ -355,7 +361,7 @@ public class ConsoleApplicationIT
     assertFalse(res.isEmpty());
     Object respData = ((DataResponse) res).getData();
     assertNotNull(respData);
-    assertTrue(respData instanceof Path);
+    assertTrue(respData instanceof ResultBuffer);
     assertNotNull(((DataResponse) res).getProviders());
     assertFalse(((DataResponse) res).getProviders().isEmpty());
 
@@ -391,9 +397,37 @@ public class ConsoleApplicationIT
     vals = ((TraverseResponse) res).getTraverseEntry().get(0).getValue();
     assertEquals(4, vals.size());
 
+    // SBGN of a pathway - converted at build time, then served by 'get' from the store
+    Pathway pathway = mainModel.getObjects(Pathway.class).stream().filter(SbgnStore::isNonTrivial)
+      .min(Comparator.comparing(BioPAXElement::getUri)).orElseThrow();
+    byte[] sbgn = bytes(service.fetch(OutputFormat.SBGN, null, false, pathway.getUri()));
+    assertTrue(new String(sbgn, StandardCharsets.UTF_8).contains("<sbgn"));
+    SbgnStore.build(service.getModel(), uri -> service.fetch(OutputFormat.SBGN, null, false, uri), false,
+      Paths.get(service.settings().mainModelFile()), Paths.get(service.settings().sbgnStoreFile()), 2);
+    service.reload(null).join(); //opens the store
+    res = service.fetch(OutputFormat.SBGN, null, false, pathway.getUri());
+    assertEquals(1L, ((DataResponse) res).getStats().get("stored"));
+    assertTrue(((DataResponse) res).getData() instanceof StreamingOutput);
+    assertArrayEquals(sbgn, bytes(res));
+    //with sub-pathways - converted again
+    res = service.fetch(OutputFormat.SBGN, null, true, pathway.getUri());
+    assertNull(((DataResponse) res).getStats().get("stored"));
+
     service.index().close();
   }
 
+  private static byte[] bytes(ServiceResponse res) throws IOException {
+    assertTrue(res instanceof DataResponse);
+    Object data = ((DataResponse) res).getData();
+    if (data instanceof ResultBuffer) {
+      return ((ResultBuffer) data).toByteArray();
+    }
+    assertTrue(data instanceof StreamingOutput);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ((StreamingOutput) data).writeTo(bos);
+    return bos.toByteArray();
+  }
+
 
   // test everything
   // WARN: CHEBI ID, names, relationships here might be FAKE ones - just for these tests!
@@ -514,6 +548,67 @@ public class ConsoleApplicationIT
   }
 
 
+  /*
+   * Builds the provider and main models from the test pathway data (as three datasources),
+   * using one and then several threads, each time in a fresh copy of the work directory,
+   * and checks that the archives are the same.
+   */
+  private void assertParallelMergeIsSequential() throws IOException {
+    final String home = System.getProperty(Settings.HOME_DIR);
+    final Integer buildThreads = service.settings().getBuildThreads();
+    final Path dir = Files.createDirectories(Paths.get("target", "merge-data"));
+    final List<Model> pathwayModels = initPathwayModels();
+    final List<Datasource> datasources = new ArrayList<>();
+    for (int i = 0; i < pathwayModels.size(); i += 2) {
+      Datasource ds = new Datasource("TESTMERGE" + (i / 2 + 1), List.of("Test" + i), "", "", "", "",
+        METADATA_TYPE.BIOPAX, "", "", null, "", "free", 0, 0, 0);
+      for (Model model : pathwayModels.subList(i, i + 2)) {
+        ds.setProvenanceFor(model, service.settings().getXmlBase());
+        String file = dir.resolve(model.getName() + ".owl.gz").toString();
+        ds.getFiles().add(file);
+        try (OutputStream os = new GZIPOutputStream(new FileOutputStream(CPathUtils.normalizedFile(file)))) {
+          new SimpleIOHandler(BioPAXLevel.L3).convertToOWL(model, os);
+        }
+      }
+      datasources.add(ds);
+    }
+
+    service.index().close(); //to copy the index
+    service.metadata().getDatasources().addAll(datasources);
+    try {
+      Map<String, byte[]> sequential = mergeInCopyOf(home, 1, datasources);
+      Map<String, byte[]> parallel = mergeInCopyOf(home, 3, datasources);
+      assertEquals(sequential.keySet(), parallel.keySet());
+      sequential.forEach((name, bytes) -> assertArrayEquals(bytes, parallel.get(name), name));
+    } finally {
+      service.metadata().getDatasources().removeAll(datasources);
+      service.settings().setBuildThreads(buildThreads);
+      System.setProperty(Settings.HOME_DIR, home);
+      service.initIndex(null, service.settings().indexDir(), false);
+    }
+  }
+
+  //runs the merger in a copy of the work directory; returns the main and provider archives
+  private Map<String, byte[]> mergeInCopyOf(String home, int threads, List<Datasource> datasources) throws IOException {
+    final Path copy = Paths.get("target", "work-" + threads);
+    FileSystemUtils.deleteRecursively(copy);
+    FileSystemUtils.copyRecursively(Paths.get(home), copy);
+    System.setProperty(Settings.HOME_DIR, copy.toString());
+    service.settings().setBuildThreads(threads);
+    new Merger(service).merge();
+    service.index().close();
+
+    final Map<String, byte[]> archives = new TreeMap<>();
+    archives.put("main", Files.readAllBytes(Paths.get(service.settings().mainModelFile())));
+    for (Datasource ds : datasources) {
+      archives.put(ds.getIdentifier(),
+        Files.readAllBytes(Paths.get(service.settings().biopaxFileName(ds.getIdentifier()))));
+    }
+    assertFalse(CPathUtils.importFromTheArchive(service.settings().mainModelFile())
+      .getObjects(Pathway.class).isEmpty());
+    return archives;
+  }
+
   private List<Model> initPathwayModels() throws IOException {
     final List<Model> pathwayModels = new ArrayList<>();
 
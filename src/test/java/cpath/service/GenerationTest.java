@@ -0,0 +1,46 @@
+package cpath.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.biopax.paxtools.pattern.util.Blacklist;
+import org.junit.jupiter.api.Test;
+
+public class GenerationTest {
+
+  @Test
+  public void releasedWhenDrained() {
+    Generation g = Generation.builder().build();
+    assertTrue(g.enter());
+    assertTrue(g.enter());
+    g.retire();
+    assertFalse(g.isReleased()); //two requests in flight
+    assertFalse(g.enter()); //new requests must go to the new generation
+    g.exit();
+    assertFalse(g.isReleased());
+    g.exit();
+    assertTrue(g.isReleased());
+    assertEquals(0, g.getInFlight());
+  }
+
+  @Test
+  public void releasedWhenIdle() {
+    Generation g = Generation.builder().build();
+    Generation next = g.withBlacklist(null);
+    assertTrue(next.getId() > g.getId());
+    g.retire();
+    assertTrue(g.isReleased());
+    assertFalse(next.isReleased());
+  }
+
+  @Test
+  public void copies() {
+    Blacklist blacklist = new Blacklist();
+    Generation g = Generation.builder().blacklist(blacklist).build();
+    assertSame(blacklist, g.toBuilder().build().blacklist);
+    assertSame(blacklist, g.withModel(null).blacklist);
+    assertSame(blacklist, g.withIndex(null).blacklist);
+    assertSame(blacklist, g.withMappings(null).blacklist);
+    assertNull(g.withBlacklist(null).blacklist);
+    assertNotEquals(g.getId(), g.withMappings(null).getId());
+  }
+}
@@ -0,0 +1,92 @@
+package cpath.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import cpath.service.api.OutputFormat;
+import cpath.service.jaxb.DataResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.biopax.paxtools.query.algorithm.Direction;
+import org.junit.jupiter.api.Test;
+
+public class GraphQueryCacheTest {
+
+  private static DataResponse result(int size) throws IOException {
+    ResultBuffer buffer = new ResultBuffer(ResultBuffer.DEFAULT_THRESHOLD, ".txt");
+    buffer.write(new byte[size]);
+    buffer.close();
+    DataResponse r = new DataResponse();
+    r.setFormat(OutputFormat.SIF);
+    r.setData(buffer);
+    r.setProviders(Set.of("test"));
+    return r;
+  }
+
+  @Test
+  public void canonicalKey() {
+    String k1 = GraphQueryCache.key("neighborhood", new String[]{"B", "A"}, null, 1, null,
+      Direction.UNDIRECTED, new String[]{"9606"}, null, false, OutputFormat.SIF, Map.of("pattern", "x"));
+    String k2 = GraphQueryCache.key("neighborhood", new String[]{"A", "B", "A"}, new String[]{}, 1, null,
+      Direction.UNDIRECTED, new String[]{"9606"}, new String[]{}, false, OutputFormat.SIF, Map.of("pattern", "x"));
+    assertEquals(k1, k2);
+    String k3 = GraphQueryCache.key("pathsbetween", new String[]{"A", "B"}, null, 1, null,
+      null, new String[]{"9606"}, null, false, OutputFormat.SIF, Map.of("pattern", "x"));
+    assertNotEquals(k1, k3);
+    assertEquals("[A, B]", GraphQueryCache.sorted(new String[]{"B", "A", "B"}));
+  }
+
+  @Test
+  public void hitMissAndEviction() throws IOException {
+    GraphQueryCache cache = new GraphQueryCache(800, 60); //max. 100 bytes per entry
+    assertNull(cache.get("a"));
+    cache.put("a", result(60));
+    DataResponse r = cache.get("a");
+    assertNotNull(r);
+    assertTrue(r.getData() instanceof ResultBuffer);
+    assertEquals(60, ((ResultBuffer) r.getData()).size());
+    assertEquals(Set.of("test"), r.getProviders());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+
+    cache.put("huge", result(101)); //too large - not cached
+    assertNull(cache.get("huge"));
+
+    for(int i = 0; i < 20; i++) {
+      cache.put("k" + i, result(100));
+    }
+    assertTrue(cache.getSizeBytes() <= 800);
+    assertTrue(cache.getEvictions() > 0);
+    assertNull(cache.get("a")); //least recently used one was evicted
+    assertNotNull(cache.get("k19"));
+
+    cache.clear();
+    assertEquals(0, cache.getSize());
+    assertEquals(0, cache.getSizeBytes());
+  }
+
+  @Test
+  public void meters() throws IOException {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    GraphQueryCache cache = new GraphQueryCache(800, 60);
+    new QueryMetrics(registry).bind(cache);
+    assertNull(cache.get("a"));
+    cache.put("a", result(60));
+    assertNotNull(cache.get("a"));
+    assertNotNull(cache.get("a"));
+    assertEquals(2.0, registry.get(QueryMetrics.CACHE_REQUESTS).tag("result", "hit").functionCounter().count());
+    assertEquals(1.0, registry.get(QueryMetrics.CACHE_REQUESTS).tag("result", "miss").functionCounter().count());
+    assertEquals(1.0, registry.get(QueryMetrics.CACHE_ENTRIES).gauge().value());
+    assertEquals(60.0, registry.get(QueryMetrics.CACHE_BYTES).gauge().value());
+  }
+
+  @Test
+  public void disabled() throws IOException {
+    GraphQueryCache cache = new GraphQueryCache(0, 60);
+    cache.put("a", result(10));
+    assertNull(cache.get("a"));
+    assertEquals(0, cache.getMisses());
+  }
+}
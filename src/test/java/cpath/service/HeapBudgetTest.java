@@ -0,0 +1,66 @@
+package cpath.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class HeapBudgetTest {
+
+  private static final long MB = 1024L * 1024;
+
+  @Test
+  public void acquireRelease() throws InterruptedException {
+    HeapBudget budget = new HeapBudget(10 * MB);
+    assertEquals(10, budget.total());
+    int a = budget.acquire(3 * MB + 1); //rounded up
+    assertEquals(4, a);
+    int b = budget.acquire(0); //at least 1Mb
+    assertEquals(1, b);
+    assertEquals(5, budget.available());
+    budget.release(a);
+    budget.release(b);
+    assertEquals(10, budget.total());
+    assertEquals(10, budget.available());
+  }
+
+  @Test
+  public void tryAcquire() {
+    HeapBudget budget = new HeapBudget(10 * MB);
+    int a = budget.tryAcquire(6 * MB);
+    assertEquals(6, a);
+    assertEquals(0, budget.tryAcquire(5 * MB)); //does not wait
+    assertEquals(4, budget.available());
+    int b = budget.tryAcquire(4 * MB);
+    assertEquals(4, b);
+    budget.release(a);
+    budget.release(b);
+    assertEquals(10, budget.tryAcquire(100 * MB)); //the whole budget
+  }
+
+  @Test
+  public void largeTaskRunsAlone() throws InterruptedException {
+    HeapBudget budget = new HeapBudget(10 * MB);
+    int large = budget.acquire(100 * MB);
+    assertEquals(10, large);
+    assertEquals(0, budget.available());
+
+    CountDownLatch acquired = new CountDownLatch(1);
+    Thread t = new Thread(() -> {
+      try {
+        budget.release(budget.acquire(MB));
+        acquired.countDown();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    t.start();
+    assertFalse(acquired.await(200, TimeUnit.MILLISECONDS)); //waits for the large one
+    budget.release(large);
+    assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    t.join();
+    assertEquals(10, budget.available());
+  }
+}
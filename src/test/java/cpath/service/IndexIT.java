@@ -3,7 +3,10 @@ package cpath.service;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import cpath.service.metadata.Mapping;
 import cpath.service.metadata.Mappings;
@@ -67,6 +70,11 @@ public class IndexIT {
     assertNotNull(response);
     assertFalse(response.isEmpty());
     assertEquals(1, response.getSearchHit().size());
+    //the only pathway there is a top pathway (flagged at index time)
+    SearchResponse top = index.topPathways("*", -1, null, null);
+    assertEquals(1, top.getSearchHit().size());
+    assertEquals(response.getSearchHit().get(0).getUri(), top.getSearchHit().get(0).getUri());
+    assertEquals(1, index.topPathways("ATP", 0, null, null).getSearchHit().size());
 
     //find all objects (this here works with page=0 as long as the
     //total no. objects in the test model < max hits per page)
@@ -94,6 +102,10 @@ public class IndexIT {
     assertEquals(2, response.getSearchHit().size());
     response = index.search("*", 0, Provenance.class, new String[] {"kegg"}, null);
     assertEquals(1, response.getSearchHit().size());
+    //Provenance hit: its names go first in the data source values
+    Provenance kegg = (Provenance) model.getByID(response.getSearchHit().get(0).getUri());
+    assertEquals(new ArrayList<>(kegg.getName()),
+      response.getSearchHit().get(0).getDataSource().subList(0, kegg.getName().size()));
 
     //find by partial name of a datasource - "pathway" of "KEGG Pathway"...
     response = index.search("*", 0, Pathway.class, new String[] {"pathway"}, null);
@@ -113,6 +125,11 @@ public class IndexIT {
     assertTrue(response.isEmpty()); //part of URI - case-sensitive
     response = index.search("uri:Pathway50", 0, null, null, null);
     assertFalse(response.isEmpty());//1
+    //skip the hits that are no longer in the model
+    Pathway pathway50 = (Pathway) model.getByID(model.getXmlBase()+"Pathway50");
+    model.remove(pathway50);
+    assertTrue(index.search("uri:Pathway50", 0, null, null, null).isEmpty());
+    model.add(pathway50);
     //find by absolute URI (quoted)
     response = index.search("uri:\""+model.getXmlBase()+"Pathway50\"", 0, null, null, null);
     assertEquals(1, response.getSearchHit().size());
@@ -126,10 +143,33 @@ public class IndexIT {
 
     // only Entity, ER, and Provenance types are indexed (since 06/01/2016)
     assertEquals(23, response.getNumHits().intValue());
+    assertTrue(response.getNumHitsExact());
     assertEquals(10, response.getSearchHit().size());
+    //count up to the threshold only (then numHits is a lower bound)
+    index.setHitsCountThreshold(15);
+    response = index.search("*", 0, null, null, null);
+    assertEquals(10, response.getSearchHit().size());
+    assertFalse(response.getNumHitsExact());
+    assertTrue(response.getNumHits() >= 15 && response.getNumHits() <= 23);
+    index.setHitsCountThreshold(0); //exact
     response = index.search("*", 1, null, null, null);
     assertEquals(10, response.getSearchHit().size());
     assertEquals(1, response.getPageNo().intValue());
+    //the same hits page using the cursor (continuation token) instead of the page no.
+    String cursor = index.search("*", 0, null, null, null).getNextCursor();
+    assertNotNull(cursor);
+    SearchResponse next = index.search("*", cursor, null, null, null);
+    assertEquals(response.getSearchHit().stream().map(SearchHit::getUri).toList(),
+      next.getSearchHit().stream().map(SearchHit::getUri).toList());
+    next = index.search("*", next.getNextCursor(), null, null, null);
+    assertEquals(3, next.getSearchHit().size());
+    assertNull(next.getNextCursor());
+    final IndexImpl idx = index;
+    assertThrows(IllegalArgumentException.class, () -> idx.search("*", "foo", null, null, null));
+    //all the hits at once
+    List<String> all = new ArrayList<>();
+    index.forEachHit("*", null, null, null, h -> all.add(h.getUri()));
+    assertEquals(23, all.size());
 
     //test that service.search works (as expected) for IDs that contain ':', such as ChEBI IDs with banana ('CHEBI:')
     response =  index.search("CHEBI?20", 0, SmallMoleculeReference.class, null, null);
@@ -208,6 +248,15 @@ public class IndexIT {
     assertFalse(response.getSearchHit().isEmpty());
     assertEquals(1, response.getSearchHit().size());
 
+    //the in-memory xref id dictionary (used for graph query seeds) agrees with the full-text search
+    IdDictionary dictionary = index.buildIdDictionary(PhysicalEntity.class, Gene.class);
+    assertTrue(dictionary.size() > 0);
+    response = index.search("xrefid:P16104", 0, PhysicalEntity.class, null, null);
+    assertFalse(response.getSearchHit().isEmpty());
+    assertEquals(response.getSearchHit().size(), dictionary.lookup("P16104").size());
+    assertTrue(dictionary.lookup("p16104").isEmpty()); //case-sensitive
+    assertEquals(1, dictionary.lookup(List.of("P16104", "foo")).size());
+
     //re-open to write
     index.close();
     index = new IndexImpl(model, "target/test-idx", false);
@@ -218,6 +267,26 @@ public class IndexIT {
     index.close();
   }
 
+  @Test
+  public void parallelSave() throws IOException {
+    Model model = new SimpleIOHandler().convertFromOWL(resourceLoader
+      .getResource("classpath:merge/pathwaydata1.owl").getInputStream());
+    IndexImpl index = new IndexImpl(model, "target/test-idx-seq", false);
+    index.save(model);
+    IndexImpl parallel = new IndexImpl(model, "target/test-idx-par", false);
+    parallel.setIndexThreads(4);
+    parallel.save(model);
+    for(String q : List.of("*", "ATP", "xrefid:CHEBI?20", "pathway:Pathway50")) {
+      SearchResponse expected = index.search(q, 0, null, null, null);
+      SearchResponse actual = parallel.search(q, 0, null, null, null);
+      assertEquals(expected.getNumHits(), actual.getNumHits());
+      assertEquals(expected.getSearchHit().stream().map(SearchHit::getUri).toList(),
+        actual.getSearchHit().stream().map(SearchHit::getUri).toList());
+    }
+    index.close();
+    parallel.close();
+  }
+
   @Test
   @DirtiesContext
   public void idMapping() {
@@ -248,6 +317,19 @@ public class IndexIT {
     assertEquals("CHEBI:12345", mapsTo.iterator().next().getDstId());
     assertEquals(1, mappings.findBySrcIdInAndDstDbIgnoreCase(List.of("SID:14438"), "CHEBI").size());
 
+    //the same, loaded into the in-memory reverse map (used by save(Model))
+    mappings.save(new Mapping("DrugBank", "DB00001", "CHEBI", "12345"));
+    mappings.commit();
+    IdMappingTable table = ((IndexImpl) mappings).loadMappingTable();
+    assertNotNull(table);
+    Set<String> srcIds = new HashSet<>();
+    table.addSrcIds("CHEBI", "CHEBI:20", srcIds);
+    assertTrue(srcIds.isEmpty()); //PUBCHEM-SUBSTANCE is not a supported ID type
+    table.addSrcIds("CHEBI", "CHEBI:12345", srcIds);
+    assertEquals(Set.of("DB00001"), srcIds); //TEST is not supported
+    assertEquals(2, table.getLookups());
+    assertEquals(1, table.getHits());
+
     mappings.close();
   }
 
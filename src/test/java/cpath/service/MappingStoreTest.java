@@ -0,0 +1,97 @@
+package cpath.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import cpath.service.metadata.Mapping;
+
+public class MappingStoreTest {
+
+  @TempDir
+  Path dir;
+
+  private Path warehouse() throws IOException {
+    return Files.write(dir.resolve("warehouse.owl.gz"), new byte[]{1, 2, 3});
+  }
+
+  @Test
+  public void find() throws IOException {
+    MappingStore.Builder builder = new MappingStore.Builder();
+    builder.add(new Mapping("UniProt", "P62158", "uniprot", "P62158"));
+    builder.add(new Mapping("RefSeq", "NP_008819.1", "UNIPROT", "P62158"));
+    builder.add(new Mapping("RefSeq", "NP_008819", "UNIPROT", "P62158")); //duplicate
+    builder.add(new Mapping("Gene Name", "CALM1", "UNIPROT", "P62158"));
+    builder.add(new Mapping("Gene Name", "CALM1", "UNIPROT", "P0DP23"));
+    builder.add(new Mapping("Gene Name", "CALM", "UNIPROT", "P0DP24")); //prefix of CALM1
+    builder.add(new Mapping("PubChem-compound", "CID:5793", "ChEBI", "17234"));
+    Path file = dir.resolve("test.store");
+    Path warehouse = warehouse();
+    assertEquals(6, builder.write(file, warehouse));
+
+    MappingStore store = MappingStore.open(file, warehouse);
+    assertNotNull(store);
+    assertEquals(6, store.size());
+
+    assertEquals(Set.of("P62158", "P0DP23"), store.findDstIds(List.of("CALM1"), "uniprot"));
+    assertEquals(Set.of("P62158", "P0DP23", "P0DP24"), store.findDstIds(List.of("CALM", "CALM1", "FOO"), "UniProt"));
+    assertEquals(Set.of("P62158"), store.findDstIds(List.of("NP_008819"), "UNIPROT"));
+    assertTrue(store.findDstIds(List.of("CALM1"), "chebi").isEmpty());
+    assertEquals(Set.of("CHEBI:17234"), store.findDstIds(List.of("CID:5793"), "chebi"));
+
+    List<Mapping> mappings = store.findBySrcIdInAndDstDbIgnoreCase(List.of("CALM", "CID:5793"), "uniprot");
+    assertEquals(List.of(new Mapping("GENE NAME", "CALM", "UNIPROT", "P0DP24")), mappings);
+
+    mappings = store.findByDstDbIgnoreCaseAndDstId("uniprot", "P62158");
+    assertEquals(3, mappings.size());
+    assertTrue(mappings.contains(new Mapping("REFSEQ", "NP_008819", "UNIPROT", "P62158")));
+    assertTrue(store.findByDstDbIgnoreCaseAndDstId("uniprot", "P6215").isEmpty());
+
+    List<Mapping> all = new ArrayList<>();
+    store.forEachMapping(all::add);
+    assertEquals(6, all.size());
+    assertTrue(all.contains(new Mapping("PUBCHEM-COMPOUND", "CID:5793", "CHEBI", "CHEBI:17234")));
+
+    assertThrows(UnsupportedOperationException.class, () -> store.save(all.get(0)));
+  }
+
+  @Test
+  public void empty() throws IOException {
+    Path file = dir.resolve("empty.store");
+    Path warehouse = warehouse();
+    assertEquals(0, new MappingStore.Builder().write(file, warehouse));
+    MappingStore store = MappingStore.open(file, warehouse);
+    assertNotNull(store);
+    assertEquals(0, store.size());
+    assertTrue(store.findDstIds(List.of("CALM1"), "UNIPROT").isEmpty());
+  }
+
+  @Test
+  public void open() throws IOException {
+    Path warehouse = warehouse();
+    assertNull(MappingStore.open(dir.resolve("missing.store"), warehouse));
+    assertNull(MappingStore.open(Files.writeString(dir.resolve("bad.store"), "not a store", StandardCharsets.UTF_8),
+      warehouse));
+
+    //not used with another warehouse archive
+    Path file = dir.resolve("test.store");
+    MappingStore.Builder builder = new MappingStore.Builder();
+    builder.add(new Mapping("UniProt", "P62158", "uniprot", "P62158"));
+    builder.write(file, warehouse);
+    assertNotNull(MappingStore.open(file, warehouse));
+    Files.write(warehouse, new byte[]{1, 2, 4}); //same size
+    assertNull(MappingStore.open(file, warehouse));
+    Files.write(warehouse, new byte[]{1, 2});
+    assertNull(MappingStore.open(file, warehouse));
+    assertNull(MappingStore.open(file, dir.resolve("missing.owl.gz")));
+  }
+}
@@ -0,0 +1,63 @@
+package cpath.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.GZIPOutputStream;
+
+import org.biopax.paxtools.controller.PropertyEditor;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.junit.jupiter.api.Test;
+
+public class ModelSnapshotTest {
+
+  @Test
+  public void writeRead() throws IOException {
+    Model model = new SimpleIOHandler().convertFromOWL(getClass().getResourceAsStream("/demo-pathway.owl"));
+    Path dir = Files.createDirectories(Paths.get("target", "snapshot-test"));
+    Path archive = dir.resolve("model.owl.gz");
+    try(OutputStream os = new GZIPOutputStream(Files.newOutputStream(archive))) {
+      new SimpleIOHandler().convertToOWL(model, os);
+    }
+    Path snapshot = dir.resolve("model.snapshot");
+    ModelSnapshot.write(model, archive, snapshot);
+    assertTrue(ModelSnapshot.isValid(snapshot, archive));
+
+    Model copy = ModelSnapshot.read(snapshot, archive);
+    assertNotNull(copy);
+    assertEquals(model.getXmlBase(), copy.getXmlBase());
+    assertEquals(model.getObjects().size(), copy.getObjects().size());
+    for(BioPAXElement bpe : model.getObjects()) {
+      BioPAXElement other = copy.getByID(bpe.getUri());
+      assertNotNull(other, bpe.getUri());
+      assertEquals(bpe.getModelInterface(), other.getModelInterface());
+      for(PropertyEditor editor : SimpleEditorMap.L3.getEditorsOf(bpe)) {
+        assertEquals(editor.getValueFromBean(bpe).size(), editor.getValueFromBean(other).size(),
+          bpe.getUri() + " " + editor.getProperty());
+      }
+    }
+
+    //same content, another modified time (e.g. a copy) - checked by the checksum
+    final FileTime copied = FileTime.fromMillis(Files.getLastModifiedTime(archive).toMillis() - 60000);
+    Files.setLastModifiedTime(archive, copied);
+    assertTrue(ModelSnapshot.isValid(snapshot, archive));
+    byte[] bytes = Files.readAllBytes(archive);
+    bytes[bytes.length - 1] ^= 1;
+    Files.write(archive, bytes); //same size, different content
+    Files.setLastModifiedTime(archive, copied);
+    assertFalse(ModelSnapshot.isValid(snapshot, archive));
+
+    //the snapshot is not used when the archive has changed
+    Files.write(archive, new byte[]{1, 2, 3});
+    assertFalse(ModelSnapshot.isValid(snapshot, archive));
+    assertNull(ModelSnapshot.read(snapshot, archive));
+  }
+}
@@ -0,0 +1,47 @@
+package cpath.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Set;
+
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.SmallMoleculeReference;
+import org.junit.jupiter.api.Test;
+
+public class NameIndexTest {
+
+  @Test
+  public void find() {
+    Model m = BioPAXLevel.L3.getDefaultFactory().createModel();
+    SmallMoleculeReference smr = m.addNew(SmallMoleculeReference.class, "http://bioregistry.io/chebi:16236");
+    smr.addName("Ethanol");
+    smr.addName("ethyl alcohol");
+    smr = m.addNew(SmallMoleculeReference.class, "http://bioregistry.io/chebi:44594");
+    smr.addName("ETHANOL");
+    smr = m.addNew(SmallMoleculeReference.class, "http://bioregistry.io/chebi:17234");
+    smr.addName("glucose");
+    m.addNew(SmallMoleculeReference.class, "foo").addName("bar"); //skipped (no id)
+
+    NameIndex index = new NameIndex(m.getObjects(SmallMoleculeReference.class),
+      e -> CPathUtils.idFromNormalizedUri(e.getUri()));
+    assertEquals(3, index.size());
+
+    assertEquals(Set.of("CHEBI:16236", "CHEBI:44594"), index.find(List.of("ethanol")));
+    assertEquals(Set.of("CHEBI:16236"), index.find(List.of("Ethyl Alcohol")));
+    assertEquals(Set.of("CHEBI:16236", "CHEBI:17234"), index.find(List.of("ethyl alcohol", "GLUCOSE")));
+    assertTrue(index.find(List.of("bar", "ethane")).isEmpty());
+
+    assertEquals(4, index.getLookups());
+    assertEquals(3, index.getHits());
+    assertEquals(2, index.getAmbiguous());
+  }
+
+  @Test
+  public void key() {
+    for (String[] pair : new String[][]{{"Ethanol", "eTHANOL"}, {"ΣΑΣ", "σας"}, {"ǅ", "ǆ"}}) {
+      assertEquals(pair[0].equalsIgnoreCase(pair[1]), NameIndex.key(pair[0]).equals(NameIndex.key(pair[1])));
+    }
+  }
+}
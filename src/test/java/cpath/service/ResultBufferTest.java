@@ -0,0 +1,53 @@
+package cpath.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.jupiter.api.Test;
+
+public class ResultBufferTest {
+
+  private static byte[] bytes(int size) {
+    byte[] data = new byte[size];
+    for(int i = 0; i < size; i++) {
+      data[i] = (byte) i;
+    }
+    return data;
+  }
+
+  @Test
+  public void inMemory() throws IOException {
+    byte[] data = bytes(100);
+    ResultBuffer buffer = new ResultBuffer(100, ".txt");
+    buffer.write(data, 0, 60);
+    buffer.write(data, 60, 40);
+    buffer.close();
+    assertTrue(buffer.isInMemory());
+    assertEquals(100, buffer.size());
+    assertArrayEquals(data, buffer.toByteArray());
+    assertThrows(IOException.class, () -> buffer.write(1));
+    buffer.release();
+  }
+
+  @Test
+  public void spill() throws IOException {
+    byte[] data = bytes(100_000);
+    ResultBuffer buffer = new ResultBuffer(1000, ".txt");
+    for(int i = 0; i < data.length; i += 500) {
+      buffer.write(data, i, 500);
+    }
+    buffer.close();
+    assertFalse(buffer.isInMemory());
+    assertEquals(data.length, buffer.size());
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    buffer.writeTo(bos);
+    assertArrayEquals(data, bos.toByteArray());
+    try(InputStream is = buffer.getInputStream()) {
+      assertArrayEquals(data, is.readAllBytes());
+    }
+    buffer.release();
+  }
+}
@@ -0,0 +1,64 @@
+package cpath.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+import cpath.service.api.OutputFormat;
+import cpath.service.jaxb.DataResponse;
+import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.Pathway;
+import org.junit.jupiter.api.Test;
+
+public class SbgnStoreTest {
+
+  @Test
+  public void buildAndGet() throws IOException {
+    Model model = new SimpleIOHandler().convertFromOWL(getClass().getResourceAsStream("/demo-pathway.owl"));
+    Path dir = Files.createDirectories(Paths.get("target", "sbgn-store-test"));
+    Path archive = dir.resolve("model.owl.gz");
+    Files.write(archive, new byte[]{1, 2, 3});
+    Path file = dir.resolve("pc-sbgn.store");
+    BiopaxConverter converter = new BiopaxConverter(null);
+    //a pathway URI - the pathway itself as the result (enough for this test)
+    SbgnStore.build(model, uri -> converter.convert(model, OutputFormat.BIOPAX, Map.of()),
+      false, archive, file, 2);
+
+    assertTrue(SbgnStore.isValid(file, archive));
+    assertTrue(SbgnStore.isValid(file, archive, false));
+    assertFalse(SbgnStore.isValid(file, archive, true));
+    List<Pathway> pathways = model.getObjects(Pathway.class).stream().filter(SbgnStore::isNonTrivial).toList();
+    assertFalse(pathways.isEmpty());
+
+    DataResponse expected = (DataResponse) converter.convert(model, OutputFormat.BIOPAX, Map.of());
+    byte[] bytes = ((ResultBuffer) expected.getData()).toByteArray();
+    try (SbgnStore store = SbgnStore.open(file, archive)) {
+      assertNotNull(store);
+      assertEquals(pathways.size(), store.size());
+      assertNull(store.get("foo"));
+      for (Pathway p : pathways) {
+        DataResponse r = store.get(p.getUri());
+        assertNotNull(r, p.getUri());
+        assertEquals(OutputFormat.SBGN, r.getFormat());
+        assertEquals(expected.getProviders(), r.getProviders());
+        StreamingOutput output = (StreamingOutput) r.getData();
+        assertEquals(bytes.length, output.size());
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        output.writeTo(bos);
+        assertArrayEquals(bytes, bos.toByteArray());
+      }
+    }
+
+    //not used when the archive has changed
+    Files.write(archive, new byte[]{1, 2, 3, 4});
+    assertFalse(SbgnStore.isValid(file, archive));
+    assertNull(SbgnStore.open(file, archive));
+  }
+}
@@ -0,0 +1,178 @@
+package cpath.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import org.biopax.paxtools.controller.Cloner;
+import org.biopax.paxtools.controller.Completer;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.*;
+import org.biopax.paxtools.pattern.miner.SIFEnum;
+import org.biopax.paxtools.pattern.miner.SIFSearcher;
+import org.biopax.paxtools.pattern.miner.SIFType;
+import org.biopax.paxtools.pattern.util.Blacklist;
+import org.junit.jupiter.api.Test;
+
+public class SifEdgeTableTest {
+
+  @Test
+  public void sameAsSearch() throws IOException {
+    Model model = new SimpleIOHandler().convertFromOWL(getClass().getResourceAsStream("/NetPath_7.owl"));
+    Blacklist blacklist = new Blacklist();
+    SifEdgeTable table = SifEdgeTable.build(model, blacklist);
+    assertTrue(table.size() > 0);
+
+    //the table survives the round trip
+    Path dir = Files.createDirectories(Paths.get("target", "sif-edges-test"));
+    Path archive = dir.resolve("model.owl.gz");
+    Files.write(archive, new byte[]{1, 2, 3});
+    Path blacklistFile = dir.resolve("blacklist.txt");
+    Files.deleteIfExists(blacklistFile);
+    Path file = dir.resolve("pc-sif.edges");
+    table.write(archive, blacklistFile, file);
+    SifEdgeTable copy = SifEdgeTable.read(file, archive, blacklistFile);
+    assertNotNull(copy);
+    assertEquals(table.size(), copy.size());
+    assertEquals(table.countByDatasource(), copy.countByDatasource());
+
+    SIFType[] types = BiopaxConverter.defaultSifTypes();
+    SIFType[] some = {SIFEnum.CONTROLS_STATE_CHANGE_OF, SIFEnum.IN_COMPLEX_WITH};
+    assertTrue(table.contains(SIFEnum.IN_COMPLEX_WITH));
+    assertFalse(table.contains(SIFEnum.CONTROLS_STATE_CHANGE_OF)); //searched for
+    assertFalse(table.contains(SIFEnum.NEIGHBOR_OF));
+
+    //sub-models like the get/graph query results: an interaction with its controls, auto-completed
+    List<Interaction> interactions = new ArrayList<>(model.getObjects(Interaction.class));
+    interactions.sort(Comparator.comparing(BioPAXElement::getUri));
+    for (Interaction i : interactions.subList(0, Math.min(40, interactions.size()))) {
+      Set<BioPAXElement> elements = new HashSet<>(i.getControlledOf());
+      elements.add(i);
+      Model m = subModel(elements);
+      assertEquals(search(m, types, blacklist), select(copy, m, types, blacklist), i.getUri());
+      assertEquals(search(m, some, blacklist), select(copy, m, some, blacklist), i.getUri());
+    }
+    //the whole model
+    Model m = subModel(new HashSet<>(model.getObjects()));
+    assertEquals(search(m, types, blacklist), select(copy, m, types, blacklist));
+
+    //another blacklist
+    Files.writeString(blacklistFile, "CHEBI:15377\t1000\t\n", StandardCharsets.UTF_8);
+    assertNull(SifEdgeTable.read(file, archive, blacklistFile));
+    Files.delete(blacklistFile);
+    assertNotNull(SifEdgeTable.read(file, archive, blacklistFile));
+    //another archive
+    Files.write(archive, new byte[]{1, 2, 3, 4});
+    assertNull(SifEdgeTable.read(file, archive, blacklistFile));
+  }
+
+  @Test
+  public void partialMatch() throws IOException {
+    //A catalyzes r1 (1 -> 2), B catalyzes r2 (2 -> 3): A catalysis-precedes B
+    Model model = BioPAXLevel.L3.getDefaultFactory().createModel();
+    model.setXmlBase("test:");
+    Protein a = protein(model, "A");
+    Protein b = protein(model, "B");
+    SmallMolecule s1 = chemical(model, "CHEBI:1");
+    SmallMolecule s2 = chemical(model, "CHEBI:2");
+    SmallMolecule s3 = chemical(model, "CHEBI:3");
+    Catalysis c1 = catalysis(model, a, conversion(model, "r1", s1, s2));
+    catalysis(model, b, conversion(model, "r2", s2, s3));
+    Blacklist blacklist = new Blacklist();
+    SifEdgeTable table = SifEdgeTable.build(model, blacklist);
+    SIFType[] types = BiopaxConverter.defaultSifTypes();
+
+    Model m = subModel(new HashSet<>(model.getObjects()));
+    List<String> all = select(table, m, types, blacklist);
+    assertEquals(search(m, types, blacklist), all);
+    assertTrue(all.contains("A\tcatalysis-precedes\tB"));
+
+    //only one control/conversion pair of the catalysis-precedes pattern match
+    m = subModel(new HashSet<>(Set.of(c1)));
+    List<String> partial = select(table, m, types, blacklist);
+    assertEquals(search(m, types, blacklist), partial);
+    assertFalse(partial.contains("A\tcatalysis-precedes\tB"));
+  }
+
+  private static Protein protein(Model model, String symbol) {
+    RelationshipXref x = model.addNew(RelationshipXref.class, "hgnc_" + symbol);
+    x.setDb("HGNC Symbol");
+    x.setId(symbol);
+    ProteinReference pr = model.addNew(ProteinReference.class, "pr_" + symbol);
+    pr.setDisplayName(symbol);
+    pr.addXref(x);
+    Protein p = model.addNew(Protein.class, "p_" + symbol);
+    p.setDisplayName(symbol);
+    p.setEntityReference(pr);
+    return p;
+  }
+
+  private static SmallMolecule chemical(Model model, String chebi) {
+    UnificationXref x = model.addNew(UnificationXref.class, "x_" + chebi);
+    x.setDb("ChEBI");
+    x.setId(chebi);
+    SmallMoleculeReference smr = model.addNew(SmallMoleculeReference.class, "smr_" + chebi);
+    smr.setDisplayName(chebi);
+    smr.addXref(x);
+    SmallMolecule sm = model.addNew(SmallMolecule.class, "sm_" + chebi);
+    sm.setDisplayName(chebi);
+    sm.setEntityReference(smr);
+    return sm;
+  }
+
+  private static BiochemicalReaction conversion(Model model, String id, SmallMolecule left, SmallMolecule right) {
+    BiochemicalReaction r = model.addNew(BiochemicalReaction.class, id);
+    r.addLeft(left);
+    r.addRight(right);
+    r.setConversionDirection(ConversionDirectionType.LEFT_TO_RIGHT);
+    return r;
+  }
+
+  private static Catalysis catalysis(Model model, Protein controller, Conversion controlled) {
+    Catalysis c = model.addNew(Catalysis.class, "c_" + controlled.getUri());
+    c.addController(controller);
+    c.addControlled(controlled);
+    c.setControlType(ControlType.ACTIVATION);
+    return c;
+  }
+
+  private static Model subModel(Set<BioPAXElement> elements) {
+    Model m = new Cloner(SimpleEditorMap.L3, BioPAXLevel.L3.getDefaultFactory())
+      .clone(new Completer(SimpleEditorMap.L3).complete(elements));
+    //as ServiceImpl.convert does before converting to SIF
+    for (Pathway p : new HashSet<>(m.getObjects(Pathway.class))) {
+      m.remove(p);
+    }
+    return m;
+  }
+
+  private static List<String> search(Model m, SIFType[] types, Blacklist blacklist) {
+    SIFSearcher searcher = new SIFSearcher(BiopaxConverter.idFetcher(null), types);
+    searcher.setBlacklist(blacklist);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    searcher.searchSIF(m, bos);
+    return lines(bos);
+  }
+
+  private static List<String> select(SifEdgeTable table, Model m, SIFType[] types, Blacklist blacklist)
+    throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    table.writeSif(m, types, blacklist, bos);
+    return lines(bos);
+  }
+
+  private static List<String> lines(ByteArrayOutputStream bos) {
+    return new String(bos.toByteArray(), StandardCharsets.UTF_8).lines()
+      .filter(l -> !l.isBlank()).sorted().toList();
+  }
+}
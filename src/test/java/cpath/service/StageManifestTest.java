@@ -0,0 +1,56 @@
+package cpath.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class StageManifestTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void mismatch() throws IOException {
+    Path input = Files.writeString(dir.resolve("test.orig.gz"), "original data", StandardCharsets.UTF_8);
+    Path output = dir.resolve("test.cleaned.gz");
+    StageManifest manifest = new StageManifest().input(input).tool("cleaner", getClass()).setting("xmlBase", "test:");
+    assertEquals("no output", manifest.mismatch(output));
+
+    Files.writeString(output, "cleaned data", StandardCharsets.UTF_8);
+    assertEquals("no output", manifest.mismatch(output)); //no manifest file
+    manifest.save(output);
+    assertTrue(Files.exists(StageManifest.fileOf(output)));
+    assertNull(new StageManifest().input(input).tool("cleaner", getClass()).setting("xmlBase", "test:")
+      .mismatch(output));
+
+    //another tool, setting
+    assertEquals("changed cleaner,cleaner.version",
+      new StageManifest().input(input).tool("cleaner", String.class).setting("xmlBase", "test:").mismatch(output));
+    assertEquals("changed setting.xmlBase",
+      new StageManifest().input(input).tool("cleaner", getClass()).setting("xmlBase", "foo:").mismatch(output));
+
+    //changed input content
+    Files.writeString(input, "updated data", StandardCharsets.UTF_8);
+    assertEquals("changed input.sha256",
+      new StageManifest().input(input).tool("cleaner", getClass()).setting("xmlBase", "test:").mismatch(output));
+
+    StageManifest.invalidate(output);
+    assertFalse(Files.exists(output));
+    assertFalse(Files.exists(StageManifest.fileOf(output)));
+  }
+
+  @Test
+  public void noTool() throws IOException {
+    Path output = Files.writeString(dir.resolve("test.normalized.gz"), "data", StandardCharsets.UTF_8);
+    StageManifest manifest = new StageManifest().tool("validator", null);
+    manifest.save(output);
+    assertTrue(manifest.matches(output));
+    assertFalse(new StageManifest().tool("validator", getClass()).matches(output));
+  }
+}
@@ -2,6 +2,8 @@
 ##
 # Get each pathway from PC and convert to SBGN 
 # if there are processes (excluding sub-pathways and their child processes).
+# (the 'postmerge' build stage now also pre-converts all the pathways, using the in-memory model,
+# and saves the results to the data/pc-sbgn.store file, which the web service uses)
 ##
 
 PC2="http://www.pathwaycommons.org/pc2"